@@ -0,0 +1,112 @@
+package gov.va.rf2.validator;
+
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs tasks on another executor, but never more than a fixed number of them at the same time - tasks beyond that
+ * wait for a permit on the thread they were given. A task is always run, even if its thread is interrupted while it
+ * waits.
+ *
+ * Meant for an executor that starts a thread per task (virtual threads), where the number of threads itself doesn't
+ * limit how many tasks hit the DB at once.
+ */
+public class ConcurrencyLimitedExecutor extends AbstractExecutorService
+{
+	private ExecutorService delegate_;
+	private Semaphore permits_;
+
+	public ConcurrencyLimitedExecutor(ExecutorService delegate, int maxConcurrency)
+	{
+		delegate_ = delegate;
+		permits_ = new Semaphore(maxConcurrency);
+	}
+
+	/**
+	 * @return an executor that runs each task on a new virtual thread, with at most maxConcurrency running at once - or
+	 *         null, if this JVM doesn't support virtual threads.
+	 */
+	public static ExecutorService newVirtualThreadExecutor(int maxConcurrency)
+	{
+		try
+		{
+			// Java 21+ - looked up reflectively, so that we still build and run on older JVMs
+			ExecutorService virtual = (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+			return new ConcurrencyLimitedExecutor(virtual, maxConcurrency);
+		}
+		catch (ReflectiveOperationException | RuntimeException e)
+		{
+			return null;
+		}
+	}
+
+	@Override
+	public void execute(final Runnable command)
+	{
+		delegate_.execute(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				boolean interrupted = false;
+				try
+				{
+					permits_.acquire();
+				}
+				catch (InterruptedException e)
+				{
+					// Still run the command - when it is the FutureTask of submit(), whoever waits for its result would
+					// otherwise wait forever. It runs interrupted, so it can give up early.
+					interrupted = true;
+					permits_.acquireUninterruptibly();
+				}
+				try
+				{
+					if (interrupted)
+					{
+						Thread.currentThread().interrupt();
+					}
+					command.run();
+				}
+				finally
+				{
+					permits_.release();
+				}
+			}
+		});
+	}
+
+	@Override
+	public void shutdown()
+	{
+		delegate_.shutdown();
+	}
+
+	@Override
+	public List<Runnable> shutdownNow()
+	{
+		return delegate_.shutdownNow();
+	}
+
+	@Override
+	public boolean isShutdown()
+	{
+		return delegate_.isShutdown();
+	}
+
+	@Override
+	public boolean isTerminated()
+	{
+		return delegate_.isTerminated();
+	}
+
+	@Override
+	public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException
+	{
+		return delegate_.awaitTermination(timeout, unit);
+	}
+}
@@ -0,0 +1,104 @@
+package gov.va.rf2.validator;
+
+import gov.va.rf2.validator.rowData.RowBuffer;
+import gov.va.rf2.validator.rowData.ValidatorBase;
+import java.util.Arrays;
+
+/**
+ * A batch of parsed rows, waiting for DB validation.
+ *
+ * Validating rows in file order makes the DB lookups jump all over the key space of the DB. A batch is instead
+ * validated in the order of the nids of the components that its rows describe, so that neighbouring lookups hit
+ * neighbouring parts of the DB. The failures are still reported in line order.
+ */
+public class DBValidationBatch
+{
+	private long[] lineNumbers_;
+	private RowBuffer[] rows_;
+	private ValidationResult result_ = new ValidationResult();
+	private int size_ = 0;
+
+	public DBValidationBatch(int capacity)
+	{
+		lineNumbers_ = new long[capacity];
+		rows_ = new RowBuffer[capacity];
+	}
+
+	/**
+	 * @param row a row that isn't reused - see {@link RowBuffer#copy()}
+	 */
+	public void add(long lineNumber, RowBuffer row)
+	{
+		lineNumbers_[size_] = lineNumber;
+		rows_[size_] = row;
+		size_++;
+	}
+
+	public boolean isFull()
+	{
+		return size_ == rows_.length;
+	}
+
+	public int size()
+	{
+		return size_;
+	}
+
+	/**
+	 * Validate all of the rows of the batch, in nid order.
+	 */
+	public void validate(ValidatorBase validator)
+	{
+		// nid in the high bits, the position in the batch in the low bits - so equal (or unknown) nids stay in line order
+		long[] order = new long[size_];
+		for (int i = 0; i < size_; i++)
+		{
+			int nid;
+			try
+			{
+				nid = validator.getComponentNid(rows_[i]);
+			}
+			catch (Exception e)
+			{
+				nid = ValidatorBase.UNKNOWN_NID;
+			}
+			order[i] = ((long) nid << 32) | i;
+		}
+		Arrays.sort(order);
+
+		for (long o : order)
+		{
+			int i = (int) o;
+			try
+			{
+				validator.validate(rows_[i], lineNumbers_[i], result_);
+			}
+			catch (Exception e)
+			{
+				result_.add(ValidationRule.DB_LOOKUP_FAILED, lineNumbers_[i], -1, e.getMessage());
+			}
+			rows_[i] = null;
+		}
+		result_.sortByLine();
+	}
+
+	/**
+	 * Fail every row of the batch - when the rows couldn't be validated at all.
+	 */
+	public void failAll(String message)
+	{
+		for (int i = 0; i < size_; i++)
+		{
+			result_.add(ValidationRule.DB_LOOKUP_FAILED, lineNumbers_[i], -1, message);
+			rows_[i] = null;
+		}
+	}
+
+	/**
+	 * Add the failures found by {@link #validate(ValidatorBase)} to the result, in line order.
+	 */
+	public void addResults(ValidationResult result)
+	{
+		result.addAll(result_);
+	}
+}
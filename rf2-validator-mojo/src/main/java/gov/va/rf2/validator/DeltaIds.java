@@ -0,0 +1,55 @@
+package gov.va.rf2.validator;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * The ids of the rows of the Delta files of a release - so that the Full and Snapshot files only need the rows that
+ * the Delta changed validated in full. Two ids folding to the same long (see {@link IdSet}) only means that a row is
+ * validated that didn't need to be.
+ */
+public class DeltaIds extends IdSet
+{
+	private DeltaIds()
+	{
+	}
+
+	/**
+	 * Read the ids (the first column) of the rows of the files.
+	 */
+	public static DeltaIds read(List<File> deltaFiles) throws IOException
+	{
+		DeltaIds ids = new DeltaIds();
+		for (File f : deltaFiles)
+		{
+			ids.addIds(f);
+		}
+		ids.sort();
+		return ids;
+	}
+
+	/**
+	 * @return "Delta", "Full" or "Snapshot" - from the third part of the name of an RF2 file - or null, for any other
+	 *         file.
+	 */
+	public static String getReleaseType(File f)
+	{
+		String[] parts = f.getName().split("_");
+		if (parts.length < 3)
+		{
+			return null;
+		}
+		String type = parts[2].split("-")[0];
+		return (type.equals("Delta") || type.equals("Full") || type.equals("Snapshot") ? type : null);
+	}
+
+	/**
+	 * @return the hash of the content of the current row, mixed so that the hashes of rows can be added up into a
+	 *         fingerprint of a set of rows, which doesn't depend on the order of the rows.
+	 */
+	public static long hashRow(MappedRowScanner r)
+	{
+		return mix(r.hashRow());
+	}
+}
@@ -0,0 +1,238 @@
+package gov.va.rf2.validator;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.LongBuffer;
+
+/**
+ * Finds the rows of a file with the same key - a key being two longs, such as an id and an effective time.
+ *
+ * The keys (and the line each was first seen on) are kept in an open addressing hash set, in a direct buffer - 24
+ * bytes a row, and nothing on the heap. The set grows while the {@link MemoryBudget} allows. Once it can't, the set
+ * is handed to a {@link RecordSorter}, as the first of its records - the keys are then sorted, and the duplicates
+ * found as the sorted keys are read back. Either way, the same duplicates are found.
+ */
+public class DuplicateKeyDetector implements Closeable
+{
+	private static final int RECORD_LONGS = 3;
+	private static final int RECORD_BYTES = RECORD_LONGS * 8;
+	private static final int INITIAL_CAPACITY = 1 << 16;
+	// a power of two, as the slots are found by masking the hash - and small enough for the bytes to fit in an int
+	private static final int MAX_CAPACITY = 1 << 26;
+
+	private String keyName_;
+	private MemoryBudget budget_;
+	private long reserved_ = 0;
+	private File tempFolder_;
+
+	// k1, k2, line - a line of 0 marks an empty slot
+	private LongBuffer table_;
+	private int capacity_;
+	private int size_ = 0;
+
+	private RecordSorter sorter_;
+	private long[] record_ = new long[RECORD_LONGS];
+
+	private ValidationResult duplicates_ = new ValidationResult();
+
+	/**
+	 * @param keyName the name of the key, for the message - such as "id"
+	 * @param budget the budget that the set (and then the external sort) grows from - and is returned to, when the
+	 *            detector is closed
+	 * @param tempFolder the folder of the runs of the external sort - or null, for the default temp folder
+	 */
+	public DuplicateKeyDetector(String keyName, MemoryBudget budget, File tempFolder)
+	{
+		keyName_ = keyName;
+		budget_ = budget;
+		tempFolder_ = tempFolder;
+		capacity_ = INITIAL_CAPACITY;
+		budget_.reserve((long) capacity_ * RECORD_BYTES);
+		reserved_ = (long) capacity_ * RECORD_BYTES;
+		table_ = allocate(capacity_);
+	}
+
+	/**
+	 * @param line the line of the row - rows must be added in line order.
+	 */
+	public void add(long k1, long k2, long line) throws IOException
+	{
+		if (sorter_ != null)
+		{
+			record_[0] = k1;
+			record_[1] = k2;
+			record_[2] = line;
+			sorter_.add(record_);
+			return;
+		}
+
+		int mask = capacity_ - 1;
+		int slot = (int) (IdSet.mix(k1 ^ IdSet.mix(k2)) & mask);
+		while (true)
+		{
+			int offset = slot * RECORD_LONGS;
+			long firstLine = table_.get(offset + 2);
+			if (firstLine == 0)
+			{
+				put(slot, k1, k2, line);
+				size_++;
+				break;
+			}
+			if (table_.get(offset) == k1 && table_.get(offset + 1) == k2)
+			{
+				duplicate(line, firstLine);
+				return;
+			}
+			slot = (slot + 1) & mask;
+		}
+
+		if (size_ > capacity_ / 4 * 3 && !grow())
+		{
+			startSorting();
+		}
+	}
+
+	/**
+	 * Add the duplicates (in line order) to the result - each row whose key is the key of an earlier row.
+	 */
+	public void finish(ValidationResult result) throws IOException
+	{
+		if (sorter_ != null)
+		{
+			findSortedDuplicates();
+		}
+		duplicates_.sortByLine();
+		result.addAll(duplicates_);
+	}
+
+	@Override
+	public void close()
+	{
+		if (sorter_ != null)
+		{
+			sorter_.close();
+		}
+		table_ = null;
+		budget_.release(reserved_);
+		reserved_ = 0;
+	}
+
+	/**
+	 * @return true, if the set outgrew the budget, and the keys are being sorted
+	 */
+	boolean isSorting()
+	{
+		return sorter_ != null;
+	}
+
+	private void duplicate(long line, long firstLine)
+	{
+		duplicates_.add(ValidationRule.DUPLICATE_KEY, line, -1, keyName_, firstLine);
+	}
+
+	/**
+	 * Double the set, if the budget allows - and if the direct memory is actually there.
+	 *
+	 * @return false, if the keys have to be sorted instead
+	 */
+	private boolean grow()
+	{
+		long bytes = capacity_ * 2L * RECORD_BYTES;
+		if (capacity_ == MAX_CAPACITY || !budget_.tryReserve(bytes))
+		{
+			return false;
+		}
+		LongBuffer old = table_;
+		try
+		{
+			table_ = allocate(capacity_ * 2);
+		}
+		catch (OutOfMemoryError e)
+		{
+			// more than the JVM allows for direct buffers - make do with what we have
+			budget_.release(bytes);
+			return false;
+		}
+		int oldCapacity = capacity_;
+		capacity_ *= 2;
+		int mask = capacity_ - 1;
+		for (int i = 0; i < oldCapacity; i++)
+		{
+			int offset = i * RECORD_LONGS;
+			long line = old.get(offset + 2);
+			if (line != 0)
+			{
+				long k1 = old.get(offset);
+				long k2 = old.get(offset + 1);
+				int slot = (int) (IdSet.mix(k1 ^ IdSet.mix(k2)) & mask);
+				while (table_.get(slot * RECORD_LONGS + 2) != 0)
+				{
+					slot = (slot + 1) & mask;
+				}
+				put(slot, k1, k2, line);
+			}
+		}
+		budget_.release(reserved_);
+		reserved_ = bytes;
+		return true;
+	}
+
+	/**
+	 * The set is full - pack its records to the front of the buffer, and hand it to a sorter.
+	 */
+	private void startSorting()
+	{
+		int packed = 0;
+		for (int i = 0; i < capacity_; i++)
+		{
+			int offset = i * RECORD_LONGS;
+			long line = table_.get(offset + 2);
+			if (line != 0)
+			{
+				put(packed++, table_.get(offset), table_.get(offset + 1), line);
+			}
+		}
+		// the sorter takes the buffer over, with its bytes of the budget
+		sorter_ = new RecordSorter(RECORD_LONGS, table_, packed, budget_, tempFolder_);
+		table_ = null;
+		reserved_ = 0;
+	}
+
+	/**
+	 * The records of a key come out of the sorter together, the first line first.
+	 */
+	private void findSortedDuplicates() throws IOException
+	{
+		sorter_.sort();
+		boolean first = true;
+		long k1 = 0, k2 = 0, firstLine = 0;
+		while (sorter_.next(record_))
+		{
+			if (!first && record_[0] == k1 && record_[1] == k2)
+			{
+				duplicate(record_[2], firstLine);
+			}
+			else
+			{
+				first = false;
+				k1 = record_[0];
+				k2 = record_[1];
+				firstLine = record_[2];
+			}
+		}
+	}
+
+	private void put(int index, long k1, long k2, long line)
+	{
+		int offset = index * RECORD_LONGS;
+		table_.put(offset, k1);
+		table_.put(offset + 1, k2);
+		table_.put(offset + 2, line);
+	}
+
+	private static LongBuffer allocate(int records)
+	{
+		return RecordSorter.allocate(records * RECORD_LONGS);
+	}
+}
@@ -0,0 +1,178 @@
+package gov.va.rf2.validator;
+
+/**
+ * Parses RF2 effectiveTime values directly from the bytes of a row, into a packed int - yyyyMMdd - so 31 July 2013 is
+ * 20130731. Packed values compare (and sort) the same way as the dates they represent.
+ *
+ * Accepts the TIG formats YYYYMMDD and YYYYMMDDThhmmssZ (where the zone may also be +hh, +hhmm or +hh:mm). The date
+ * must be a real calendar date. The time of day, if present, is checked, but not kept.
+ *
+ * Almost every row of a release has the same effectiveTime as the row before it, so the last value that was parsed is
+ * remembered, and a cell with the same 8 date bytes is returned without any further checking. The cache is per
+ * instance - each thread (RowValidator) uses its own parser.
+ */
+public class EffectiveTimeParser
+{
+	public static final int INVALID = -1;
+
+	// the last 8 date bytes, packed into a long, and the value they parsed to
+	private boolean hasLast_ = false;
+	private long lastBytes_;
+	private int lastValue_;
+
+	/**
+	 * @return the packed yyyyMMdd value of the time in the specified cell of the current row, or {@link #INVALID} if
+	 *         the cell isn't a valid time.
+	 */
+	public int parse(MappedRowScanner r, int cell)
+	{
+		int length = r.getCellLength(cell);
+		if (length < 8)
+		{
+			return INVALID;
+		}
+
+		long bytes = 0;
+		for (int i = 0; i < 8; i++)
+		{
+			bytes = (bytes << 8) | (r.byteAt(cell, i) & 0xFF);
+		}
+
+		int value;
+		if (hasLast_ && bytes == lastBytes_)
+		{
+			value = lastValue_;
+		}
+		else
+		{
+			value = 0;
+			for (int i = 0; i < 8; i++)
+			{
+				int digit = digit(r.byteAt(cell, i));
+				if (digit < 0)
+				{
+					return INVALID;
+				}
+				value = value * 10 + digit;
+			}
+			if (!isValidDate(value))
+			{
+				return INVALID;
+			}
+			hasLast_ = true;
+			lastBytes_ = bytes;
+			lastValue_ = value;
+		}
+
+		if (length != 8 && !isValidTimeOfDay(r, cell, length))
+		{
+			return INVALID;
+		}
+		return value;
+	}
+
+	/**
+	 * @return the packed yyyyMMdd value of a time such as 20130731
+	 * @throws Exception if the value isn't a valid yyyyMMdd date.
+	 */
+	public static int parse(String yyyyMMdd) throws Exception
+	{
+		if (yyyyMMdd == null || yyyyMMdd.length() != 8)
+		{
+			throw new Exception("unparsable time value");
+		}
+		int value = 0;
+		for (int i = 0; i < 8; i++)
+		{
+			char c = yyyyMMdd.charAt(i);
+			if (c < '0' || c > '9')
+			{
+				throw new Exception("unparsable time value");
+			}
+			value = value * 10 + (c - '0');
+		}
+		if (!isValidDate(value))
+		{
+			throw new Exception("unparsable time value");
+		}
+		return value;
+	}
+
+	/**
+	 * @return true if the packed yyyyMMdd value is a real date in the Gregorian calendar.
+	 */
+	public static boolean isValidDate(int yyyyMMdd)
+	{
+		int year = yyyyMMdd / 10000;
+		int month = (yyyyMMdd / 100) % 100;
+		int day = yyyyMMdd % 100;
+		if (year < 1 || month < 1 || month > 12 || day < 1)
+		{
+			return false;
+		}
+		switch (month)
+		{
+			case 2:
+				boolean leap = (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+				return day <= (leap ? 29 : 28);
+			case 4:
+			case 6:
+			case 9:
+			case 11:
+				return day <= 30;
+			default:
+				return day <= 31;
+		}
+	}
+
+	// Thhmmss, followed by Z, +hh, +hhmm or +hh:mm
+	private static boolean isValidTimeOfDay(MappedRowScanner r, int cell, int length)
+	{
+		if (length < 16 || r.byteAt(cell, 8) != 'T')
+		{
+			return false;
+		}
+		if (!inRange(twoDigits(r, cell, 9), 23) || !inRange(twoDigits(r, cell, 11), 59) || !inRange(twoDigits(r, cell, 13), 59))
+		{
+			return false;
+		}
+		byte zone = r.byteAt(cell, 15);
+		if (zone == 'Z' && length == 16)
+		{
+			return true;
+		}
+		if ((zone == '+' || zone == '-') && length >= 18 && inRange(twoDigits(r, cell, 16), 23))
+		{
+			if (length == 18)
+			{
+				return true;
+			}
+			int minutes = (r.byteAt(cell, 18) == ':' ? 19 : 18);
+			return length == minutes + 2 && inRange(twoDigits(r, cell, minutes), 59);
+		}
+		return false;
+	}
+
+	private static boolean inRange(int value, int max)
+	{
+		return value >= 0 && value <= max;
+	}
+
+	/**
+	 * @return the value of the two digits, or -1 if either isn't a digit
+	 */
+	private static int twoDigits(MappedRowScanner r, int cell, int position)
+	{
+		int tens = digit(r.byteAt(cell, position));
+		int units = digit(r.byteAt(cell, position + 1));
+		return (tens < 0 || units < 0 ? -1 : tens * 10 + units);
+	}
+
+	/**
+	 * @return the value of the digit, or -1 if it isn't one
+	 */
+	private static int digit(byte b)
+	{
+		return (b < '0' || b > '9' ? -1 : b - '0');
+	}
+}
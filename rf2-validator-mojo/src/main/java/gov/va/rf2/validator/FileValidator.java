@@ -0,0 +1,735 @@
+package gov.va.rf2.validator;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * Validates a single file of an RF2 release - the file name, the line endings and encoding, the header, the format of
+ * each column, and optionally, the content against the DB.
+ * 
+ * Each instance keeps its own error counters and error messages, so that files can be validated independently of each
+ * other (and in parallel). The mojo merges the results into the reports. Large files are further split into line
+ * aligned ranges, which are validated in parallel by {@link RowValidator}s.
+ */
+public class FileValidator implements Callable<FileValidator>
+{
+	// Line ending and encoding problems tend to affect every line of a file - only report the first few individually
+	protected static final int MAX_ENCODING_ERRORS_PER_FILE = 10;
+
+	private File file_;
+	private int expectedEffectiveTime_;
+	private SCTUUIDMaps maps_;
+	private boolean validateDB_;
+	private ForkJoinPool pool_;
+	private long chunkSize_;
+	private int dbBatchSize_ = 1;
+	private ExecutorService dbPool_;
+	private int maxBatchesInFlight_;
+	private int errorSamples_ = 0;
+	private ResultCache resultCache_;
+	private DeltaIds deltaIds_;
+	private ReleaseIds releaseIds_;
+	private ReferenceChecks referenceChecks_;
+	private MemoryBudget duplicateKeyBudget_;
+	private File fullFile_;
+	private MemoryBudget snapshotDerivationBudget_;
+	private File previousFile_;
+	private long fingerprint_ = 0;
+	private long fingerprintRows_ = 0;
+	private String cacheName_;
+
+	private ValidationResult result_ = new ValidationResult();
+	private int lineEndingErrorCounter_ = 0;
+	private int encodingErrorCounter_ = 0;
+
+	/**
+	 * @param pool the pool to validate the ranges of large files on - or null, to validate each file on a single thread.
+	 * @param chunkSize the size (in bytes) of the ranges that large files are split into.
+	 */
+	public FileValidator(File f, int expectedEffectiveTime, SCTUUIDMaps maps, boolean validateDB, ForkJoinPool pool, long chunkSize)
+	{
+		file_ = f;
+		expectedEffectiveTime_ = expectedEffectiveTime;
+		maps_ = maps;
+		validateDB_ = validateDB;
+		pool_ = pool;
+		chunkSize_ = chunkSize;
+	}
+
+	/**
+	 * @see RowValidator#setDbBatchSize(int)
+	 */
+	public void setDbBatchSize(int dbBatchSize)
+	{
+		dbBatchSize_ = dbBatchSize;
+	}
+
+	/**
+	 * @see RowValidator#setDbPool(ExecutorService, int)
+	 */
+	public void setDbPool(ExecutorService dbPool, int maxBatchesInFlight)
+	{
+		dbPool_ = dbPool;
+		maxBatchesInFlight_ = maxBatchesInFlight;
+	}
+
+	/**
+	 * @see RowValidator#setErrorSamples(int)
+	 */
+	public void setErrorSamples(int errorSamples)
+	{
+		errorSamples_ = errorSamples;
+		result_ = new ValidationResult(16, errorSamples);
+	}
+
+	/**
+	 * Only validate the content of the rows whose ids are in the Delta. The other rows are checked by comparing their
+	 * fingerprint against that of the same rows of the file of the previous release - if there is one.
+	 *
+	 * @see RowValidator#setDeltaIds(DeltaIds)
+	 * @param previousFile the same file of the previous release, or null
+	 */
+	public void setDeltaIds(DeltaIds deltaIds, File previousFile)
+	{
+		deltaIds_ = deltaIds;
+		previousFile_ = previousFile;
+	}
+
+	/**
+	 * Check the references of the file to concepts, descriptions and relationships against the ids of the release,
+	 * rather than the DB.
+	 *
+	 * @see RowValidator#setReferenceChecks(ReferenceChecks)
+	 */
+	public void setReleaseIds(ReleaseIds releaseIds)
+	{
+		releaseIds_ = releaseIds;
+	}
+
+	/**
+	 * Check that the ids of a Snapshot file, and the ids and effective times of a Full file, are unique.
+	 *
+	 * @param budget the memory the check may use, before it falls back to an external sort - shared with the other
+	 *            files being checked - or null, for no check
+	 */
+	public void setDuplicateKeyBudget(MemoryBudget budget)
+	{
+		duplicateKeyBudget_ = budget;
+	}
+
+	/**
+	 * Check that this Snapshot file is exactly the latest row of each id of its Full file.
+	 *
+	 * @param fullFile the Full file of this Snapshot file, or null, for no check
+	 * @param budget the memory the check may use, before its sorts fall back to temp files - shared with the other
+	 *            files being checked
+	 * @see SnapshotDerivationCheck
+	 */
+	public void setSnapshotDerivation(File fullFile, MemoryBudget budget)
+	{
+		fullFile_ = fullFile;
+		snapshotDerivationBudget_ = budget;
+	}
+
+	/**
+	 * Reuse the cached result of the file, if its content hasn't changed - and cache the result, if it has.
+	 *
+	 * @param name the name of the file, relative to the release
+	 */
+	public void setResultCache(ResultCache resultCache, String name)
+	{
+		resultCache_ = resultCache;
+		cacheName_ = name;
+	}
+
+	public File getFile()
+	{
+		return file_;
+	}
+
+	/**
+	 * The failures found in the file - both the format and the DB failures, each in the order they were found. When
+	 * summarizing, the failures on the lines are in the summaries of the result.
+	 */
+	public ValidationResult getResult()
+	{
+		return result_;
+	}
+
+	@Override
+	public FileValidator call() throws Exception
+	{
+		if (resultCache_ == null)
+		{
+			validate();
+			return this;
+		}
+		String hash = resultCache_.hash(file_);
+		if (fullFile_ != null)
+		{
+			// the result also depends on the Full file
+			hash += " " + resultCache_.hash(fullFile_);
+		}
+		ValidationResult cached = resultCache_.get(cacheName_, hash);
+		if (cached != null)
+		{
+			result_ = cached;
+			return this;
+		}
+		validate();
+		resultCache_.put(cacheName_, hash, result_);
+		return this;
+	}
+
+	private void validate() throws Exception
+	{
+		FileInfo fi = new FileInfo(file_);
+		if (file_.getName().startsWith("sct2_to_uuid_map"))
+		{
+			error(ValidationRule.FILE_NAME, "sct2_to_uuid_map files don't yet align to TIG naming conventions");
+			fi.setContentType("-MAP-");  // not part of the TIG
+			fi.setExtension(file_.getName().substring(file_.getName().lastIndexOf('.')).toLowerCase());
+		}
+		else if (file_.getName().toLowerCase().matches("[a-zA-Z0-9\\-_]+\\.[a-zA-Z0-9]{1,4}"))
+		{
+			if (file_.getName().length() > 128)
+			{
+				error(ValidationRule.FILE_NAME, "Max file name length should be 128 characters - this file is " + file_.getName().length());
+			}
+
+			if (file_.getName().contains("UUID"))
+			{
+				fi.setIsUUIDFile(true);
+			}
+
+			String[] nameParts = file_.getName().substring(0, file_.getName().length() - 4).split("_");
+			if (nameParts.length != 5)
+			{
+				error(ValidationRule.FILE_NAME, "Invalid number of elements in the file name.  Expected 5, had " + nameParts.length);
+
+				// Hack code for intermediate export files which don't currently follow convention..
+				if (nameParts.length > 5 && file_.getName().contains("UUID_"))
+				{
+					String temp = file_.getName().substring(0, file_.getName().length() - 4);
+					temp = temp.replace("UUID_", "UUID");
+					nameParts = temp.split("_");
+				}
+			}
+
+			int partNo = 1;
+			boolean[] foundParts = new boolean[5];
+			for (String part : nameParts)
+			{
+				int returnedPart = checkPart(part, partNo, fi);
+				if (returnedPart > 0)
+				{
+					foundParts[returnedPart - 1] = true;
+					partNo = returnedPart + 1;
+				}
+				else
+				{
+					partNo++;
+				}
+			}
+			for (int i = 0; i < 5; i++)
+			{
+				if (!foundParts[i])
+				{
+					error(ValidationRule.FILE_NAME, "Didn't find part number " + (i + 1));
+				}
+			}
+
+			fi.setExtension(file_.getName().substring(file_.getName().lastIndexOf('.')).toLowerCase());
+		}
+		else
+		{
+			error(ValidationRule.FILE_NAME, "Illegal file extension");
+		}
+
+		if (fi.getExtension().equals(".txt"))
+		{
+			try (MappedRowScanner r = new MappedRowScanner(file_))
+			{
+				String[] header = new String[0];
+				if (r.next())
+				{
+					RowValidator headerValidator = new RowValidator(fi, header, null, expectedEffectiveTime_, maps_, validateDB_);
+					headerValidator.checkRowEncoding(r);
+					merge(headerValidator);
+					header = r.getStrings();
+				}
+				if (header.length == 0)
+				{
+					error(ValidationRule.FILE_HEADER, "File is missing the required header line");
+				}
+
+				HashMap<Integer, DataType> columnInfo = parseHeader(header, fi);
+				if (columnInfo.size() == 0 || columnInfo.size() != header.length)
+				{
+					// can't validate the content - just the line endings and encoding
+					columnInfo = null;
+				}
+				else if (releaseIds_ != null)
+				{
+					referenceChecks_ = releaseIds_.getChecks(header);
+				}
+
+				if (pool_ != null && file_.length() - r.getPosition() > 2 * chunkSize_)
+				{
+					validateChunks(fi, header, columnInfo, r.getPosition());
+				}
+				else
+				{
+					RowValidator rv = new RowValidator(fi, header, columnInfo, expectedEffectiveTime_, maps_, validateDB_);
+					rv.setDbBatchSize(dbBatchSize_);
+					rv.setDbPool(dbPool_, maxBatchesInFlight_);
+					rv.setErrorSamples(errorSamples_);
+					rv.setDeltaIds(deltaIds_);
+					rv.setReferenceChecks(referenceChecks_);
+					rv.validateRows(r);
+					merge(rv);
+				}
+				finishEncodingChecks();
+				if (columnInfo != null && deltaIds_ != null && previousFile_ != null)
+				{
+					checkFingerprint();
+				}
+				if (columnInfo != null && duplicateKeyBudget_ != null && header.length > 1 && header[0].equals("id") && header[1].equals("effectiveTime"))
+				{
+					String releaseType = DeltaIds.getReleaseType(file_);
+					if ("Full".equals(releaseType) || "Snapshot".equals(releaseType))
+					{
+						checkDuplicateKeys("Full".equals(releaseType));
+					}
+				}
+				if (columnInfo != null && fullFile_ != null && header.length > 1 && header[0].equals("id") && header[1].equals("effectiveTime"))
+				{
+					new SnapshotDerivationCheck(fullFile_, file_, snapshotDerivationBudget_, null).check(pool_, result_);
+				}
+			}
+		}
+	}
+
+	private HashMap<Integer, DataType> parseHeader(String[] header, FileInfo fi)
+	{
+		HashMap<Integer, DataType> result = new HashMap<Integer, DataType>();
+
+		if (fi.getContentType() == null)
+		{
+			error(ValidationRule.FILE_CONTENT_TYPE, "Unknown content type (due to invalid file naming), can't validate file");
+		}
+		else if (fi.getContentType().equals("Concept"))
+		{
+			setupColumn(result, (fi.getIsUUIDFile() ? DataType.UUID : DataType.SCTID), 0, header, "id");
+			setupColumn(result, DataType.Time, 1, header, "effectiveTime");
+			setupColumn(result, (fi.getIsUUIDFile() ? DataType.UUID : DataType.Boolean), 2, header, "active");
+			setupColumn(result, (fi.getIsUUIDFile() ? DataType.UUID : DataType.SCTID), 3, header, "moduleId");
+			setupColumn(result, (fi.getIsUUIDFile() ? DataType.UUIDBoolean : DataType.SCTID), 4, header, "definitionStatusId");
+			if (header.length > 5)
+			{
+				error(ValidationRule.FILE_HEADER, "Too many columns - should have 5, but has " + header.length);
+			}
+		}
+		else if (fi.getContentType().equals("Description"))
+		{
+			setupColumn(result, (fi.getIsUUIDFile() ? DataType.UUID : DataType.SCTID), 0, header, "id");
+			setupColumn(result, DataType.Time, 1, header, "effectiveTime");
+			setupColumn(result, (fi.getIsUUIDFile() ? DataType.UUID : DataType.Boolean), 2, header, "active");
+			setupColumn(result, (fi.getIsUUIDFile() ? DataType.UUID : DataType.SCTID), 3, header, "moduleId");
+			setupColumn(result, (fi.getIsUUIDFile() ? DataType.UUID : DataType.SCTID), 4, header, "conceptId");
+			setupColumn(result, DataType.String, 5, header, "languageCode");
+			setupColumn(result, (fi.getIsUUIDFile() ? DataType.UUID : DataType.SCTID), 6, header, "typeId");
+			setupColumn(result, DataType.String, 7, header, "term");
+			setupColumn(result, (fi.getIsUUIDFile() ? DataType.UUIDBoolean : DataType.SCTID), 8, header, "caseSignificanceId");
+			if (header.length > 9)
+			{
+				error(ValidationRule.FILE_HEADER, "Too many columns - should have 9, but has " + header.length);
+			}
+		}
+		else if (fi.getContentType().equals("Relationship"))
+		{
+			setupColumn(result, (fi.getIsUUIDFile() ? DataType.UUID : DataType.SCTID), 0, header, "id");
+			setupColumn(result, DataType.Time, 1, header, "effectiveTime");
+			setupColumn(result, (fi.getIsUUIDFile() ? DataType.UUID : DataType.Boolean), 2, header, "active");
+			setupColumn(result, (fi.getIsUUIDFile() ? DataType.UUID : DataType.SCTID), 3, header, "moduleId");
+			setupColumn(result, (fi.getIsUUIDFile() ? DataType.UUID : DataType.SCTID), 4, header, "sourceId");
+			setupColumn(result, (fi.getIsUUIDFile() ? DataType.UUID : DataType.SCTID), 5, header, "destinationId");
+			setupColumn(result, DataType.Integer, 6, header, "relationshipGroup");
+			setupColumn(result, (fi.getIsUUIDFile() ? DataType.UUID : DataType.SCTID), 7, header, "typeId");
+			setupColumn(result, (fi.getIsUUIDFile() ? DataType.UUID : DataType.SCTID), 8, header, "characteristicTypeId");
+			setupColumn(result, (fi.getIsUUIDFile() ? DataType.UUID : DataType.SCTID), 9, header, "modifierId");
+			if (header.length > 10)
+			{
+				error(ValidationRule.FILE_HEADER, "Too many columns - should have 10, but has " + header.length);
+			}
+		}
+		else if (fi.getContentType().equals("Identifier"))
+		{
+			setupColumn(result, (fi.getIsUUIDFile() ? DataType.UUID : DataType.SCTID), 0, header, "identifierSchemeId");
+			setupColumn(result, DataType.String, 1, header, "alternateIdentifier");
+			setupColumn(result, DataType.Time, 2, header, "effectiveTime");
+			setupColumn(result, (fi.getIsUUIDFile() ? DataType.UUID : DataType.Boolean), 3, header, "active");
+			setupColumn(result, (fi.getIsUUIDFile() ? DataType.UUID : DataType.SCTID), 4, header, "moduleId");
+			setupColumn(result, (fi.getIsUUIDFile() ? DataType.UUID : DataType.SCTID), 5, header, "referencedComponentId");
+			if (header.length > 6)
+			{
+				error(ValidationRule.FILE_HEADER, "Too many columns - should have 6, but has " + header.length);
+			}
+		}
+		else if (fi.getContentType().endsWith("Refset"))
+		{
+			String prefix = fi.getContentType().substring(0, fi.getContentType().indexOf("Refset"));
+			setupColumn(result, DataType.UUID, 0, header, "id");
+			setupColumn(result, DataType.Time, 1, header, "effectiveTime");
+			setupColumn(result, (fi.getIsUUIDFile() ? DataType.UUID : DataType.Boolean), 2, header, "active");
+			setupColumn(result, (fi.getIsUUIDFile() ? DataType.UUID : DataType.SCTID), 3, header, "moduleId");
+			setupColumn(result, (fi.getIsUUIDFile() ? DataType.UUID : DataType.SCTID), 4, header, "refsetId");
+			setupColumn(result, DataType.SCTIDorUUID, 5, header, "referencedComponentId");
+
+			for (int i = 0; i < prefix.length(); i++)
+			{
+				char c = prefix.charAt(i);
+				if (c == 'c')
+				{
+					setupColumn(result, (fi.getIsUUIDFile() ? DataType.UUID : DataType.SCTID), 6 + i, header, "");
+				}
+				else if (c == 's')
+				{
+					setupColumn(result, DataType.String, 6 + i, header, "");
+				}
+				else if (c == 'i')
+				{
+					setupColumn(result, DataType.Integer, 6 + i, header, "");
+				}
+				else
+				{
+					error(ValidationRule.FILE_HEADER, "Invalid extra column type '" + c + "'");
+					setupColumn(result, DataType.String, 6 + i, header, "");
+				}
+			}
+			if (header.length > (6 + prefix.length()))
+			{
+				error(ValidationRule.FILE_HEADER, "Too many columns - should have " + (6 + prefix.length()) + ", but has " + header.length);
+			}
+		}
+		// 99% sure that this is supposed to be the same as Relationship - but the TIG doesn't specify
+		else if (fi.getContentType().equals("StatedRelationship"))
+		{
+			setupColumn(result, (fi.getIsUUIDFile() ? DataType.UUID : DataType.SCTID), 0, header, "id");
+			setupColumn(result, DataType.Time, 1, header, "effectiveTime");
+			setupColumn(result, (fi.getIsUUIDFile() ? DataType.UUID : DataType.Boolean), 2, header, "active");
+			setupColumn(result, (fi.getIsUUIDFile() ? DataType.UUID : DataType.SCTID), 3, header, "moduleId");
+			setupColumn(result, (fi.getIsUUIDFile() ? DataType.UUID : DataType.SCTID), 4, header, "sourceId");
+			setupColumn(result, (fi.getIsUUIDFile() ? DataType.UUID : DataType.SCTID), 5, header, "destinationId");
+			setupColumn(result, DataType.Integer, 6, header, "relationshipGroup");
+			setupColumn(result, (fi.getIsUUIDFile() ? DataType.UUID : DataType.SCTID), 7, header, "typeId");
+			setupColumn(result, (fi.getIsUUIDFile() ? DataType.UUID : DataType.SCTID), 8, header, "characteristicTypeId");
+			setupColumn(result, (fi.getIsUUIDFile() ? DataType.UUID : DataType.SCTID), 9, header, "modifierId");
+			if (header.length > 10)
+			{
+				error(ValidationRule.FILE_HEADER, "Too many columns - should have 10, but has " + header.length);
+			}
+		}
+		// Not part of the tig
+		else if (fi.getContentType().equals("-MAP-"))
+		{
+			setupColumn(result, DataType.SCTID, 0, header, "sctId");
+			setupColumn(result, DataType.UUID, 1, header, "uuid");
+		}
+		else
+		{
+			error(ValidationRule.FILE_CONTENT_TYPE, "Content Type '" + fi.getContentType() + "' validation is not yet implemented");
+		}
+		return result;
+	}
+
+	private void setupColumn(HashMap<Integer, DataType> returnMap, DataType dt, int column, String[] header, String expectedName)
+	{
+		if (column >= header.length)
+		{
+			error(ValidationRule.FILE_HEADER, "Missing expected column " + column + " which should be '" + expectedName + "'");
+		}
+		else if (expectedName.length() > 0 && !expectedName.equals(header[column]))
+		{
+			error(ValidationRule.FILE_HEADER, "Column " + (column + 1) + " should be '" + expectedName + "' but it is '" + header[column] + "'.");
+		}
+		returnMap.put(column, dt);
+	}
+
+	/**
+	 * Split the data rows of the file into ranges, aligned on line boundaries, and validate the ranges in parallel.
+	 */
+	private void validateChunks(FileInfo fi, String[] header, HashMap<Integer, DataType> columnInfo, long dataStart) throws IOException
+	{
+		long[] boundaries = MappedRowScanner.splitLines(file_, dataStart, chunkSize_);
+		ArrayList<RowValidator> rowValidators = new ArrayList<>();
+		for (int i = 0; i < boundaries.length - 1; i++)
+		{
+			RowValidator rv = new RowValidator(fi, header, columnInfo, expectedEffectiveTime_, maps_, validateDB_);
+			rv.setDbBatchSize(dbBatchSize_);
+			rv.setDbPool(dbPool_, maxBatchesInFlight_);
+			rv.setErrorSamples(errorSamples_);
+			rv.setDeltaIds(deltaIds_);
+			rv.setReferenceChecks(referenceChecks_);
+			rv.setRange(file_, boundaries[i], boundaries[i + 1]);
+			rowValidators.add(rv);
+		}
+		invokeAll(rowValidators);
+
+		// Each range numbered its lines from its own start - which is only known now that the ranges before it are read
+		long lineNumberOffset = 1;  // the header
+		for (RowValidator rv : rowValidators)
+		{
+			rv.getResult().shiftLines(lineNumberOffset);
+			merge(rv);
+			lineNumberOffset += rv.getLineCount();
+		}
+	}
+
+	private <T extends ForkJoinTask<?>> void invokeAll(ArrayList<T> tasks)
+	{
+		if (ForkJoinTask.inForkJoinPool())
+		{
+			ForkJoinTask.invokeAll(tasks);
+		}
+		else
+		{
+			for (T task : tasks)
+			{
+				pool_.execute(task);
+			}
+			for (T task : tasks)
+			{
+				task.join();
+			}
+		}
+	}
+
+	/**
+	 * Append the results of a RowValidator, limiting the line ending and encoding errors to
+	 * MAX_ENCODING_ERRORS_PER_FILE for the whole file - unless summarizing, when they are all counted.
+	 */
+	private void merge(RowValidator rv)
+	{
+		fingerprint_ += rv.getFingerprint();
+		fingerprintRows_ += rv.getFingerprintRows();
+		ValidationResult rowResult = rv.getResult();
+		if (result_.isSummarizing())
+		{
+			result_.addAll(rowResult);
+			return;
+		}
+		int lineEndingErrors = 0;
+		int encodingErrors = 0;
+		for (int i = 0; i < rowResult.size(); i++)
+		{
+			if (rowResult.getRule(i) == ValidationRule.LINE_ENDING)
+			{
+				lineEndingErrors++;
+				if (lineEndingErrorCounter_++ < MAX_ENCODING_ERRORS_PER_FILE)
+				{
+					result_.add(rowResult, i);
+				}
+			}
+			else if (rowResult.getRule(i) == ValidationRule.ENCODING)
+			{
+				encodingErrors++;
+				if (encodingErrorCounter_++ < MAX_ENCODING_ERRORS_PER_FILE)
+				{
+					result_.add(rowResult, i);
+				}
+			}
+			else
+			{
+				result_.add(rowResult, i);
+			}
+		}
+		// count the ones the RowValidator didn't list individually
+		lineEndingErrorCounter_ += rv.getLineEndingErrorCount() - lineEndingErrors;
+		encodingErrorCounter_ += rv.getEncodingErrorCount() - encodingErrors;
+	}
+
+	/**
+	 * The rows that weren't in the Delta should be exactly the rows of the previous release that weren't - in any
+	 * order.
+	 */
+	private void checkFingerprint() throws IOException
+	{
+		long fingerprint = 0;
+		long rows = 0;
+		try (MappedRowScanner r = new MappedRowScanner(previousFile_))
+		{
+			boolean header = true;
+			while (r.next())
+			{
+				if (header)
+				{
+					header = false;
+				}
+				else if (!deltaIds_.contains(r, 0))
+				{
+					fingerprint += DeltaIds.hashRow(r);
+					rows++;
+				}
+			}
+		}
+		if (fingerprint != fingerprint_ || rows != fingerprintRows_)
+		{
+			result_.add(ValidationRule.DELTA_FINGERPRINT, -1, -1, fingerprintRows_, rows, previousFile_.getName());
+		}
+	}
+
+	/**
+	 * In a separate pass over the file, as a key may be duplicated in any of the ranges of the file. Rows whose id or
+	 * effective time doesn't parse are skipped - they are already reported.
+	 */
+	private void checkDuplicateKeys(boolean full) throws IOException
+	{
+		try (DuplicateKeyDetector detector = new DuplicateKeyDetector((full ? "id and effectiveTime" : "id"), duplicateKeyBudget_, null);
+				MappedRowScanner r = new MappedRowScanner(file_))
+		{
+			boolean header = true;
+			while (r.next())
+			{
+				if (header)
+				{
+					header = false;
+					continue;
+				}
+				if (r.getCellCount() < 2)
+				{
+					continue;
+				}
+				long time = 0;
+				if (full)
+				{
+					time = r.tryParseDigits(1);
+					if (time < 0)
+					{
+						continue;
+					}
+				}
+				long id = r.tryParseDigits(0);
+				if (id >= 0)
+				{
+					detector.add(id, time, r.getLineNumber());
+				}
+				else if (r.isUUID(0))
+				{
+					// the effective time is folded into the UUID - a false match is as unlikely as a UUID collision
+					detector.add(r.parseUUIDMostSignificantBits(0), r.parseUUIDLeastSignificantBits(0) ^ IdSet.mix(time), r.getLineNumber());
+				}
+			}
+			detector.finish(result_);
+		}
+	}
+
+	private void finishEncodingChecks()
+	{
+		if (result_.isSummarizing())
+		{
+			return;
+		}
+		if (lineEndingErrorCounter_ > MAX_ENCODING_ERRORS_PER_FILE)
+		{
+			result_.add(ValidationRule.LINE_ENDING_SUMMARY, -1, -1, lineEndingErrorCounter_ - MAX_ENCODING_ERRORS_PER_FILE);
+		}
+		if (encodingErrorCounter_ > MAX_ENCODING_ERRORS_PER_FILE)
+		{
+			result_.add(ValidationRule.ENCODING_SUMMARY, -1, -1, encodingErrorCounter_ - MAX_ENCODING_ERRORS_PER_FILE);
+		}
+	}
+
+	private int checkPart(String part, int partNo, FileInfo fi)
+	{
+		if (StringUtils.isBlank(part))
+		{
+			error(ValidationRule.FILE_NAME, "All 5 elements of the file name are required.  Part " + partNo + " is missing");
+		}
+
+		// In the cases where there are more parts than we expect, try to find the right part number
+		int actualPartNumber = -1;
+
+		try
+		{
+			if (part.matches("(z|x)?(sct|der|res|tls|doc)(1|2)?"))
+			{
+				actualPartNumber = 1;
+				fi.setFileType(part);
+				if (!part.matches("(z|x)?(sct|der)(1|2)"))
+				{
+					error(ValidationRule.FILE_NAME, "File types of sct and der must have a part 1 that ends with '1' or '2'.");
+				}
+			}
+			else if (part.matches("(Concept|Description|Relationship|Identifier|StatedRelationship)|([csi]+Refset)") 
+					|| "res".equals(fi.getFileTypeCode()) && partNo == 2)
+			{
+				// 2nd part of the if statement isn't well specified in the spec - - could be nearly anything....
+				//TIG doc on StatedRelationship is fuzzy as well.. but they say its ok.  TIG needs updates.
+				fi.setContentType(part);
+				actualPartNumber = 2;
+				if (part.length() > 48)
+				{
+					error(ValidationRule.FILE_NAME, "Part two only allows 48 characters - this one is " + part.length() + " long. - '" + part + "'");
+				}
+			}
+			else if ((fi.getFileTypeCode().matches("(sct)|(der)|(res)") && part.matches(".*(Full|Snapshot|Delta)((\\-[a-z]{2})(\\-[A-Z]{2})?)?"))
+					|| (fi.getFileTypeCode().matches("(tls)|(doc)") && part.matches(".*(Current|Draft|Review)((\\-[a-z]{2})(\\-[A-Z]{2})?)?"))
+					|| (fi.getFileTypeCode().equals("tls") && part.matches(".*((\\-[a-z]{2})(\\-[A-Z]{2})?)?")))
+			{
+				fi.setContentSubType(part);
+				actualPartNumber = 3;
+				if (part.length() > 48)
+				{
+					error(ValidationRule.FILE_NAME, "Part three only allows 48 characters - this one is " + part.length() + " long. - '" + part + "'");
+				}
+			}
+			else if (part.matches("(INT|[A-Z]{2})?([0-9]{7})?"))
+			{
+				fi.setCountryNamespace(part);
+				actualPartNumber = 4;
+			}
+			else if (part.matches("[0-9]{8}?"))
+			{
+				fi.setVersionDate(part);
+				actualPartNumber = 5;
+			}
+			else
+			{
+				error(ValidationRule.FILE_NAME, "Unknown part: " + part);
+				actualPartNumber = -1;
+			}
+		}
+		catch (UnsupportedOperationException e)
+		{
+			error(ValidationRule.FILE_NAME, "Parts of the filename were invald, and could not be identified correctly: " + e.getMessage());
+		}
+
+		if (actualPartNumber > 0 && actualPartNumber != partNo)
+		{
+			error(ValidationRule.FILE_NAME, "Part passed in as part " + partNo + " actually validates as part " + actualPartNumber);
+		}
+
+		// part three can have a hyphen between en-US, and can also have a hyphen before 'en' if it contains a doc status, etc.
+		// otherwise, only alphanumeric is allowed
+		if (!part.matches((actualPartNumber == 3 ? "[A-Za-z0-9]+((\\-[a-z]{2})(\\-[A-Z]{2})?)?" : "[A-Za-z0-9]+")))
+		{
+			error(ValidationRule.FILE_NAME, "The filename contains illegal characters in part " + partNo + " '" + part + "'");
+		}
+
+		return actualPartNumber;
+	}
+
+	private void error(ValidationRule rule, String message)
+	{
+		result_.add(rule, -1, -1, message);
+	}
+}
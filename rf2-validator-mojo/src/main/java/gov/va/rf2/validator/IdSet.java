@@ -0,0 +1,160 @@
+package gov.va.rf2.validator;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * A set of component ids, kept as a sorted array of longs - an SCTID as its value, a UUID (or anything else) folded
+ * into 64 bits. Eight bytes an id, with no object per id, so the ids of a whole release fit in memory.
+ *
+ * The ids are added, then {@link #sort()}ed once, then looked up with a binary search. While they are added, they are
+ * merged into the sorted ids a batch at a time, dropping the duplicates - so that the rows of a Full file, with most ids
+ * on several rows, don't take much more memory than its distinct ids. Two ids folding to the same long is possible, but
+ * unlikely - only UUIDs and malformed ids are folded.
+ */
+public class IdSet
+{
+	// the largest array the VMs allow
+	private static final int MAX_IDS = Integer.MAX_VALUE - 8;
+	private static final int BATCH_IDS = 1 << 20;
+
+	private long[] ids_ = new long[1024];
+	private int size_ = 0;
+	// the ids before this index are sorted, without duplicates - the rest are the current batch
+	private int sorted_ = 0;
+
+	public void add(MappedRowScanner r, int cell)
+	{
+		if (size_ == ids_.length)
+		{
+			mergeBatch();
+			// only grow the array if the duplicates dropped didn't free up much of it
+			if (size_ > ids_.length - ids_.length / 8 && ids_.length < MAX_IDS)
+			{
+				ids_ = Arrays.copyOf(ids_, (int) Math.min(ids_.length + (long) ids_.length / 2, MAX_IDS));
+			}
+			if (size_ == ids_.length)
+			{
+				throw new IllegalStateException("More than " + MAX_IDS + " ids");
+			}
+		}
+		else if (size_ - sorted_ == BATCH_IDS)
+		{
+			mergeBatch();
+		}
+		ids_[size_++] = key(r, cell);
+	}
+
+	/**
+	 * Add the ids (the first column) of the rows of the file - skipping the header line.
+	 */
+	public void addIds(File f) throws IOException
+	{
+		try (MappedRowScanner r = new MappedRowScanner(f))
+		{
+			boolean header = true;
+			while (r.next())
+			{
+				if (header)
+				{
+					header = false;
+					continue;
+				}
+				add(r, 0);
+			}
+		}
+	}
+
+	/**
+	 * Sort the ids, and drop the duplicates - call once all of the ids are added, before looking any up.
+	 */
+	public void sort()
+	{
+		mergeBatch();
+		if (size_ < ids_.length - ids_.length / 8)
+		{
+			ids_ = Arrays.copyOf(ids_, Math.max(1, size_));
+		}
+	}
+
+	/**
+	 * Sort the current batch, drop its duplicates and the ids that are already sorted, and merge the rest into the
+	 * sorted ids - from the end, so that only the batch needs copying.
+	 */
+	private void mergeBatch()
+	{
+		Arrays.sort(ids_, sorted_, size_);
+		int end = sorted_;
+		for (int i = sorted_; i < size_; i++)
+		{
+			if ((end == sorted_ || ids_[i] != ids_[end - 1]) && Arrays.binarySearch(ids_, 0, sorted_, ids_[i]) < 0)
+			{
+				ids_[end++] = ids_[i];
+			}
+		}
+		long[] batch = Arrays.copyOfRange(ids_, sorted_, end);
+		int i = sorted_ - 1;
+		int j = batch.length - 1;
+		for (int k = end - 1; j >= 0; k--)
+		{
+			ids_[k] = (i >= 0 && ids_[i] > batch[j] ? ids_[i--] : batch[j--]);
+		}
+		size_ = end;
+		sorted_ = end;
+	}
+
+	public boolean contains(MappedRowScanner r, int cell)
+	{
+		return Arrays.binarySearch(ids_, 0, size_, key(r, cell)) >= 0;
+	}
+
+	public int size()
+	{
+		return size_;
+	}
+
+	/**
+	 * @return a hash of the ids - which changes when the ids do
+	 */
+	public long getFingerprint()
+	{
+		long fingerprint = size_;
+		for (int i = 0; i < size_; i++)
+		{
+			fingerprint = fingerprint * 31 + mix(ids_[i]);
+		}
+		return fingerprint;
+	}
+
+	private static long key(MappedRowScanner r, int cell)
+	{
+		if (cell >= r.getCellCount())
+		{
+			return 0;
+		}
+		long id = r.tryParseDigits(cell);
+		if (id >= 0)
+		{
+			return id;
+		}
+		if (r.isUUID(cell))
+		{
+			return mix(r.parseUUIDMostSignificantBits(cell)) ^ r.parseUUIDLeastSignificantBits(cell);
+		}
+		return mix(r.hashCell(cell));
+	}
+
+	/**
+	 * The finalizer of MurmurHash3 - spreads the bits of the value over the whole long.
+	 */
+	static long mix(long value)
+	{
+		value ^= value >>> 33;
+		value *= 0xff51afd7ed558ccdL;
+		value ^= value >>> 33;
+		value *= 0xc4ceb9fe1a85ec53L;
+		value ^= value >>> 33;
+		return value;
+	}
+}
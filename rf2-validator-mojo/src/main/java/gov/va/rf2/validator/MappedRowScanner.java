@@ -0,0 +1,671 @@
+package gov.va.rf2.validator;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+
+/**
+ * Byte level reader for the tab delimited RF2 files, which works directly on a memory mapped view of the file.
+ *
+ * Rows are terminated by LF (a CR immediately before the LF is not considered part of the row), cells are separated
+ * by TAB. No quote processing is done - RF2 doesn't use quoting. A leading UTF-8 BOM is skipped.
+ *
+ * The line terminator and the UTF-8 well-formedness of each row are checked in the same pass that finds the cell
+ * boundaries - see {@link #hasLineTerminator()}, {@link #hasCRLF()} and {@link #getMalformedUTF8Cell()}.
+ *
+ * The cells of the current row are exposed as offsets into the mapped buffer - nothing is decoded or allocated
+ * unless a caller asks for a cell as a String. Large files are mapped in windows, which are moved along as the
+ * file is read. A scanner may also be restricted to a range of the file, so that multiple scanners can read the same
+ * file in parallel.
+ */
+public class MappedRowScanner implements Closeable
+{
+	public static final long NOT_AN_INT = Long.MIN_VALUE;
+
+	private static final int DEFAULT_WINDOW_SIZE = 256 * 1024 * 1024;
+	private static final int UTF8_INVALID = -1;
+	private static final int UTF8_TRUNCATED = -2;
+
+	private final int windowSize_;
+	private RandomAccessFile raf_;
+	private FileChannel channel_;
+	private long endPosition_;
+
+	private MappedByteBuffer buffer_;
+	private long windowStart_;
+	private int windowLimit_;
+	private int pos_;
+
+	private int[] cellStart_ = new int[16];
+	private int[] cellEnd_ = new int[16];
+	private int cellCount_;
+	private long lineNumber_;
+	private boolean lineTerminated_, crlf_;
+	private int malformedUTF8Cell_;
+
+	private byte[] scratch_ = new byte[256];
+
+	public MappedRowScanner(File f) throws IOException
+	{
+		this(f, DEFAULT_WINDOW_SIZE);
+	}
+
+	public MappedRowScanner(File f, int windowSize) throws IOException
+	{
+		this(f, windowSize, 0, -1);
+	}
+
+	/**
+	 * Read only the rows within a byte range of the file - see {@link #splitLines(File, long, long)}. The line numbers
+	 * are relative to the start of the range - its first row is line 1.
+	 * 
+	 * @param start the position of the first byte of the first row
+	 * @param end the position after the terminator of the last row, or -1 for the end of the file
+	 */
+	public MappedRowScanner(File f, long start, long end) throws IOException
+	{
+		this(f, DEFAULT_WINDOW_SIZE, start, end);
+	}
+
+	private MappedRowScanner(File f, int windowSize, long start, long end) throws IOException
+	{
+		windowSize_ = windowSize;
+		raf_ = new RandomAccessFile(f, "r");
+		channel_ = raf_.getChannel();
+		endPosition_ = (end < 0 ? channel_.size() : end);
+		map(start);
+		// skip a UTF-8 BOM, if present
+		if (start == 0 && windowLimit_ >= 3 && buffer_.get(0) == (byte) 0xEF && buffer_.get(1) == (byte) 0xBB && buffer_.get(2) == (byte) 0xBF)
+		{
+			pos_ = 3;
+		}
+	}
+
+	/**
+	 * Split a section of a file into byte ranges of roughly chunkSize bytes, where each range starts at the beginning
+	 * of a line.
+	 * 
+	 * @return the boundaries of the ranges - range n is [boundaries[n], boundaries[n + 1])
+	 */
+	public static long[] splitLines(File f, long start, long chunkSize) throws IOException
+	{
+		try (RandomAccessFile raf = new RandomAccessFile(f, "r"))
+		{
+			FileChannel channel = raf.getChannel();
+			long size = channel.size();
+			ArrayList<Long> boundaries = new ArrayList<>();
+			boundaries.add(start);
+			ByteBuffer bb = ByteBuffer.allocate(64 * 1024);
+			long position = start + chunkSize;
+			while (position < size)
+			{
+				// find the next LF at or after position
+				long lineStart = -1;
+				while (lineStart < 0 && position < size)
+				{
+					bb.clear();
+					int read = channel.read(bb, position);
+					for (int i = 0; i < read; i++)
+					{
+						if (bb.get(i) == '\n')
+						{
+							lineStart = position + i + 1;
+							break;
+						}
+					}
+					position += read;
+				}
+				if (lineStart < 0 || lineStart >= size)
+				{
+					break;
+				}
+				boundaries.add(lineStart);
+				position = lineStart + chunkSize;
+			}
+			boundaries.add(size);
+
+			long[] result = new long[boundaries.size()];
+			for (int i = 0; i < result.length; i++)
+			{
+				result[i] = boundaries.get(i);
+			}
+			return result;
+		}
+	}
+
+	private void map(long start) throws IOException
+	{
+		windowStart_ = start;
+		windowLimit_ = (int) Math.min(windowSize_, endPosition_ - start);
+		buffer_ = channel_.map(FileChannel.MapMode.READ_ONLY, start, windowLimit_);
+		pos_ = 0;
+	}
+
+	/**
+	 * Advance to the next row.
+	 *
+	 * @return false, if the end of the file has been reached.
+	 */
+	public boolean next() throws IOException
+	{
+		if (windowStart_ + pos_ >= endPosition_)
+		{
+			return false;
+		}
+
+		while (true)
+		{
+			int i = pos_;
+			int cell = 0;
+			cellStart_[0] = i;
+			malformedUTF8Cell_ = -1;
+			while (i < windowLimit_)
+			{
+				byte b = buffer_.get(i);
+				if (b == '\t')
+				{
+					cellEnd_[cell] = i;
+					cell++;
+					if (cell == cellStart_.length)
+					{
+						growCells();
+					}
+					cellStart_[cell] = i + 1;
+				}
+				else if (b == '\n')
+				{
+					break;
+				}
+				else if (b < 0)
+				{
+					int length = utf8SequenceLength(i);
+					if (length > 0)
+					{
+						i += length;
+						continue;
+					}
+					else if (length == UTF8_TRUNCATED && windowStart_ + windowLimit_ < endPosition_)
+					{
+						// the rest of the sequence is in the next window - handled by the window move below
+						i = windowLimit_;
+						break;
+					}
+					else if (malformedUTF8Cell_ < 0)
+					{
+						malformedUTF8Cell_ = cell;
+					}
+				}
+				i++;
+			}
+
+			if (i == windowLimit_ && windowStart_ + windowLimit_ < endPosition_)
+			{
+				// Row crosses the end of the window. Move the window up to the start of this row, and try again.
+				if (pos_ == 0)
+				{
+					throw new IOException("Line " + (lineNumber_ + 1) + " is longer than the maximum supported line length of " + windowSize_ + " bytes");
+				}
+				map(windowStart_ + pos_);
+				continue;
+			}
+
+			lineTerminated_ = (i < windowLimit_);
+			int end = i;
+			crlf_ = false;
+			if (end > cellStart_[cell] && buffer_.get(end - 1) == '\r')
+			{
+				end--;
+				crlf_ = lineTerminated_;
+			}
+			cellEnd_[cell] = end;
+			cellCount_ = cell + 1;
+			pos_ = (i < windowLimit_ ? i + 1 : i);
+			lineNumber_++;
+			return true;
+		}
+	}
+
+	/**
+	 * Strict UTF-8 validation of the multi-byte sequence starting at the specified buffer position - rejecting
+	 * overlong forms, surrogates and values above U+10FFFF.
+	 * 
+	 * @return the length of the sequence, or one of the UTF8_ error constants.
+	 */
+	private int utf8SequenceLength(int position)
+	{
+		int b0 = buffer_.get(position) & 0xFF;
+		int length;
+		int min = 0x80;
+		int max = 0xBF;
+		if (b0 >= 0xC2 && b0 <= 0xDF)
+		{
+			length = 2;
+		}
+		else if (b0 >= 0xE0 && b0 <= 0xEF)
+		{
+			length = 3;
+			if (b0 == 0xE0)
+			{
+				min = 0xA0;
+			}
+			else if (b0 == 0xED)
+			{
+				max = 0x9F;
+			}
+		}
+		else if (b0 >= 0xF0 && b0 <= 0xF4)
+		{
+			length = 4;
+			if (b0 == 0xF0)
+			{
+				min = 0x90;
+			}
+			else if (b0 == 0xF4)
+			{
+				max = 0x8F;
+			}
+		}
+		else
+		{
+			return UTF8_INVALID;
+		}
+
+		if (position + length > windowLimit_)
+		{
+			return UTF8_TRUNCATED;
+		}
+		int b1 = buffer_.get(position + 1) & 0xFF;
+		if (b1 < min || b1 > max)
+		{
+			return UTF8_INVALID;
+		}
+		for (int i = 2; i < length; i++)
+		{
+			if ((buffer_.get(position + i) & 0xC0) != 0x80)
+			{
+				return UTF8_INVALID;
+			}
+		}
+		return length;
+	}
+
+	private void growCells()
+	{
+		int[] temp = new int[cellStart_.length * 2];
+		System.arraycopy(cellStart_, 0, temp, 0, cellStart_.length);
+		cellStart_ = temp;
+		temp = new int[cellEnd_.length * 2];
+		System.arraycopy(cellEnd_, 0, temp, 0, cellEnd_.length);
+		cellEnd_ = temp;
+	}
+
+	/**
+	 * The 1 based line number of the current row.
+	 */
+	public long getLineNumber()
+	{
+		return lineNumber_;
+	}
+
+	/**
+	 * The position in the file of the first byte after the current row (and its terminator).
+	 */
+	public long getPosition()
+	{
+		return windowStart_ + pos_;
+	}
+
+	/**
+	 * False if the current row is the last row of the file, and it isn't followed by a line terminator.
+	 */
+	public boolean hasLineTerminator()
+	{
+		return lineTerminated_;
+	}
+
+	/**
+	 * True if the current row was terminated by CR+LF.
+	 */
+	public boolean hasCRLF()
+	{
+		return crlf_;
+	}
+
+	/**
+	 * The (0 based) index of the first cell in the current row which is not well formed UTF-8, or -1 if the row is valid.
+	 */
+	public int getMalformedUTF8Cell()
+	{
+		return malformedUTF8Cell_;
+	}
+
+	public int getCellCount()
+	{
+		return cellCount_;
+	}
+
+	public int getCellLength(int cell)
+	{
+		return cellEnd_[cell] - cellStart_[cell];
+	}
+
+	/**
+	 * The byte at the (0 based) position within the specified cell.
+	 */
+	public byte byteAt(int cell, int position)
+	{
+		return buffer_.get(cellStart_[cell] + position);
+	}
+
+	/**
+	 * Case insensitive comparison of the cell against an ASCII only value - without decoding the cell.
+	 */
+	public boolean cellEqualsIgnoreCase(int cell, String asciiValue)
+	{
+		int start = cellStart_[cell];
+		int length = cellEnd_[cell] - start;
+		if (length != asciiValue.length())
+		{
+			return false;
+		}
+		for (int i = 0; i < length; i++)
+		{
+			int b = buffer_.get(start + i);
+			if (b >= 'A' && b <= 'Z')
+			{
+				b += ('a' - 'A');
+			}
+			if (b != Character.toLowerCase(asciiValue.charAt(i)))
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Parse the cell as a (optionally signed) decimal int, following the rules of {@link Integer#parseInt(String)}.
+	 */
+	public int parseInt(int cell) throws NumberFormatException
+	{
+		long result = tryParseInt(cell);
+		if (result == NOT_AN_INT)
+		{
+			throw new NumberFormatException("not an int");
+		}
+		return (int) result;
+	}
+
+	/**
+	 * Like {@link #parseInt(int)}, but without the cost of an exception, for cells that may well be invalid.
+	 * 
+	 * @return the int value of the cell, or {@link #NOT_AN_INT}.
+	 */
+	public long tryParseInt(int cell)
+	{
+		int start = cellStart_[cell];
+		int end = cellEnd_[cell];
+		if (start == end)
+		{
+			return NOT_AN_INT;
+		}
+		boolean negative = false;
+		int i = start;
+		byte first = buffer_.get(i);
+		if (first == '-' || first == '+')
+		{
+			negative = (first == '-');
+			i++;
+			if (i == end)
+			{
+				return NOT_AN_INT;
+			}
+		}
+		// accumulate negatively, so that Integer.MIN_VALUE can be represented
+		int limit = (negative ? Integer.MIN_VALUE : -Integer.MAX_VALUE);
+		int multmin = limit / 10;
+		int result = 0;
+		for (; i < end; i++)
+		{
+			int digit = buffer_.get(i) - '0';
+			if (digit < 0 || digit > 9 || result < multmin)
+			{
+				return NOT_AN_INT;
+			}
+			result *= 10;
+			if (result < limit + digit)
+			{
+				return NOT_AN_INT;
+			}
+			result -= digit;
+		}
+		return (negative ? result : -result);
+	}
+
+	/**
+	 * @return the value of a cell of 1 to 18 decimal digits (which covers every SCTID) - or -1, for any other cell.
+	 */
+	public long tryParseDigits(int cell)
+	{
+		int start = cellStart_[cell];
+		int end = cellEnd_[cell];
+		if (start == end || end - start > 18)
+		{
+			return -1;
+		}
+		long result = 0;
+		for (int i = start; i < end; i++)
+		{
+			int digit = buffer_.get(i) - '0';
+			if (digit < 0 || digit > 9)
+			{
+				return -1;
+			}
+			result = result * 10 + digit;
+		}
+		return result;
+	}
+
+	/**
+	 * A 64 bit FNV-1a hash of the bytes of the cell.
+	 */
+	public long hashCell(int cell)
+	{
+		return hash(cellStart_[cell], cellEnd_[cell]);
+	}
+
+	/**
+	 * A 64 bit FNV-1a hash of the bytes of the current row - the cells and the tabs between them, but not the line
+	 * terminator.
+	 */
+	public long hashRow()
+	{
+		return hash(cellStart_[0], cellEnd_[cellCount_ - 1]);
+	}
+
+	private long hash(int start, int end)
+	{
+		long hash = 0xcbf29ce484222325L;
+		for (int i = start; i < end; i++)
+		{
+			hash ^= buffer_.get(i) & 0xFF;
+			hash *= 0x100000001b3L;
+		}
+		return hash;
+	}
+
+	/**
+	 * Parse the cell as a (optionally signed) decimal long, following the rules of {@link Long#parseLong(String)}.
+	 */
+	public long parseLong(int cell) throws NumberFormatException
+	{
+		int start = cellStart_[cell];
+		int end = cellEnd_[cell];
+		if (start == end)
+		{
+			throw new NumberFormatException("empty value");
+		}
+		boolean negative = false;
+		int i = start;
+		byte first = buffer_.get(i);
+		if (first == '-' || first == '+')
+		{
+			negative = (first == '-');
+			i++;
+			if (i == end)
+			{
+				throw new NumberFormatException("no digits");
+			}
+		}
+		// accumulate negatively, so that Long.MIN_VALUE can be represented
+		long limit = (negative ? Long.MIN_VALUE : -Long.MAX_VALUE);
+		long multmin = limit / 10;
+		long result = 0;
+		for (; i < end; i++)
+		{
+			int digit = buffer_.get(i) - '0';
+			if (digit < 0 || digit > 9 || result < multmin)
+			{
+				throw new NumberFormatException("not a long");
+			}
+			result *= 10;
+			if (result < limit + digit)
+			{
+				throw new NumberFormatException("not a long");
+			}
+			result -= digit;
+		}
+		return (negative ? result : -result);
+	}
+
+	/**
+	 * Parse the most significant 64 bits of a UUID in the canonical 8-4-4-4-12 hex form, without decoding the cell.
+	 */
+	public long parseUUIDMostSignificantBits(int cell) throws NumberFormatException
+	{
+		int start = checkUUIDLayout(cell);
+		return (parseHex(start, 8) << 32) | (parseHex(start + 9, 4) << 16) | parseHex(start + 14, 4);
+	}
+
+	/**
+	 * Parse the least significant 64 bits of a UUID in the canonical 8-4-4-4-12 hex form, without decoding the cell.
+	 */
+	public long parseUUIDLeastSignificantBits(int cell) throws NumberFormatException
+	{
+		int start = checkUUIDLayout(cell);
+		return (parseHex(start + 19, 4) << 48) | parseHex(start + 24, 12);
+	}
+
+	/**
+	 * @return true, if the cell is a UUID in the canonical 8-4-4-4-12 hex form - so that the parseUUID methods won't
+	 *         throw.
+	 */
+	public boolean isUUID(int cell)
+	{
+		int start = cellStart_[cell];
+		if (cellEnd_[cell] - start != 36)
+		{
+			return false;
+		}
+		for (int i = 0; i < 36; i++)
+		{
+			int b = buffer_.get(start + i);
+			if (i == 8 || i == 13 || i == 18 || i == 23)
+			{
+				if (b != '-')
+				{
+					return false;
+				}
+			}
+			else if (!((b >= '0' && b <= '9') || (b >= 'a' && b <= 'f') || (b >= 'A' && b <= 'F')))
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private int checkUUIDLayout(int cell)
+	{
+		int start = cellStart_[cell];
+		if (cellEnd_[cell] - start != 36 || buffer_.get(start + 8) != '-' || buffer_.get(start + 13) != '-' || buffer_.get(start + 18) != '-'
+				|| buffer_.get(start + 23) != '-')
+		{
+			throw new NumberFormatException("not a UUID");
+		}
+		return start;
+	}
+
+	private long parseHex(int start, int length)
+	{
+		long result = 0;
+		for (int i = start; i < start + length; i++)
+		{
+			int b = buffer_.get(i);
+			int digit;
+			if (b >= '0' && b <= '9')
+			{
+				digit = b - '0';
+			}
+			else if (b >= 'a' && b <= 'f')
+			{
+				digit = b - 'a' + 10;
+			}
+			else if (b >= 'A' && b <= 'F')
+			{
+				digit = b - 'A' + 10;
+			}
+			else
+			{
+				throw new NumberFormatException("not a hex digit");
+			}
+			result = (result << 4) | digit;
+		}
+		return result;
+	}
+
+	/**
+	 * Decode the cell as UTF-8.
+	 */
+	public String getString(int cell)
+	{
+		int start = cellStart_[cell];
+		int length = cellEnd_[cell] - start;
+		if (length > scratch_.length)
+		{
+			scratch_ = new byte[Math.max(length, scratch_.length * 2)];
+		}
+		for (int i = 0; i < length; i++)
+		{
+			scratch_[i] = buffer_.get(start + i);
+		}
+		return new String(scratch_, 0, length, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Decode all of the cells of the current row.
+	 */
+	public String[] getStrings()
+	{
+		String[] result = new String[cellCount_];
+		for (int i = 0; i < cellCount_; i++)
+		{
+			result[i] = getString(i);
+		}
+		return result;
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		buffer_ = null;
+		channel_.close();
+		raf_.close();
+	}
+}
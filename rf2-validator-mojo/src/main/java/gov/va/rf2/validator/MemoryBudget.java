@@ -0,0 +1,56 @@
+package gov.va.rf2.validator;
+
+/**
+ * The direct (off heap) memory that the key checks may use, shared by all the files being validated in parallel - so
+ * that the total stays bounded, however many files are checked at once.
+ *
+ * A check always gets its (small) initial buffer, even if that overdraws the budget - so that it can always make
+ * progress. Beyond that, a check only grows its buffers while the budget allows, and otherwise sorts through temp
+ * files instead.
+ */
+public class MemoryBudget
+{
+	private long available_;
+
+	/**
+	 * @param bytes the bytes that all the checks may use, together
+	 */
+	public MemoryBudget(long bytes)
+	{
+		available_ = bytes;
+	}
+
+	/**
+	 * Take the bytes of an initial buffer from the budget, whether or not they are available.
+	 */
+	public synchronized void reserve(long bytes)
+	{
+		available_ -= bytes;
+	}
+
+	/**
+	 * @return true, if the bytes were available, and are now taken from the budget
+	 */
+	public synchronized boolean tryReserve(long bytes)
+	{
+		if (bytes > available_)
+		{
+			return false;
+		}
+		available_ -= bytes;
+		return true;
+	}
+
+	/**
+	 * Return bytes that were reserved to the budget.
+	 */
+	public synchronized void release(long bytes)
+	{
+		available_ += bytes;
+	}
+
+	public synchronized long getAvailable()
+	{
+		return available_;
+	}
+}
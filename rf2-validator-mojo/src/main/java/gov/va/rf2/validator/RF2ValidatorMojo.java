@@ -1,32 +1,19 @@
 package gov.va.rf2.validator;
 
 import gov.va.oia.terminology.converters.sharedUtils.ConsoleUtil;
-import gov.va.rf2.validator.rowData.Concept;
-import gov.va.rf2.validator.rowData.Description;
-import gov.va.rf2.validator.rowData.Identifier;
-import gov.va.rf2.validator.rowData.Refset;
-import gov.va.rf2.validator.rowData.Relationship;
-import gov.va.rf2.validator.rowData.UUIDConcept;
-import gov.va.rf2.validator.rowData.UUIDDescription;
-import gov.va.rf2.validator.rowData.UUIDIdentifier;
-import gov.va.rf2.validator.rowData.UUIDRefset;
-import gov.va.rf2.validator.rowData.UUIDRelationship;
-
-import java.io.BufferedWriter;
+import gov.va.rf2.validator.rowData.MetadataRegistry;
+import gov.va.rf2.validator.rowData.ValidatorBase;
+
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileWriter;
-import java.io.IOException;
-import java.io.InputStreamReader;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
-import java.util.Arrays;
-import java.util.Date;
-import java.util.HashMap;
-import java.util.UUID;
-
-import org.apache.commons.io.input.BOMInputStream;
-import org.apache.commons.lang.StringUtils;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
 import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
@@ -34,16 +21,14 @@ import org.apache.maven.plugins.annotations.LifecyclePhase;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
 
-import au.com.bytecode.opencsv.CSVReader;
-
 /**
  * Goal which validates a set of RF2 output files.
  * 
  * This validator validates all aspects of the RF2 file naming, reporting on any file name which is inconsistent
  * with the TIG file naming conventions.
  * 
- * Next, the validator checks the content of each of the .txt files, ensuring that the proper EOL characters are used,
- * the proper number of EOL characters are used, the content is parseable as UFT-8.
+ * Next, the validator checks the content of each of the .txt files, ensuring that every line ends with the proper EOL
+ * characters, and that the content is well formed UTF-8.
  * 
  * It checks that each file contains a header, with the proper header columns as specified in the TIG.
  * It checks that each data row is consistent with the header.
@@ -58,8 +43,12 @@ import au.com.bytecode.opencsv.CSVReader;
 @Mojo( name = "rf2-validate", defaultPhase = LifecyclePhase.PROCESS_SOURCES )
 public class RF2ValidatorMojo extends AbstractMojo
 {
+	private static final int DEFAULT_POOLED_BATCH_SIZE = 1000;
+	private static final int REPORT_BUFFER_SIZE = 1024 * 1024;
+
 	/**
-	 * Location to write the output file
+	 * Location to write the output file. The indexes of the sct2_to_uuid_map files are also kept here, so that later
+	 * runs against the same release don't need to rebuild them.
 	 */
 	@Parameter( required = true, defaultValue = "${project.build.directory}" )
 	protected File outputDirectory;
@@ -82,23 +71,161 @@ public class RF2ValidatorMojo extends AbstractMojo
 	@Parameter
 	private File inputDB;
 
-	private BufferedWriter outputFile;
-	private BufferedWriter dbLookupOutputFile;
+	/**
+	 * The number of files to validate in parallel. Each file is validated independently, the reports are still
+	 * written in the same (file) order as a single threaded run - as each file finishes, with at most twice this many
+	 * files in flight.
+	 */
+	@Parameter( defaultValue = "1" )
+	private int threads;
 
-	// YYYYMMDD
-	SimpleDateFormat sdf1 = new SimpleDateFormat("yyyyMMdd");
+	/**
+	 * When validating with multiple threads, files larger than twice this size (in MB) are split into ranges of this
+	 * size, which are validated in parallel.
+	 */
+	@Parameter( defaultValue = "64" )
+	private int chunkSizeMB;
+
+	/**
+	 * The maximum number of entries in each of the caches of DB lookup results, used by the DB validation.
+	 */
+	@Parameter( defaultValue = "100000" )
+	private int dbLookupCacheSize;
 
-	// YYYYMMDDThhmmssZ
-	// Note - the pattern requires java 1.7
-	SimpleDateFormat sdf2 = new SimpleDateFormat("yyyyMMdd'T'HHmmssX");
+	/**
+	 * When validating against the DB, validate the rows in batches of this many rows, in the order of their nids
+	 * rather than their line order, for better DB locality. The errors are still reported in line order. 1 disables
+	 * batching.
+	 */
+	@Parameter( defaultValue = "1" )
+	private int dbBatchSize;
+
+	/**
+	 * The number of threads to validate rows against the DB on. When set, parsing hands batches of rows to these
+	 * threads, rather than waiting for the DB validation of each row, so that parsing and DB I/O overlap. 0 validates
+	 * the rows on the thread that parses them.
+	 */
+	@Parameter( defaultValue = "0" )
+	private int dbThreads;
+
+	/**
+	 * When set, validate rows against the DB on virtual threads (Java 21 and later), with at most this many validating
+	 * at once, rather than on dbThreads - the DB lookups block, so far more of them can be in flight than there are
+	 * platform threads. Each virtual thread validates a batch of dbBatchSize rows, so a small dbBatchSize (the default
+	 * of 1 hands off single rows) suits this mode. On older JVMs, this falls back to dbThreads, or to validating the
+	 * rows on the thread that parses them. 0 disables virtual threads.
+	 */
+	@Parameter( defaultValue = "0" )
+	private int dbVirtualThreads;
+
+	/**
+	 * The number of errors (of each report) per file to show on the console - the reports always get all of them.
+	 */
+	@Parameter( defaultValue = "10" )
+	private int consoleErrorsPerFile;
+
+	/**
+	 * The number of errors of each kind per file to show on the console, so that one systematic problem doesn't hide
+	 * the others.
+	 */
+	@Parameter( defaultValue = "5" )
+	private int consoleErrorsPerRule;
+
+	/**
+	 * When more than 0, the reports list each kind of error once per file and column - with a count, the first and last
+	 * lines, and this many sample lines - rather than every error. This bounds the size of the reports, and the memory
+	 * used, however broken the files are. 0 (the default) lists every error.
+	 */
+	@Parameter( defaultValue = "0" )
+	private int errorSamples;
+
+	/**
+	 * When summarizing (see errorSamples), also write the reports that errorSamples 0 would write, gzipped, to
+	 * formattingReport-detail.txt.gz (and dbLookupReport-detail.txt.gz). Every error of a file is then held in memory,
+	 * until the file is written.
+	 */
+	@Parameter( defaultValue = "false" )
+	private boolean errorDetail;
+
+	/**
+	 * Also write the results as structured records, one per line, to report.jsonl (for 'jsonl') or report.tsv (for
+	 * 'tsv') - see {@link StructuredReport}. Optional
+	 */
+	@Parameter
+	private String structuredReport;
+
+	/**
+	 * Keep the result of each file in outputDirectory/resultCache, and reuse it in later runs if neither the content of
+	 * the file (by SHA-256) nor the configuration (the validator, expectedEffectiveTime, errorSamples, the DB and, when
+	 * sampling, whether files are split, and chunkSizeMB) has changed. The reports are the same as those of a full run.
+	 */
+	@Parameter( defaultValue = "false" )
+	private boolean resultCache;
+
+	/**
+	 * Validate the Delta files in full, but only validate the content of the rows of the Full and Snapshot files whose
+	 * ids are in the Delta. The other rows only get the line ending, encoding and column count checks - and, if
+	 * previousRelease is set, are compared (by fingerprint) against the same rows of the previous release.
+	 */
+	@Parameter( defaultValue = "false" )
+	private boolean deltaDriven;
 
-	private int dbLookupErrorCounterPerFile = 0;
-	private int errorCounter = 0;
-	private int fileCounter = 0;
-	private int validFileCounter = 0;
+	/**
+	 * The RF2 folder of the previous release, for deltaDriven. Optional
+	 */
+	@Parameter
+	private File previousRelease;
+
+	/**
+	 * Check that the ids that the rows reference (conceptId, typeId, sourceId, destinationId, refsetId and
+	 * referencedComponentId) are the ids of concepts (or descriptions and relationships, for referencedComponentId) of
+	 * the release - without a DB. The ids of the release are read into memory first, at 8 bytes an id (read from the Full
+	 * files, or the Snapshot files if there are no Full ones).
+	 */
+	@Parameter( defaultValue = "false" )
+	private boolean referentialIntegrity;
+
+	/**
+	 * The RF2 folders of the releases that this release builds on (such as the International release, for an
+	 * extension) - whose components may also be referenced, for referentialIntegrity. Optional
+	 */
+	@Parameter
+	private File[] referencedReleases;
+
+	/**
+	 * Check that the ids of the Snapshot files, and the ids and effective times of the Full files, are unique.
+	 */
+	@Parameter( defaultValue = "false" )
+	private boolean checkDuplicateKeys;
+
+	/**
+	 * Check that each Snapshot file is exactly the Snapshot derived from its Full file - the latest row of each id -
+	 * reporting the missing, extra and mismatched rows.
+	 */
+	@Parameter( defaultValue = "false" )
+	private boolean checkSnapshotDerivation;
+
+	/**
+	 * The memory (off the heap) that the duplicate key and Snapshot derivation checks may use to hold and sort the keys
+	 * of the rows, before they sort through temp files - shared by all the files being checked at once. About 24 bytes a
+	 * row for the duplicate keys, and 40 bytes a row of both the Full and the Snapshot file for the Snapshot derivation.
+	 */
+	@Parameter( defaultValue = "256" )
+	private int keyCheckMemoryMB;
+
+	private ReportWriter reports_;
+	private ResultCache resultCache_;
+	private DeltaIds deltaIds_;
+	private MemoryBudget keyCheckBudget_;
+	private ReleaseIds releaseIds_;
 	private BDBValidator bdbValidator;
-	private Date expectedEffectiveTime_;
+	private int expectedEffectiveTime_;
 	private SCTUUIDMaps maps_;
+	private ForkJoinPool pool_;
+	private ExecutorService dbPool_;
+	private int dbPoolBatchSize_;
+	private int dbPoolConcurrency_;
+	private ArrayDeque<Future<FileValidator>> pending_ = new ArrayDeque<>();
 
 	@Override
 	public void execute() throws MojoExecutionException, MojoFailureException
@@ -117,700 +244,296 @@ public class RF2ValidatorMojo extends AbstractMojo
 
 			try
 			{
-				expectedEffectiveTime_ = sdf1.parse(expectedEffectiveTime);
+				expectedEffectiveTime_ = EffectiveTimeParser.parse(expectedEffectiveTime);
 			}
-			catch (ParseException e)
+			catch (Exception e)
 			{
 				throw new MojoExecutionException("The parameter 'expectedEffectiveTime' must be set to a yyyyMMdd value");
 			}
 
-			outputFile = new BufferedWriter(new FileWriter(new File(outputDirectory, "formattingReport.txt")));
+			StructuredReport.Format structuredReportFormat = null;
+			if (structuredReport != null && structuredReport.trim().length() > 0)
+			{
+				structuredReportFormat = StructuredReport.Format.parse(structuredReport);
+				if (structuredReportFormat == null)
+				{
+					throw new MojoExecutionException("The parameter 'structuredReport' must be 'jsonl' or 'tsv'.  Currently set to: " + structuredReport);
+				}
+			}
+
 			ConsoleUtil.println("Validating RF2 Export");
 
+			maps_ = new SCTUUIDMaps(inputRF2, outputDirectory);
+
 			if (inputDB != null && inputDB.exists() && inputDB.isDirectory())
 			{
+				// The maps are only needed for the DB validation - load them while the DB is opening
+				maps_.preload();
 				ConsoleUtil.println("Initializing Database");
 				bdbValidator = new BDBValidator(inputDB);
-				dbLookupOutputFile = new BufferedWriter(new FileWriter(new File(outputDirectory, "dbLookupReport.txt")));
+				ValidatorBase.configureCaches(dbLookupCacheSize);
+				ConsoleUtil.println("Resolved " + MetadataRegistry.get().size() + " metadata concepts");
 			}
 			else
 			{
 				ConsoleUtil.println("No Database found, not doing DB level validation");
 			}
 
-			maps_ = new SCTUUIDMaps(inputRF2);
-
-			processFolder(inputRF2);
-
-			writeLine("Processed " + fileCounter + " files, " + validFileCounter + " were valid, " + (fileCounter - validFileCounter) + " had errors", false);
-
-			outputFile.close();
-
-			if (bdbValidator != null)
+			if (deltaDriven)
 			{
-				ConsoleUtil.println("Closing Database");
-				bdbValidator.shutdown();
-				dbLookupOutputFile.close();
-			}
-		}
-		catch (Exception e)
-		{
-			e.printStackTrace();
-			throw new MojoExecutionException("oops", e);
-		}
-	}
-
-	private void processFolder(File folder) throws Exception
-	{
-		for (File f : folder.listFiles())
-		{
-			if (f.isDirectory())
-			{
-				processFolder(f);
-			}
-			else
-			{
-				int startErrorCount = errorCounter;
-				startFile(f);
-				FileInfo fi = new FileInfo(f);
-				if (f.getName().startsWith("sct2_to_uuid_map"))
-				{
-					error("sct2_to_uuid_map files don't yet align to TIG naming conventions");
-					fi.setContentType("-MAP-");  // not part of the TIG
-					fi.setExtension(f.getName().substring(f.getName().lastIndexOf('.')).toLowerCase());
-				}
-				else if (f.getName().toLowerCase().matches("[a-zA-Z0-9\\-_]+\\.[a-zA-Z0-9]{1,4}"))
-				{
-					if (f.getName().length() > 128)
-					{
-						error("Max file name length should be 128 characters - this file is " + f.getName().length());
-					}
-
-					if (f.getName().contains("UUID"))
-					{
-						fi.setIsUUIDFile(true);
-					}
-
-					String[] nameParts = f.getName().substring(0, f.getName().length() - 4).split("_");
-					if (nameParts.length != 5)
-					{
-						error("Invalid number of elements in the file name.  Expected 5, had " + nameParts.length);
-
-						// Hack code for intermediate export files which don't currently follow convention..
-						if (nameParts.length > 5 && f.getName().contains("UUID_"))
-						{
-							String temp = f.getName().substring(0, f.getName().length() - 4);
-							temp = temp.replace("UUID_", "UUID");
-							nameParts = temp.split("_");
-						}
-					}
-
-					int partNo = 1;
-					boolean[] foundParts = new boolean[5];
-					for (String part : nameParts)
-					{
-						int returnedPart = checkPart(part, partNo, fi);
-						if (returnedPart > 0)
-						{
-							foundParts[returnedPart - 1] = true;
-							partNo = returnedPart + 1;
-						}
-						else
-						{
-							partNo++;
-						}
-					}
-					for (int i = 0; i < 5; i++)
-					{
-						if (!foundParts[i])
-						{
-							error("Didn't find part number " + (i + 1));
-						}
-					}
-
-					fi.setExtension(f.getName().substring(f.getName().lastIndexOf('.')).toLowerCase());
-				}
-				else
+				List<File> deltaFiles = new ArrayList<>();
+				findDeltaFiles(inputRF2, deltaFiles);
+				deltaIds_ = DeltaIds.read(deltaFiles);
+				ConsoleUtil.println("Read " + deltaIds_.size() + " ids from " + deltaFiles.size() + " Delta files");
+				if (previousRelease != null && !previousRelease.isDirectory())
 				{
-					error("Illegal file extension");
+					throw new MojoExecutionException("The parameter 'previousRelease' must point to an existing folder.  Currently set to: " + previousRelease);
 				}
+			}
 
-				if (fi.getExtension().equals(".txt"))
+			if (referentialIntegrity)
+			{
+				List<File> folders = new ArrayList<>();
+				folders.add(inputRF2);
+				if (referencedReleases != null)
 				{
-					checkLineReturn(f);
-					CSVReader r = new CSVReader(new InputStreamReader(new BOMInputStream(new FileInputStream(f)), "UTF-8"), '\t');
-					String[] header = r.readNext();
-					if (header == null || header.length == 0)
-					{
-						error("File is missing the required header line");
-					}
-
-					HashMap<Integer, DataType> columnInfo = parseHeader(header, fi);
-
-					if (columnInfo.size() > 0 && columnInfo.size() == header.length)
+					for (File f : referencedReleases)
 					{
-						String[] row = r.readNext();
-						int lineNo = 2;
-						while (row != null)
+						if (!f.isDirectory())
 						{
-							if (row.length != header.length)
-							{
-								error("Line " + lineNo + " should have " + header.length + " columns, but it has " + row.length);
-							}
-							else
-							{
-								Object[] parsedData = validateRow(row, columnInfo, lineNo);
-								try
-								{
-									if (bdbValidator != null)
-									{
-										if (fi.getContentType().equals("Concept"))
-										{
-											if (fi.getIsUUIDFile())
-											{
-												new UUIDConcept(parsedData, expectedEffectiveTime_).validate();
-											}
-											else
-											{
-												new Concept(parsedData, expectedEffectiveTime_, maps_.getMap(fi)).validate();
-											}
-										}
-										else if (fi.getContentType().equals("Description"))
-										{
-											if (fi.getIsUUIDFile())
-											{
-												new UUIDDescription(parsedData, expectedEffectiveTime_).validate();
-											}
-											else
-											{
-												new Description(parsedData, expectedEffectiveTime_, maps_.getMap(fi)).validate();
-											}
-										}
-										else if (fi.getContentType().matches("(Relationship)|(StatedRelationship)"))
-										{
-											if (fi.getIsUUIDFile())
-											{
-												new UUIDRelationship(parsedData, expectedEffectiveTime_).validate();
-											}
-											else
-											{
-												new Relationship(parsedData, expectedEffectiveTime_, maps_.getMap(fi)).validate();
-											}
-										}
-										else if (fi.getContentType().equals("Identifier"))
-										{
-											if (fi.getIsUUIDFile())
-											{
-												new UUIDIdentifier(parsedData, expectedEffectiveTime_).validate();
-											}
-											else
-											{
-												new Identifier(parsedData, expectedEffectiveTime_, maps_.getMap(fi)).validate();
-											}
-										}
-										else if (fi.getContentType().endsWith("Refset"))
-										{
-											if (fi.getIsUUIDFile())
-											{
-												new UUIDRefset(parsedData, expectedEffectiveTime_, (header.length > 5 ? Arrays.copyOfRange(header, 6, header.length)
-														: new String[] {})).validate();
-											}
-											else
-											{
-												new Refset(parsedData, expectedEffectiveTime_, maps_.getMap(fi), (header.length > 5 ? Arrays.copyOfRange(header, 6,
-														header.length) : new String[] {})).validate();
-											}
-										}
-									}
-								}
-								catch (Exception e)
-								{
-									dbLookupError("Line " + lineNo + " failed the lookup in the DB: " + e.getMessage());
-								}
-							}
-							row = r.readNext();
-							lineNo++;
+							throw new MojoExecutionException("The parameter 'referencedReleases' must point to existing folders.  Currently contains: " + f);
 						}
+						folders.add(f);
 					}
-					r.close();
-				}
-				writeLine("", false);
-				writeLine("", true);
-				fileCounter++;
-				if (errorCounter == startErrorCount)
-				{
-					validFileCounter++;
 				}
+				releaseIds_ = ReleaseIds.read(folders);
+				ConsoleUtil.println("Read the ids of " + releaseIds_.getConceptCount() + " concepts, " + releaseIds_.getDescriptionCount() + " descriptions and "
+						+ releaseIds_.getRelationshipCount() + " relationships");
 			}
-		}
-	}
-
-	private Object[] validateRow(String[] row, HashMap<Integer, DataType> columnInfo, int lineNo) throws IOException
-	{
-		Object[] parsedData = new Object[row.length];
 
-		for (int i = 0; i < row.length; i++)
-		{
-			try
+			if (resultCache)
 			{
-				parsedData[i] = parseData(row[i], columnInfo.get(i));
+				// anything that changes the result of a file, other than its content
+				int samples = (errorDetail ? 0 : errorSamples);
+				// the samples depend on how the files were split into ranges - which only depends on the chunk size, if they
+				// were split at all
+				String split = (samples == 0 ? "" : threads > 1 ? ", chunkSizeMB " + chunkSizeMB : ", not split");
+				String configuration = "validator " + ResultCache.validatorVersion() + ", effectiveTime " + expectedEffectiveTime_ + ", errorSamples " + samples + split
+						+ ", DB " + (bdbValidator == null ? "none" : ResultCache.describe(inputDB, null) + ", maps " + ResultCache.describe(inputRF2, "sct2_to_uuid_map"))
+						+ ", Delta " + (deltaIds_ == null ? "none" : deltaIds_.getFingerprint() + (previousRelease == null ? "" : " against " + ResultCache.describe(previousRelease, null)))
+						+ ", references " + (releaseIds_ == null ? "none" : releaseIds_.getFingerprint()) + ", duplicate keys " + checkDuplicateKeys
+						+ ", Snapshot derivation " + checkSnapshotDerivation;
+				resultCache_ = new ResultCache(new File(outputDirectory, "resultCache"), configuration);
 			}
-			catch (Exception e)
+
+			reports_ = new ReportWriter(inputRF2, new File(outputDirectory, "formattingReport.txt"), (bdbValidator == null ? null : new File(outputDirectory,
+					"dbLookupReport.txt")), consoleErrorsPerFile, consoleErrorsPerRule);
+			if (errorSamples > 0)
 			{
-				error("Data on line " + lineNo + " column " + (i + 1) + " is illegal - " + e.getMessage());
+				reports_.setSummarize(errorSamples, (errorDetail ? new File(outputDirectory, "formattingReport-detail.txt.gz") : null),
+						(errorDetail && bdbValidator != null ? new File(outputDirectory, "dbLookupReport-detail.txt.gz") : null));
 			}
-		}
-		return parsedData;
-	}
-
-	private Object parseData(String data, DataType dataType) throws Exception
-	{
-		if (dataType == null)
-		{
-			throw new Exception("malformed data file, unknown what the column should be");
-		}
-		else
-		{
-			switch (dataType)
+			if (structuredReportFormat != null)
 			{
-				case Integer:
-					try
-					{
-						return Integer.parseInt(data);
-					}
-					catch (NumberFormatException e)
-					{
-						throw new Exception("should be an Integer");
-					}
-				case Boolean:
-					if (!(data.equals("0") || data.equals("1")))
-					{
-						throw new Exception("should be '0' (false) or '1' (true)");
-					}
-					return data.equals("1");
-				case SCTID:
-					try
-					{
-						return checkSCTID(data);
-					}
-					catch (Exception e)
-					{
-						throw new Exception("should be a SCTID");
-					}
-				case SCTIDorUUID:
-					try
-					{
-						if (data.length() == 36)
-						{
-							return UUID.fromString(data);
-						}
-						else
-						{
-							return checkSCTID(data);
-						}
-					}
-					catch (Exception e)
-					{
-						throw new Exception("should be a SCTID or UUID");
-					}
-				case String:
-					if (data.length() == 0)
-					{
-						throw new Exception("No data found");
-					}
-					return data;
-				case Time:
-					try
-					{
-						if (data.length() == 8)
-						{
-							return sdf1.parse(data);
-						}
-						else
-						{
-							return sdf2.parse(data);
-						}
-					}
-					catch (Exception e)
-					{
-						throw new Exception("unparsable time value");
-					}
-				case UUID:
-					try
-					{
-						return UUID.fromString(data);
-					}
-					catch (Exception e)
-					{
-						throw new Exception("should be a UUID");
-					}
-				case UUIDBoolean:
-					if (!data.toLowerCase().equals("true") && !data.toLowerCase().equals("false"))
-					{
-						throw new Exception("should be 'true' or 'false'");
-					}
-					return data.toLowerCase().equals("true");
-				default:
-					throw new Exception("Unhandeled data type");
+				reports_.setStructuredReport(new StructuredReport(new File(outputDirectory, "report." + structuredReportFormat.getExtension()),
+						structuredReportFormat, REPORT_BUFFER_SIZE));
 			}
-		}
-	}
+			reports_.start();
 
-	public long checkSCTID(String sctId) throws Exception
-	{
-		if (sctId.length() < 6 || sctId.length() > 18)
-		{
-			throw new Exception("Invalid SCTID length " + sctId);
-		}
-
-		Long l;
-		try
-		{
-			l = Long.parseLong(sctId);
-		}
-		catch (NumberFormatException e)
-		{
-			throw new Exception("SCTID should be a number");
-		}
-
-		VerhoeffDihedralCheck.validateCheckDigit(sctId);
-		String partition = sctId.substring(sctId.length() - 3, sctId.length() - 1);
-
-		if (!partition.matches("(0[0-5])|(1[0-5])"))
-		{
-			throw new Exception("Invalid partition portion of SCTID '" + partition + "'");
-		}
-		return l;
-	}
-
-	private HashMap<Integer, DataType> parseHeader(String[] header, FileInfo fi) throws IOException
-	{
-		HashMap<Integer, DataType> result = new HashMap<Integer, DataType>();
-
-		if (fi.getContentType() == null)
-		{
-			error("Unknown content type (due to invalid file naming), can't validate file");
-		}
-		else if (fi.getContentType().equals("Concept"))
-		{
-			setupColumn(result, (fi.getIsUUIDFile() ? DataType.UUID : DataType.SCTID), 0, header, "id");
-			setupColumn(result, DataType.Time, 1, header, "effectiveTime");
-			setupColumn(result, (fi.getIsUUIDFile() ? DataType.UUID : DataType.Boolean), 2, header, "active");
-			setupColumn(result, (fi.getIsUUIDFile() ? DataType.UUID : DataType.SCTID), 3, header, "moduleId");
-			setupColumn(result, (fi.getIsUUIDFile() ? DataType.UUIDBoolean : DataType.SCTID), 4, header, "definitionStatusId");
-			if (header.length > 5)
+			if (bdbValidator != null && dbVirtualThreads > 0)
 			{
-				error("Too many columns - should have 5, but has " + header.length);
+				dbPool_ = ConcurrencyLimitedExecutor.newVirtualThreadExecutor(dbVirtualThreads);
+				if (dbPool_ == null)
+				{
+					ConsoleUtil.println("Virtual threads are not supported by this JVM (" + System.getProperty("java.version") + "), ignoring dbVirtualThreads");
+				}
+				else
+				{
+					ConsoleUtil.println("Validating against the DB on virtual threads, " + dbVirtualThreads + " at most at once");
+					dbPoolBatchSize_ = dbBatchSize;
+					dbPoolConcurrency_ = dbVirtualThreads;
+				}
 			}
-		}
-		else if (fi.getContentType().equals("Description"))
-		{
-			setupColumn(result, (fi.getIsUUIDFile() ? DataType.UUID : DataType.SCTID), 0, header, "id");
-			setupColumn(result, DataType.Time, 1, header, "effectiveTime");
-			setupColumn(result, (fi.getIsUUIDFile() ? DataType.UUID : DataType.Boolean), 2, header, "active");
-			setupColumn(result, (fi.getIsUUIDFile() ? DataType.UUID : DataType.SCTID), 3, header, "moduleId");
-			setupColumn(result, (fi.getIsUUIDFile() ? DataType.UUID : DataType.SCTID), 4, header, "conceptId");
-			setupColumn(result, DataType.String, 5, header, "languageCode");
-			setupColumn(result, (fi.getIsUUIDFile() ? DataType.UUID : DataType.SCTID), 6, header, "typeId");
-			setupColumn(result, DataType.String, 7, header, "term");
-			setupColumn(result, (fi.getIsUUIDFile() ? DataType.UUIDBoolean : DataType.SCTID), 8, header, "caseSignificanceId");
-			if (header.length > 9)
+
+			if (bdbValidator != null && dbPool_ == null && dbThreads > 0)
 			{
-				error("Too many columns - should have 9, but has " + header.length);
+				ConsoleUtil.println("Validating against the DB with " + dbThreads + " threads");
+				dbPool_ = Executors.newFixedThreadPool(dbThreads);
+				// Handing single rows to a thread pool costs more than validating them - batch them, even if not asked to
+				dbPoolBatchSize_ = (dbBatchSize > 1 ? dbBatchSize : DEFAULT_POOLED_BATCH_SIZE);
+				dbPoolConcurrency_ = dbThreads;
 			}
-		}
-		else if (fi.getContentType().equals("Relationship"))
-		{
-			setupColumn(result, (fi.getIsUUIDFile() ? DataType.UUID : DataType.SCTID), 0, header, "id");
-			setupColumn(result, DataType.Time, 1, header, "effectiveTime");
-			setupColumn(result, (fi.getIsUUIDFile() ? DataType.UUID : DataType.Boolean), 2, header, "active");
-			setupColumn(result, (fi.getIsUUIDFile() ? DataType.UUID : DataType.SCTID), 3, header, "moduleId");
-			setupColumn(result, (fi.getIsUUIDFile() ? DataType.UUID : DataType.SCTID), 4, header, "sourceId");
-			setupColumn(result, (fi.getIsUUIDFile() ? DataType.UUID : DataType.SCTID), 5, header, "destinationId");
-			setupColumn(result, DataType.Integer, 6, header, "relationshipGroup");
-			setupColumn(result, (fi.getIsUUIDFile() ? DataType.UUID : DataType.SCTID), 7, header, "typeId");
-			setupColumn(result, (fi.getIsUUIDFile() ? DataType.UUID : DataType.SCTID), 8, header, "characteristicTypeId");
-			setupColumn(result, (fi.getIsUUIDFile() ? DataType.UUID : DataType.SCTID), 9, header, "modifierId");
-			if (header.length > 10)
+
+			if (threads > 1)
 			{
-				error("Too many columns - should have 10, but has " + header.length);
+				ConsoleUtil.println("Validating with " + threads + " threads");
+				pool_ = new ForkJoinPool(threads);
 			}
-		}
-		else if (fi.getContentType().equals("Identifier"))
-		{
-			setupColumn(result, (fi.getIsUUIDFile() ? DataType.UUID : DataType.SCTID), 0, header, "identifierSchemeId");
-			setupColumn(result, DataType.String, 1, header, "alternateIdentifier");
-			setupColumn(result, DataType.Time, 2, header, "effectiveTime");
-			setupColumn(result, (fi.getIsUUIDFile() ? DataType.UUID : DataType.Boolean), 3, header, "active");
-			setupColumn(result, (fi.getIsUUIDFile() ? DataType.UUID : DataType.SCTID), 4, header, "moduleId");
-			setupColumn(result, (fi.getIsUUIDFile() ? DataType.UUID : DataType.SCTID), 5, header, "referencedComponentId");
-			if (header.length > 6)
+
+			if (checkDuplicateKeys || checkSnapshotDerivation)
 			{
-				error("Too many columns - should have 6, but has " + header.length);
+				keyCheckBudget_ = new MemoryBudget(keyCheckMemoryMB * 1024L * 1024L);
 			}
-		}
-		else if (fi.getContentType().endsWith("Refset"))
-		{
-			String prefix = fi.getContentType().substring(0, fi.getContentType().indexOf("Refset"));
-			setupColumn(result, DataType.UUID, 0, header, "id");
-			setupColumn(result, DataType.Time, 1, header, "effectiveTime");
-			setupColumn(result, (fi.getIsUUIDFile() ? DataType.UUID : DataType.Boolean), 2, header, "active");
-			setupColumn(result, (fi.getIsUUIDFile() ? DataType.UUID : DataType.SCTID), 3, header, "moduleId");
-			setupColumn(result, (fi.getIsUUIDFile() ? DataType.UUID : DataType.SCTID), 4, header, "refsetId");
-			setupColumn(result, DataType.SCTIDorUUID, 5, header, "referencedComponentId");
-
-			for (int i = 0; i < prefix.length(); i++)
+
+			processFolder(inputRF2);
+
+			if (pool_ != null)
 			{
-				char c = prefix.charAt(i);
-				if (c == 'c')
-				{
-					setupColumn(result, (fi.getIsUUIDFile() ? DataType.UUID : DataType.SCTID), 6 + i, header, "");
-				}
-				else if (c == 's')
+				try
 				{
-					setupColumn(result, DataType.String, 6 + i, header, "");
+					writeFinished(0);
 				}
-				else if (c == 'i')
+				finally
 				{
-					setupColumn(result, DataType.Integer, 6 + i, header, "");
-				}
-				else
-				{
-					error("Invalid extra column type '" + c + "'");
-					setupColumn(result, DataType.String, 6 + i, header, "");
+					pool_.shutdownNow();
 				}
 			}
-			if (header.length > (6 + prefix.length()))
+
+			if (dbPool_ != null)
 			{
-				error("Too many columns - should have " + (6 + prefix.length()) + ", but has " + header.length);
+				dbPool_.shutdownNow();
 			}
-		}
-		// 99% sure that this is supposed to be the same as Relationship - but the TIG doesn't specify
-		else if (fi.getContentType().equals("StatedRelationship"))
-		{
-			setupColumn(result, (fi.getIsUUIDFile() ? DataType.UUID : DataType.SCTID), 0, header, "id");
-			setupColumn(result, DataType.Time, 1, header, "effectiveTime");
-			setupColumn(result, (fi.getIsUUIDFile() ? DataType.UUID : DataType.Boolean), 2, header, "active");
-			setupColumn(result, (fi.getIsUUIDFile() ? DataType.UUID : DataType.SCTID), 3, header, "moduleId");
-			setupColumn(result, (fi.getIsUUIDFile() ? DataType.UUID : DataType.SCTID), 4, header, "sourceId");
-			setupColumn(result, (fi.getIsUUIDFile() ? DataType.UUID : DataType.SCTID), 5, header, "destinationId");
-			setupColumn(result, DataType.Integer, 6, header, "relationshipGroup");
-			setupColumn(result, (fi.getIsUUIDFile() ? DataType.UUID : DataType.SCTID), 7, header, "typeId");
-			setupColumn(result, (fi.getIsUUIDFile() ? DataType.UUID : DataType.SCTID), 8, header, "characteristicTypeId");
-			setupColumn(result, (fi.getIsUUIDFile() ? DataType.UUID : DataType.SCTID), 9, header, "modifierId");
-			if (header.length > 10)
+
+			reports_.close(bdbValidator == null ? Collections.<String>emptyList() : ValidatorBase.getCacheStatistics());
+
+			if (resultCache_ != null)
 			{
-				error("Too many columns - should have 10, but has " + header.length);
+				ConsoleUtil.println("Reused the cached results of " + resultCache_.getHits() + " files, " + resultCache_.getMisses() + " files were validated");
 			}
-		}
-		// Not part of the tig
-		else if (fi.getContentType().equals("-MAP-"))
-		{
-			setupColumn(result, DataType.SCTID, 0, header, "sctId");
-			setupColumn(result, DataType.UUID, 1, header, "uuid");
-		}
-		else
-		{
-			error("Content Type '" + fi.getContentType() + "' validation is not yet implemented");
-		}
-		return result;
-	}
 
-	private void setupColumn(HashMap<Integer, DataType> returnMap, DataType dt, int column, String[] header, String expectedName) throws IOException
-	{
-		if (column >= header.length)
-		{
-			error("Missing expected column " + column + " which should be '" + expectedName + "'");
+			if (bdbValidator != null)
+			{
+				ConsoleUtil.println("Closing Database");
+				bdbValidator.shutdown();
+			}
 		}
-		else if (expectedName.length() > 0 && !expectedName.equals(header[column]))
+		catch (Exception e)
 		{
-			error("Column " + (column + 1) + " should be '" + expectedName + "' but it is '" + header[column] + "'.");
+			e.printStackTrace();
+			throw new MojoExecutionException("oops", e);
 		}
-		returnMap.put(column, dt);
 	}
 
-	private void checkLineReturn(File f) throws IOException
+	private void findDeltaFiles(File folder, List<File> deltaFiles)
 	{
-		InputStreamReader isr = new InputStreamReader(new BOMInputStream(new FileInputStream(f)), "UTF-8");
-		Character lastCharMinus1 = null;
-		Character lastChar = null;
-		if (isr.ready())
-		{
-			lastCharMinus1 = (char) isr.read();
-		}
-		while (isr.ready())
+		for (File f : folder.listFiles())
 		{
-			if (lastChar != null)
+			if (f.isDirectory())
 			{
-				lastCharMinus1 = lastChar;
+				findDeltaFiles(f, deltaFiles);
 			}
-			lastChar = (char) isr.read();
-			if (lastChar == '\n')
+			else if ("Delta".equals(DeltaIds.getReleaseType(f)) && f.getName().toLowerCase().endsWith(".txt"))
 			{
-				break;
+				deltaFiles.add(f);
 			}
 		}
+	}
 
-		if (!(lastCharMinus1 == '\r' && lastChar == '\n'))
+	/**
+	 * @return the file of the previous release in the same folder, with the same name but for the version date (the
+	 *         last part of the name) - or null, if there isn't one.
+	 */
+	private File findPreviousFile(File f) throws Exception
+	{
+		String folder = f.getParentFile().getCanonicalPath().substring(inputRF2.getCanonicalPath().length());
+		File[] candidates = new File(previousRelease, folder).listFiles();
+		int versionPart = f.getName().lastIndexOf('_');
+		if (candidates == null || versionPart < 0)
 		{
-			error("Files are supposed to have windows style line feeds - CR+LF");
+			return null;
 		}
-
-		// read to the end....
-		char[] buffer = new char[10000];
-		int read = isr.read(buffer);
-		while (read != -1)
+		String name = f.getName().substring(0, versionPart + 1);
+		String extension = f.getName().substring(f.getName().lastIndexOf('.'));
+		for (File candidate : candidates)
 		{
-			if (read == 1)
+			if (candidate.isFile() && candidate.getName().startsWith(name) && candidate.getName().endsWith(extension)
+					&& candidate.getName().indexOf('_', name.length()) < 0)
 			{
-				lastCharMinus1 = lastChar;
-				lastChar = buffer[read - 1];
+				return candidate;
 			}
-			else if (read > 1)
+		}
+		return null;
+	}
+
+	/**
+	 * @return the Full file of a Snapshot file - in the Full folder that mirrors its Snapshot folder, with Full in place
+	 *         of Snapshot in its name - or null, if there isn't one.
+	 */
+	private File findFullFile(File f) throws Exception
+	{
+		String[] folders = f.getParentFile().getCanonicalPath().substring(inputRF2.getCanonicalPath().length()).split("[/\\\\]");
+		File folder = inputRF2;
+		for (String name : folders)
+		{
+			if (name.length() > 0)
 			{
-				lastChar = buffer[read - 1];
-				lastCharMinus1 = buffer[read - 2];
+				folder = new File(folder, (name.equals("Snapshot") ? "Full" : name));
 			}
-			read = isr.read(buffer);
 		}
-		if (!(lastCharMinus1 == '\r' && lastChar == '\n'))
+		String[] parts = f.getName().split("_", -1);
+		StringBuilder name = new StringBuilder();
+		for (int i = 0; i < parts.length; i++)
 		{
-			error("Files are supposed to end with a windows style line feed - CR+LF");
+			name.append(i == 0 ? "" : "_").append(i == 2 ? "Full" + parts[i].substring("Snapshot".length()) : parts[i]);
 		}
-
-		isr.close();
+		File full = new File(folder, name.toString());
+		return (full.isFile() ? full : null);
 	}
 
-	private int checkPart(String part, int partNo, FileInfo fi) throws IOException
+	private void processFolder(File folder) throws Exception
 	{
-		if (StringUtils.isBlank(part))
-		{
-			error("All 5 elements of the file name are required.  Part " + partNo + " is missing");
-		}
-
-		// In the cases where there are more parts than we expect, try to find the right part number
-		int actualPartNumber = -1;
-
-		try
+		for (File f : folder.listFiles())
 		{
-			if (part.matches("(z|x)?(sct|der|res|tls|doc)(1|2)?"))
+			if (f.isDirectory())
 			{
-				actualPartNumber = 1;
-				fi.setFileType(part);
-				if (!part.matches("(z|x)?(sct|der)(1|2)"))
-				{
-					error("File types of sct and der must have a part 1 that ends with '1' or '2'.");
-				}
+				processFolder(f);
 			}
-			else if (part.matches("(Concept|Description|Relationship|Identifier|StatedRelationship)|([csi]+Refset)") 
-					|| "res".equals(fi.getFileTypeCode()) && partNo == 2)
+			else
 			{
-				// 2nd part of the if statement isn't well specified in the spec - - could be nearly anything....
-				//TIG doc on StatedRelationship is fuzzy as well.. but they say its ok.  TIG needs updates.
-				fi.setContentType(part);
-				actualPartNumber = 2;
-				if (part.length() > 48)
+				FileValidator fv = new FileValidator(f, expectedEffectiveTime_, maps_, bdbValidator != null, pool_, chunkSizeMB * 1024L * 1024L);
+				fv.setDbBatchSize(dbPool_ == null ? dbBatchSize : dbPoolBatchSize_);
+				// twice the threads - so that there is always a batch queued up, while the others are validating
+				fv.setDbPool(dbPool_, dbPoolConcurrency_ * 2);
+				// with detail, the report writer summarizes
+				fv.setErrorSamples(errorDetail ? 0 : errorSamples);
+				if (deltaIds_ != null && DeltaIds.getReleaseType(f) != null && !DeltaIds.getReleaseType(f).equals("Delta"))
 				{
-					error("Part two only allows 48 characters - this one is " + part.length() + " long. - '" + part + "'");
+					fv.setDeltaIds(deltaIds_, (previousRelease == null ? null : findPreviousFile(f)));
 				}
-			}
-			else if ((fi.getFileTypeCode().matches("(sct)|(der)|(res)") && part.matches(".*(Full|Snapshot|Delta)((\\-[a-z]{2})(\\-[A-Z]{2})?)?"))
-					|| (fi.getFileTypeCode().matches("(tls)|(doc)") && part.matches(".*(Current|Draft|Review)((\\-[a-z]{2})(\\-[A-Z]{2})?)?"))
-					|| (fi.getFileTypeCode().equals("tls") && part.matches(".*((\\-[a-z]{2})(\\-[A-Z]{2})?)?")))
-			{
-				fi.setContentSubType(part);
-				actualPartNumber = 3;
-				if (part.length() > 48)
+				fv.setReleaseIds(releaseIds_);
+				fv.setDuplicateKeyBudget(checkDuplicateKeys ? keyCheckBudget_ : null);
+				if (checkSnapshotDerivation && "Snapshot".equals(DeltaIds.getReleaseType(f)))
 				{
-					error("Part three only allows 48 characters - this one is " + part.length() + " long. - '" + part + "'");
+					fv.setSnapshotDerivation(findFullFile(f), keyCheckBudget_);
 				}
-			}
-			else if (part.matches("(INT|[A-Z]{2})?([0-9]{7})?"))
-			{
-				fi.setCountryNamespace(part);
-				actualPartNumber = 4;
-			}
-			else if (part.matches("[0-9]{8}?"))
-			{
-				fi.setVersionDate(part);
-				actualPartNumber = 5;
-			}
-			else
-			{
-				error("Unknown part: " + part);
-				actualPartNumber = -1;
-			}
-		}
-		catch (UnsupportedOperationException e)
-		{
-			error("Parts of the filename were invald, and could not be identified correctly: " + e.getMessage());
-		}
-
-		if (actualPartNumber > 0 && actualPartNumber != partNo)
-		{
-			error("Part passed in as part " + partNo + " actually validates as part " + actualPartNumber);
-		}
-
-		// part three can have a hyphen between en-US, and can also have a hyphen before 'en' if it contains a doc status, etc.
-		// otherwise, only alphanumeric is allowed
-		if (!part.matches((actualPartNumber == 3 ? "[A-Za-z0-9]+((\\-[a-z]{2})(\\-[A-Z]{2})?)?" : "[A-Za-z0-9]+")))
-		{
-			error("The filename contains illegal characters in part " + partNo + " '" + part + "'");
-		}
-
-		return actualPartNumber;
-	}
-
-	private void startFile(File f) throws IOException
-	{
-		dbLookupErrorCounterPerFile = 0;
-		writeLine("Processing File " + f.getCanonicalPath().substring(inputRF2.getCanonicalPath().length() + 1), false);
-		if (dbLookupOutputFile != null)
-		{
-			writeLine("Processing File " + f.getCanonicalPath().substring(inputRF2.getCanonicalPath().length() + 1), true);
-		}
-	}
-
-	private void error(String message) throws IOException
-	{
-		errorCounter++;
-		writeLine("ERROR: " + message, false);
-	}
-
-	private void dbLookupError(String message) throws IOException
-	{
-		dbLookupErrorCounterPerFile++;
-		writeLine("ERROR: " + message, true);
-	}
-
-	private void writeLine(String line, boolean dbLookUpFailue) throws IOException
-	{
-
-		if (dbLookUpFailue)
-		{
-			if (dbLookupOutputFile != null)
-			{
-				if (dbLookupErrorCounterPerFile < 10)
+				if (resultCache_ != null)
 				{
-					ConsoleUtil.println(line);
+					fv.setResultCache(resultCache_, f.getCanonicalPath().substring(inputRF2.getCanonicalPath().length() + 1));
 				}
-				else if (dbLookupErrorCounterPerFile == 10)
+				if (pool_ == null)
 				{
-					ConsoleUtil.printErrorln("Too many DB lookup errors, further errors surpressed from console.  See dbLookupReport.txt");
+					reports_.write(fv.call());
+				}
+				else
+				{
+					pending_.add(pool_.submit(fv));
+					writeFinished(threads * 2);
 				}
-				dbLookupOutputFile.write(line);
-				dbLookupOutputFile.newLine();
-			}
-			else if (line.length() > 0)
-			{
-				ConsoleUtil.printErrorln("DESIGN ERROR");
 			}
 		}
-		else
+	}
+
+	/**
+	 * Write the results of the files that have finished, in the order the files were found, regardless of the order
+	 * they finished in - so that only the results of the files still in flight are held.
+	 *
+	 * @param maxPending wait for the oldest file, while more than this many are in flight
+	 */
+	private void writeFinished(int maxPending) throws Exception
+	{
+		while (!pending_.isEmpty() && (pending_.size() > maxPending || pending_.peek().isDone()))
 		{
-			ConsoleUtil.println(line);
-			outputFile.write(line);
-			outputFile.newLine();
+			reports_.write(pending_.poll().get());
 		}
 	}
 
@@ -0,0 +1,381 @@
+package gov.va.rf2.validator;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+
+/**
+ * An external sort of fixed size records of longs, in bounded memory - the records are ordered by their first long,
+ * then their second, and so on.
+ *
+ * The records are collected in a direct buffer, which grows while the {@link MemoryBudget} allows. If they all fit,
+ * they are sorted in place. If not, each full buffer is sorted and spilled to a temp file, and the runs are merged as
+ * the records are read back. Nothing is kept on the heap per record.
+ */
+public class RecordSorter implements Closeable
+{
+	private static final int INITIAL_CAPACITY = 1 << 16;
+	// so that the bytes of a buffer still fit in an int
+	private static final int MAX_LONGS = 1 << 27;
+	private static final int BUFFER_SIZE = 1024 * 1024;
+
+	private int recordLongs_;
+	private int maxCapacity_;
+	private MemoryBudget budget_;
+	private long reserved_ = 0;
+	private File tempFolder_;
+
+	private LongBuffer buffer_;
+	private int capacity_;
+	private int size_ = 0;
+	private ArrayList<File> runs_ = new ArrayList<>();
+
+	// reading back
+	private int next_ = 0;
+	private PriorityQueue<Run> queue_;
+	private ArrayList<Run> open_ = new ArrayList<>();
+
+	/**
+	 * @param budget the budget that the buffer grows from - and is returned to, when the sorter is closed
+	 * @param tempFolder the folder to spill the runs to - or null, for the default temp folder
+	 */
+	public RecordSorter(int recordLongs, MemoryBudget budget, File tempFolder)
+	{
+		recordLongs_ = recordLongs;
+		budget_ = budget;
+		tempFolder_ = tempFolder;
+		maxCapacity_ = MAX_LONGS / recordLongs;
+		capacity_ = INITIAL_CAPACITY;
+		budget_.reserve(bytes(capacity_));
+		reserved_ = bytes(capacity_);
+		buffer_ = allocate(capacity_ * recordLongs);
+	}
+
+	/**
+	 * Take over a buffer that already holds records, and its bytes reserved from the budget - it won't grow any
+	 * further.
+	 *
+	 * @param size the number of records at the start of the buffer
+	 */
+	public RecordSorter(int recordLongs, LongBuffer buffer, int size, MemoryBudget budget, File tempFolder)
+	{
+		recordLongs_ = recordLongs;
+		budget_ = budget;
+		tempFolder_ = tempFolder;
+		buffer_ = buffer;
+		capacity_ = buffer.capacity() / recordLongs;
+		maxCapacity_ = capacity_;
+		reserved_ = buffer.capacity() * 8L;
+		size_ = size;
+	}
+
+	/**
+	 * @param record a record - which is copied, so the array may be reused
+	 */
+	public void add(long[] record) throws IOException
+	{
+		if (size_ == capacity_ && !grow())
+		{
+			spill();
+		}
+		int offset = size_ * recordLongs_;
+		for (int i = 0; i < recordLongs_; i++)
+		{
+			buffer_.put(offset + i, record[i]);
+		}
+		size_++;
+	}
+
+	/**
+	 * Sort the records - call once they are all added, before reading them back with {@link #next(long[])}.
+	 */
+	public void sort() throws IOException
+	{
+		if (runs_.isEmpty())
+		{
+			heapSort(size_);
+			return;
+		}
+		spill();
+		// the runs now hold every record
+		buffer_ = null;
+		releaseBudget();
+		queue_ = new PriorityQueue<>(runs_.size(), new Comparator<Run>()
+		{
+			@Override
+			public int compare(Run a, Run b)
+			{
+				return compareRecords(a.record_, b.record_);
+			}
+		});
+		for (File f : runs_)
+		{
+			Run run = new Run(f, recordLongs_);
+			open_.add(run);
+			if (run.next())
+			{
+				queue_.add(run);
+			}
+		}
+	}
+
+	/**
+	 * @param record filled with the next record, in sorted order
+	 * @return false, if there are no more records
+	 */
+	public boolean next(long[] record) throws IOException
+	{
+		if (queue_ == null)
+		{
+			if (next_ == size_)
+			{
+				return false;
+			}
+			int offset = next_++ * recordLongs_;
+			for (int i = 0; i < recordLongs_; i++)
+			{
+				record[i] = buffer_.get(offset + i);
+			}
+			return true;
+		}
+		Run run = queue_.poll();
+		if (run == null)
+		{
+			return false;
+		}
+		System.arraycopy(run.record_, 0, record, 0, recordLongs_);
+		if (run.next())
+		{
+			queue_.add(run);
+		}
+		return true;
+	}
+
+	/**
+	 * @return true, if the records didn't fit in memory
+	 */
+	public boolean isExternal()
+	{
+		return !runs_.isEmpty();
+	}
+
+	@Override
+	public void close()
+	{
+		for (Run run : open_)
+		{
+			try
+			{
+				run.close();
+			}
+			catch (IOException e)
+			{
+				// only read from - nothing is lost
+			}
+		}
+		open_.clear();
+		for (File run : runs_)
+		{
+			run.delete();
+		}
+		runs_.clear();
+		buffer_ = null;
+		releaseBudget();
+	}
+
+	static LongBuffer allocate(int longs)
+	{
+		return ByteBuffer.allocateDirect(longs * 8).asLongBuffer();
+	}
+
+	/**
+	 * Double the buffer, if the budget allows - and if the direct memory is actually there.
+	 *
+	 * @return false, if the buffer has to be spilled instead
+	 */
+	private boolean grow()
+	{
+		int capacity = (int) Math.min(maxCapacity_, capacity_ * 2L);
+		if (capacity == capacity_ || !budget_.tryReserve(bytes(capacity)))
+		{
+			return false;
+		}
+		LongBuffer buffer;
+		try
+		{
+			buffer = allocate(capacity * recordLongs_);
+		}
+		catch (OutOfMemoryError e)
+		{
+			// more than the JVM allows for direct buffers - make do with what we have
+			budget_.release(bytes(capacity));
+			return false;
+		}
+		buffer_.position(0).limit(size_ * recordLongs_);
+		buffer.put(buffer_);
+		buffer_.clear();
+		buffer.clear();
+		buffer_ = buffer;
+		capacity_ = capacity;
+		budget_.release(reserved_);
+		reserved_ = bytes(capacity);
+		return true;
+	}
+
+	private long bytes(int capacity)
+	{
+		return capacity * recordLongs_ * 8L;
+	}
+
+	private void releaseBudget()
+	{
+		budget_.release(reserved_);
+		reserved_ = 0;
+	}
+
+	/**
+	 * Sort the records in the buffer, and write them to a new run.
+	 */
+	private void spill() throws IOException
+	{
+		heapSort(size_);
+		File run = File.createTempFile("rf2-sort", ".run", tempFolder_);
+		runs_.add(run);
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(run), BUFFER_SIZE)))
+		{
+			for (int i = 0; i < size_ * recordLongs_; i++)
+			{
+				out.writeLong(buffer_.get(i));
+			}
+		}
+		size_ = 0;
+	}
+
+	/**
+	 * An in place heap sort of the records in the buffer - so sorting needs no memory beyond the budget.
+	 */
+	private void heapSort(int count)
+	{
+		for (int i = count / 2 - 1; i >= 0; i--)
+		{
+			siftDown(i, count);
+		}
+		for (int end = count - 1; end > 0; end--)
+		{
+			swap(0, end);
+			siftDown(0, end);
+		}
+	}
+
+	private void siftDown(int root, int count)
+	{
+		while (true)
+		{
+			int child = 2 * root + 1;
+			if (child >= count)
+			{
+				return;
+			}
+			if (child + 1 < count && compare(child, child + 1) < 0)
+			{
+				child++;
+			}
+			if (compare(root, child) >= 0)
+			{
+				return;
+			}
+			swap(root, child);
+			root = child;
+		}
+	}
+
+	private int compare(int a, int b)
+	{
+		int oa = a * recordLongs_;
+		int ob = b * recordLongs_;
+		for (int i = 0; i < recordLongs_; i++)
+		{
+			int c = Long.compare(buffer_.get(oa + i), buffer_.get(ob + i));
+			if (c != 0)
+			{
+				return c;
+			}
+		}
+		return 0;
+	}
+
+	private static int compareRecords(long[] a, long[] b)
+	{
+		for (int i = 0; i < a.length; i++)
+		{
+			int c = Long.compare(a[i], b[i]);
+			if (c != 0)
+			{
+				return c;
+			}
+		}
+		return 0;
+	}
+
+	private void swap(int a, int b)
+	{
+		int oa = a * recordLongs_;
+		int ob = b * recordLongs_;
+		for (int i = 0; i < recordLongs_; i++)
+		{
+			long temp = buffer_.get(oa + i);
+			buffer_.put(oa + i, buffer_.get(ob + i));
+			buffer_.put(ob + i, temp);
+		}
+	}
+
+	/**
+	 * A sorted run, being merged.
+	 */
+	private static class Run implements Closeable
+	{
+		private DataInputStream in_;
+		private long[] record_;
+
+		Run(File f, int recordLongs) throws IOException
+		{
+			in_ = new DataInputStream(new BufferedInputStream(new FileInputStream(f), BUFFER_SIZE));
+			record_ = new long[recordLongs];
+		}
+
+		boolean next() throws IOException
+		{
+			try
+			{
+				record_[0] = in_.readLong();
+			}
+			catch (EOFException e)
+			{
+				return false;
+			}
+			for (int i = 1; i < record_.length; i++)
+			{
+				record_[i] = in_.readLong();
+			}
+			return true;
+		}
+
+		@Override
+		public void close() throws IOException
+		{
+			in_.close();
+		}
+	}
+}
@@ -0,0 +1,46 @@
+package gov.va.rf2.validator;
+
+/**
+ * The checks of the columns of a file that reference other components - each one must be the id of a component of
+ * the release. See {@link ReleaseIds#getChecks(String[])}.
+ */
+public class ReferenceChecks
+{
+	private String[] header_;
+	private int[] columns_;
+	private IdSet[][] sets_;
+
+	/**
+	 * @param sets for each column, the sets that the id may be in
+	 */
+	public ReferenceChecks(String[] header, int[] columns, IdSet[][] sets)
+	{
+		header_ = header;
+		columns_ = columns;
+		sets_ = sets;
+	}
+
+	public void check(MappedRowScanner r, long lineNo, ValidationResult result)
+	{
+		for (int i = 0; i < columns_.length; i++)
+		{
+			int column = columns_[i];
+			if (!contains(sets_[i], r, column))
+			{
+				result.add(ValidationRule.REFERENCE_NOT_FOUND, lineNo, column, header_[column], r.getString(column));
+			}
+		}
+	}
+
+	private static boolean contains(IdSet[] sets, MappedRowScanner r, int column)
+	{
+		for (IdSet set : sets)
+		{
+			if (set.contains(r, column))
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+}
@@ -0,0 +1,167 @@
+package gov.va.rf2.validator;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The ids of the concepts, descriptions and relationships of a release (and of the releases it builds on) - so that
+ * the references between the files can be checked without a DB.
+ *
+ * The ids are read from the Concept, Description (and TextDefinition) and Relationship (and StatedRelationship) files
+ * of each folder - only the Full files of each, as a component is never removed from the Full files, or the Snapshot
+ * files if the folder has no Full ones (or the Delta files, if it has neither).
+ */
+public class ReleaseIds
+{
+	private static final List<String> RELEASE_TYPES = Arrays.asList("Full", "Snapshot", "Delta");
+
+	private IdSet concepts_ = new IdSet();
+	private IdSet descriptions_ = new IdSet();
+	private IdSet relationships_ = new IdSet();
+
+	public static ReleaseIds read(List<File> folders) throws IOException
+	{
+		ReleaseIds ids = new ReleaseIds();
+		for (File folder : folders)
+		{
+			ids.readFolder(folder);
+		}
+		ids.concepts_.sort();
+		ids.descriptions_.sort();
+		ids.relationships_.sort();
+		return ids;
+	}
+
+	/**
+	 * @return the checks of the columns of the header that reference a concept or other component - or null, if none of
+	 *         them do.
+	 */
+	public ReferenceChecks getChecks(String[] header)
+	{
+		List<Integer> columns = new ArrayList<>();
+		List<IdSet[]> sets = new ArrayList<>();
+		for (int i = 0; i < header.length; i++)
+		{
+			switch (header[i])
+			{
+				case "conceptId":
+				case "typeId":
+				case "sourceId":
+				case "destinationId":
+				case "refsetId":
+					columns.add(i);
+					sets.add(new IdSet[] {concepts_});
+					break;
+				case "referencedComponentId":
+					columns.add(i);
+					sets.add(new IdSet[] {concepts_, descriptions_, relationships_});
+					break;
+				default:
+					break;
+			}
+		}
+		if (columns.isEmpty())
+		{
+			return null;
+		}
+		int[] columnArray = new int[columns.size()];
+		for (int i = 0; i < columnArray.length; i++)
+		{
+			columnArray[i] = columns.get(i);
+		}
+		return new ReferenceChecks(header, columnArray, sets.toArray(new IdSet[sets.size()][]));
+	}
+
+	public int getConceptCount()
+	{
+		return concepts_.size();
+	}
+
+	public int getDescriptionCount()
+	{
+		return descriptions_.size();
+	}
+
+	public int getRelationshipCount()
+	{
+		return relationships_.size();
+	}
+
+	/**
+	 * @return a hash of all of the ids - which changes when any of them do
+	 */
+	public long getFingerprint()
+	{
+		return (concepts_.getFingerprint() * 31 + descriptions_.getFingerprint()) * 31 + relationships_.getFingerprint();
+	}
+
+	private void readFolder(File folder) throws IOException
+	{
+		Map<String, List<File>> files = new TreeMap<>();
+		findFiles(folder, files, new HashMap<String, Integer>());
+		for (Map.Entry<String, List<File>> type : files.entrySet())
+		{
+			IdSet ids = (type.getKey().equals("Concept") ? concepts_ : type.getKey().endsWith("Relationship") ? relationships_ : descriptions_);
+			for (File f : type.getValue())
+			{
+				ids.addIds(f);
+			}
+		}
+	}
+
+	/**
+	 * Find the files of each type of component under the folder - keeping only those of the most complete release type
+	 * found for the component type (Full, then Snapshot, then Delta).
+	 */
+	private static void findFiles(File folder, Map<String, List<File>> files, Map<String, Integer> ranks)
+	{
+		File[] children = folder.listFiles();
+		if (children == null)
+		{
+			return;
+		}
+		for (File f : children)
+		{
+			if (f.isDirectory())
+			{
+				findFiles(f, files, ranks);
+				continue;
+			}
+			String[] parts = f.getName().split("_");
+			String releaseType = DeltaIds.getReleaseType(f);
+			if (parts.length < 3 || !parts[0].equals("sct2") || !f.getName().toLowerCase().endsWith(".txt") || releaseType == null)
+			{
+				continue;
+			}
+			String type = parts[1];
+			switch (type)
+			{
+				case "Concept":
+				case "Description":
+				case "TextDefinition":
+				case "Relationship":
+				case "StatedRelationship":
+					int rank = RELEASE_TYPES.indexOf(releaseType);
+					Integer best = ranks.get(type);
+					if (best == null || rank < best)
+					{
+						ranks.put(type, rank);
+						files.put(type, new ArrayList<File>());
+					}
+					if (rank <= ranks.get(type))
+					{
+						files.get(type).add(f);
+					}
+					break;
+				default:
+					break;
+			}
+		}
+	}
+}
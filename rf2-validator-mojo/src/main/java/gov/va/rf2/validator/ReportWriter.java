@@ -0,0 +1,427 @@
+package gov.va.rf2.validator;
+
+import gov.va.oia.terminology.converters.sharedUtils.ConsoleUtil;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes the results of the validated files to the formatting report and the DB lookup report, and echoes them to the
+ * console - on a thread of its own, so that the validating threads only ever hand a result over, and never wait for
+ * the console or the disk.
+ *
+ * The reports get every failure, through large buffers. The console only gets the first few failures of each file,
+ * and of each rule within a file - a file with a systematic problem would otherwise spend most of its time printing
+ * the same failure to the Maven console.
+ *
+ * When summarizing, the reports get one entry per rule and column of a file, with a few samples, rather than every
+ * failure. Every failure can still be written to compressed detail reports.
+ */
+public class ReportWriter
+{
+	private static final int BUFFER_SIZE = 1024 * 1024;
+	private static final Object END = new Object();
+
+	private File inputRF2_;
+	private BufferedWriter formattingReport_;
+	private BufferedWriter dbLookupReport_;
+	private int consoleErrorsPerFile_;
+	private int consoleErrorsPerRule_;
+	private int errorSamples_ = 0;
+	private BufferedWriter formattingDetail_;
+	private BufferedWriter dbLookupDetail_;
+	private StructuredReport structuredReport_;
+	private String fileName_;
+
+	private LinkedBlockingQueue<Object> queue_ = new LinkedBlockingQueue<>();
+	private Thread thread_;
+	private volatile IOException failure_;
+
+	private int fileCounter_ = 0;
+	private int validFileCounter_ = 0;
+
+	// console throttling, per file
+	private int consoleErrors_;
+	private int consoleDbLookupErrors_;
+	private int[] ruleConsoleErrors_ = new int[ValidationRule.values().length];
+	private int suppressedErrors_;
+	private int suppressedDbLookupErrors_;
+
+	/**
+	 * @param inputRF2 the folder that the file names are reported relative to
+	 * @param dbLookupReport the DB lookup report - or null, if the DB isn't being validated
+	 * @param consoleErrorsPerFile the number of failures (of each report) of a file to echo to the console
+	 * @param consoleErrorsPerRule the number of failures of each rule of a file to echo to the console
+	 */
+	public ReportWriter(File inputRF2, File formattingReport, File dbLookupReport, int consoleErrorsPerFile, int consoleErrorsPerRule) throws IOException
+	{
+		inputRF2_ = inputRF2;
+		formattingReport_ = new BufferedWriter(new FileWriter(formattingReport), BUFFER_SIZE);
+		if (dbLookupReport != null)
+		{
+			dbLookupReport_ = new BufferedWriter(new FileWriter(dbLookupReport), BUFFER_SIZE);
+		}
+		consoleErrorsPerFile_ = consoleErrorsPerFile;
+		consoleErrorsPerRule_ = consoleErrorsPerRule;
+	}
+
+	/**
+	 * Write a summary per rule and column of each file, rather than every failure - call before {@link #start()}.
+	 *
+	 * @param errorSamples the number of samples of each rule and column to write
+	 * @param formattingDetail the gzipped report to write every format failure to - or null. The results of the files
+	 *            must then have every failure, and are summarized here.
+	 * @param dbLookupDetail the gzipped report to write every DB failure to - or null
+	 */
+	public void setSummarize(int errorSamples, File formattingDetail, File dbLookupDetail) throws IOException
+	{
+		errorSamples_ = errorSamples;
+		if (formattingDetail != null)
+		{
+			formattingDetail_ = gzipWriter(formattingDetail);
+		}
+		if (dbLookupDetail != null)
+		{
+			dbLookupDetail_ = gzipWriter(dbLookupDetail);
+		}
+	}
+
+	/**
+	 * Also write every record to a structured report - call before {@link #start()}.
+	 */
+	public void setStructuredReport(StructuredReport structuredReport)
+	{
+		structuredReport_ = structuredReport;
+	}
+
+	public void start()
+	{
+		thread_ = new Thread(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				writeQueued();
+			}
+		}, "RF2 report writer");
+		thread_.setDaemon(true);
+		thread_.start();
+	}
+
+	/**
+	 * Queue the results of a validated file to be written - files are written in the order they are queued.
+	 */
+	public void write(FileValidator fv)
+	{
+		queue_.add(fv);
+	}
+
+	/**
+	 * Wait for the queued results to be written, then write the summary line and close the reports.
+	 *
+	 * @param dbLookupTrailer lines for the end of the DB lookup report (ignored, if the DB isn't being validated)
+	 * @throws IOException if any of the results couldn't be written
+	 */
+	public void close(List<String> dbLookupTrailer) throws IOException
+	{
+		queue_.add(END);
+		try
+		{
+			thread_.join();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for the reports to be written", e);
+		}
+		if (failure_ != null)
+		{
+			throw failure_;
+		}
+
+		String summary = "Processed " + fileCounter_ + " files, " + validFileCounter_ + " were valid, " + (fileCounter_ - validFileCounter_) + " had errors";
+		ConsoleUtil.println(summary);
+		writeLine(formattingReport_, summary);
+		formattingReport_.close();
+		if (structuredReport_ != null)
+		{
+			structuredReport_.total(fileCounter_, summary);
+			structuredReport_.close();
+		}
+		if (formattingDetail_ != null)
+		{
+			writeLine(formattingDetail_, summary);
+			formattingDetail_.close();
+		}
+
+		if (dbLookupReport_ != null)
+		{
+			for (String line : dbLookupTrailer)
+			{
+				ConsoleUtil.println(line);
+				writeLine(dbLookupReport_, line);
+				if (dbLookupDetail_ != null)
+				{
+					writeLine(dbLookupDetail_, line);
+				}
+			}
+			dbLookupReport_.close();
+		}
+		if (dbLookupDetail_ != null)
+		{
+			dbLookupDetail_.close();
+		}
+	}
+
+	private void writeQueued()
+	{
+		ArrayList<Object> batch = new ArrayList<>();
+		try
+		{
+			while (true)
+			{
+				batch.add(queue_.take());
+				queue_.drainTo(batch);
+				for (Object o : batch)
+				{
+					if (o == END)
+					{
+						return;
+					}
+					writeFile((FileValidator) o);
+				}
+				batch.clear();
+			}
+		}
+		catch (IOException e)
+		{
+			failure_ = e;
+		}
+		catch (InterruptedException e)
+		{
+			failure_ = new IOException("Interrupted while writing the reports", e);
+		}
+		catch (RuntimeException e)
+		{
+			failure_ = new IOException("Failed writing the reports", e);
+		}
+	}
+
+	private void writeFile(FileValidator fv) throws IOException
+	{
+		fileName_ = fv.getFile().getCanonicalPath().substring(inputRF2_.getCanonicalPath().length() + 1);
+		String processing = "Processing File " + fileName_;
+		ConsoleUtil.println(processing);
+		writeLine(formattingReport_, processing);
+		if (dbLookupReport_ != null)
+		{
+			ConsoleUtil.println(processing);
+			writeLine(dbLookupReport_, processing);
+		}
+		writeDetailLine(processing);
+
+		consoleErrors_ = 0;
+		consoleDbLookupErrors_ = 0;
+		suppressedErrors_ = 0;
+		suppressedDbLookupErrors_ = 0;
+		Arrays.fill(ruleConsoleErrors_, 0);
+
+		ValidationResult result = fv.getResult();
+		if (errorSamples_ > 0 && !result.isSummarizing())
+		{
+			// every failure was kept, for the detail reports - summarize them here
+			writeFailures(result, true);
+			ValidationResult summarized = new ValidationResult(16, errorSamples_);
+			summarized.addAll(result);
+			result = summarized;
+		}
+		writeFailures(result, false);
+		for (RuleSummary summary : result.getSummaries())
+		{
+			writeSummary(summary);
+		}
+
+		if (suppressedErrors_ > 0)
+		{
+			ConsoleUtil.printErrorln(suppressedErrors_ + " further errors in this file were not shown.  See formattingReport.txt");
+		}
+		if (suppressedDbLookupErrors_ > 0)
+		{
+			ConsoleUtil.printErrorln(suppressedDbLookupErrors_ + " further DB lookup errors in this file were not shown.  See dbLookupReport.txt");
+		}
+
+		ConsoleUtil.println("");
+		writeLine(formattingReport_, "");
+		if (dbLookupReport_ != null)
+		{
+			writeLine(dbLookupReport_, "");
+		}
+		writeDetailLine("");
+
+		fileCounter_++;
+		long formatFailures = result.count(ValidationRule.Report.FORMAT);
+		if (formatFailures == 0)
+		{
+			validFileCounter_++;
+		}
+		if (structuredReport_ != null)
+		{
+			structuredReport_.file(fileName_, formatFailures == 0, formatFailures + result.count(ValidationRule.Report.DB));
+		}
+	}
+
+	/**
+	 * Write the failures that were kept individually - to the reports and console, or to the detail reports.
+	 */
+	private void writeFailures(ValidationResult result, boolean detail) throws IOException
+	{
+		// the DB failures of a row are reported together, on one line
+		StringBuilder dbLookupFailure = null;
+		ValidationRule dbLookupFailureRule = null;
+		long dbLookupFailureLine = -1;
+		for (int i = 0; i < result.size(); i++)
+		{
+			if (structuredReport_ != null && !detail)
+			{
+				structuredReport_.failure(fileName_, result.getLine(i), result.getColumn(i), result.getRule(i), result.getMessage(i));
+			}
+			if (result.getRule(i).getReport() == ValidationRule.Report.FORMAT)
+			{
+				if (detail)
+				{
+					writeLine(formattingDetail_, "ERROR: " + result.getMessage(i));
+				}
+				else
+				{
+					error(result.getRule(i), result.getMessage(i));
+				}
+			}
+			else if (dbLookupFailure != null && result.getLine(i) == dbLookupFailureLine)
+			{
+				dbLookupFailure.append("; ").append(result.getMessage(i));
+			}
+			else
+			{
+				if (dbLookupFailure != null)
+				{
+					dbLookupError(dbLookupFailureRule, dbLookupFailure.toString(), detail);
+				}
+				dbLookupFailureRule = result.getRule(i);
+				dbLookupFailureLine = result.getLine(i);
+				dbLookupFailure = new StringBuilder("Line " + dbLookupFailureLine + " failed the lookup in the DB: ").append(result.getMessage(i));
+			}
+		}
+		if (dbLookupFailure != null)
+		{
+			dbLookupError(dbLookupFailureRule, dbLookupFailure.toString(), detail);
+		}
+	}
+
+	private void writeSummary(RuleSummary summary) throws IOException
+	{
+		summary.sortSamples();
+		if (structuredReport_ != null)
+		{
+			structuredReport_.rule(fileName_, summary);
+			for (int i = 0; i < summary.getSampleCount(); i++)
+			{
+				structuredReport_.failure(fileName_, summary.getSampleLine(i), summary.getColumn(), summary.getRule(), summary.getSampleMessage(i));
+			}
+		}
+		StringBuilder text = new StringBuilder(summary.getDescription()).append(", for example:");
+		for (int i = 0; i < summary.getSampleCount(); i++)
+		{
+			text.append(System.lineSeparator()).append("    ");
+			if (summary.getRule().getReport() == ValidationRule.Report.DB)
+			{
+				text.append("Line ").append(summary.getSampleLine(i)).append(": ");
+			}
+			text.append(summary.getSampleMessage(i));
+		}
+		if (summary.getRule().getReport() == ValidationRule.Report.FORMAT)
+		{
+			error(summary.getRule(), text.toString());
+		}
+		else
+		{
+			dbLookupError(summary.getRule(), text.toString(), false);
+		}
+	}
+
+	private void error(ValidationRule rule, String message) throws IOException
+	{
+		String line = "ERROR: " + message;
+		if (consoleErrors_ < consoleErrorsPerFile_ && ruleConsoleErrors_[rule.ordinal()] < consoleErrorsPerRule_)
+		{
+			consoleErrors_++;
+			ruleConsoleErrors_[rule.ordinal()]++;
+			ConsoleUtil.println(line);
+		}
+		else
+		{
+			suppressedErrors_++;
+		}
+		writeLine(formattingReport_, line);
+	}
+
+	private void dbLookupError(ValidationRule rule, String message, boolean detail) throws IOException
+	{
+		if (dbLookupReport_ == null)
+		{
+			// can't happen - there are no DB failures, without a DB
+			return;
+		}
+		String line = "ERROR: " + message;
+		if (detail)
+		{
+			if (dbLookupDetail_ != null)
+			{
+				writeLine(dbLookupDetail_, line);
+			}
+			return;
+		}
+		if (consoleDbLookupErrors_ < consoleErrorsPerFile_ && ruleConsoleErrors_[rule.ordinal()] < consoleErrorsPerRule_)
+		{
+			consoleDbLookupErrors_++;
+			ruleConsoleErrors_[rule.ordinal()]++;
+			ConsoleUtil.println(line);
+		}
+		else
+		{
+			suppressedDbLookupErrors_++;
+		}
+		writeLine(dbLookupReport_, line);
+	}
+
+	private void writeDetailLine(String line) throws IOException
+	{
+		if (formattingDetail_ != null)
+		{
+			writeLine(formattingDetail_, line);
+		}
+		if (dbLookupDetail_ != null)
+		{
+			writeLine(dbLookupDetail_, line);
+		}
+	}
+
+	private static BufferedWriter gzipWriter(File f) throws IOException
+	{
+		return new BufferedWriter(new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(f), BUFFER_SIZE), StandardCharsets.UTF_8), BUFFER_SIZE);
+	}
+
+	private void writeLine(BufferedWriter report, String line) throws IOException
+	{
+		report.write(line);
+		report.newLine();
+	}
+}
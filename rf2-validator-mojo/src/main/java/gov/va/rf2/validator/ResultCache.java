@@ -0,0 +1,221 @@
+package gov.va.rf2.validator;
+
+import gov.va.oia.terminology.converters.sharedUtils.ConsoleUtil;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The results of previous runs, per file - so that a file that hasn't changed since the last run isn't validated
+ * again.
+ *
+ * An entry is only used if the SHA-256 of the content of the file matches, and if the configuration matches - the
+ * version of the validator, the expected effective time, the DB, and anything else that changes the result of a file.
+ * The configuration is an opaque string, built by the mojo. There is one entry per file name, so a changed file
+ * replaces its entry.
+ */
+public class ResultCache
+{
+	private static final int FORMAT_VERSION = 1;
+	private static final int BUFFER_SIZE = 1024 * 1024;
+
+	private File folder_;
+	private String configuration_;
+	private AtomicInteger hits_ = new AtomicInteger();
+	private AtomicInteger misses_ = new AtomicInteger();
+
+	public ResultCache(File folder, String configuration)
+	{
+		folder_ = folder;
+		folder_.mkdirs();
+		configuration_ = configuration;
+	}
+
+	/**
+	 * @return the SHA-256 of the content of the file, as hex
+	 */
+	public String hash(File f) throws IOException
+	{
+		return hex(sha256(f));
+	}
+
+	/**
+	 * @return the SHA-256 of the content of the file, streamed through a direct buffer
+	 */
+	static byte[] sha256(File f) throws IOException
+	{
+		MessageDigest digest = sha256();
+		ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+		try (RandomAccessFile raf = new RandomAccessFile(f, "r"); FileChannel channel = raf.getChannel())
+		{
+			while (channel.read(buffer) >= 0)
+			{
+				buffer.flip();
+				digest.update(buffer);
+				buffer.clear();
+			}
+		}
+		return digest.digest();
+	}
+
+	/**
+	 * @param name the name of the file, relative to the release - so that a moved release still hits
+	 * @return the cached result of the file, or null, if there is no entry for this content and configuration
+	 */
+	public ValidationResult get(String name, String hash)
+	{
+		File entry = entry(name);
+		if (entry.exists())
+		{
+			try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(entry), BUFFER_SIZE)))
+			{
+				if (in.readInt() == FORMAT_VERSION && in.readUTF().equals(configuration_) && in.readUTF().equals(name) && in.readUTF().equals(hash))
+				{
+					ValidationResult result = ValidationResult.read(in);
+					hits_.incrementAndGet();
+					return result;
+				}
+			}
+			catch (IOException | RuntimeException e)
+			{
+				ConsoleUtil.printErrorln("Ignoring the unreadable cached result " + entry + ": " + e);
+			}
+		}
+		misses_.incrementAndGet();
+		return null;
+	}
+
+	/**
+	 * Cache the result of a file - a failure to write the entry is only reported, as it only costs a later run time.
+	 */
+	public void put(String name, String hash, ValidationResult result)
+	{
+		File entry = entry(name);
+		// written aside, then renamed - so an interrupted run never leaves half an entry behind
+		File temp = new File(folder_, entry.getName() + "." + Thread.currentThread().getId() + ".tmp");
+		try
+		{
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp), BUFFER_SIZE)))
+			{
+				out.writeInt(FORMAT_VERSION);
+				out.writeUTF(configuration_);
+				out.writeUTF(name);
+				out.writeUTF(hash);
+				result.write(out);
+			}
+			if (!temp.renameTo(entry) && !(entry.delete() && temp.renameTo(entry)))
+			{
+				throw new IOException("Couldn't rename " + temp + " to " + entry);
+			}
+		}
+		catch (IOException | RuntimeException e)
+		{
+			temp.delete();
+			ConsoleUtil.printErrorln("Failed caching the result of " + name + ": " + e);
+		}
+	}
+
+	public int getHits()
+	{
+		return hits_.get();
+	}
+
+	public int getMisses()
+	{
+		return misses_.get();
+	}
+
+	/**
+	 * @return the version of the validator - the version of the plugin, and the time the classes were built, so that a
+	 *         rebuilt snapshot doesn't reuse results of the previous build.
+	 */
+	public static String validatorVersion()
+	{
+		String version = ResultCache.class.getPackage().getImplementationVersion();
+		long built = 0;
+		try
+		{
+			URL location = ResultCache.class.getProtectionDomain().getCodeSource().getLocation();
+			built = new File(location.toURI()).lastModified();
+		}
+		catch (Exception e)
+		{
+			// no code source - the version alone will have to do
+		}
+		return (version == null ? "unknown" : version) + " built " + built;
+	}
+
+	/**
+	 * @param prefix only describe the files whose names start with this - or null, for all of them
+	 * @return a description of the files in the folder - their names, sizes and modification times, hashed - which
+	 *         changes when any of the files do.
+	 */
+	public static String describe(File folder, String prefix) throws IOException
+	{
+		MessageDigest digest = sha256();
+		describe(folder, prefix, digest);
+		return folder.getCanonicalPath() + " " + hex(digest.digest());
+	}
+
+	private static void describe(File folder, String prefix, MessageDigest digest)
+	{
+		File[] files = folder.listFiles();
+		if (files == null)
+		{
+			return;
+		}
+		Arrays.sort(files);
+		for (File f : files)
+		{
+			if (f.isDirectory())
+			{
+				describe(f, prefix, digest);
+			}
+			else if (prefix == null || f.getName().startsWith(prefix))
+			{
+				digest.update((f.getPath() + " " + f.length() + " " + f.lastModified() + "\n").getBytes(StandardCharsets.UTF_8));
+			}
+		}
+	}
+
+	private File entry(String name)
+	{
+		return new File(folder_, hex(sha256().digest(name.getBytes(StandardCharsets.UTF_8))) + ".result");
+	}
+
+	private static MessageDigest sha256()
+	{
+		try
+		{
+			return MessageDigest.getInstance("SHA-256");
+		}
+		catch (NoSuchAlgorithmException e)
+		{
+			throw new RuntimeException("SHA-256 is required of every JVM", e);
+		}
+	}
+
+	private static String hex(byte[] bytes)
+	{
+		StringBuilder sb = new StringBuilder(bytes.length * 2);
+		for (byte b : bytes)
+		{
+			sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,525 @@
+package gov.va.rf2.validator;
+
+import gov.va.rf2.validator.rowData.Concept;
+import gov.va.rf2.validator.rowData.Description;
+import gov.va.rf2.validator.rowData.Identifier;
+import gov.va.rf2.validator.rowData.Refset;
+import gov.va.rf2.validator.rowData.Relationship;
+import gov.va.rf2.validator.rowData.RowBuffer;
+import gov.va.rf2.validator.rowData.UUIDConcept;
+import gov.va.rf2.validator.rowData.UUIDDescription;
+import gov.va.rf2.validator.rowData.UUIDIdentifier;
+import gov.va.rf2.validator.rowData.UUIDRefset;
+import gov.va.rf2.validator.rowData.UUIDRelationship;
+import gov.va.rf2.validator.rowData.ValidatorBase;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Validates the data rows of (a range of) a file - the line endings and encoding, the format of each column, and
+ * optionally, the content against the DB.
+ * 
+ * Each instance collects its own errors, so that the ranges of a large file can be validated in parallel. The
+ * {@link FileValidator} merges the results back together, in line order.
+ */
+public class RowValidator extends RecursiveAction
+{
+	private static final long serialVersionUID = 1L;
+
+	private FileInfo fi_;
+	private String[] header_;
+	private HashMap<Integer, DataType> columnInfo_;
+	private DataType[] columnTypes_;
+	private RowBuffer row_;
+	private ValidatorBase dbValidator_;
+	private boolean dbValidatorCreated_ = false;
+	private int expectedEffectiveTime_;
+	private EffectiveTimeParser timeParser_ = new EffectiveTimeParser();
+	private SCTUUIDMaps maps_;
+	private boolean validateDB_;
+	private int dbBatchSize_ = 1;
+	private DBValidationBatch batch_;
+	private ExecutorService dbPool_;
+	private int maxBatchesInFlight_;
+	private ArrayDeque<Future<DBValidationBatch>> batchesInFlight_ = new ArrayDeque<>();
+	// The namespace that the component ids of this file must have, if it has a long format id column
+	private int idNamespace_ = SCTIDDecoder.NO_NAMESPACE;
+
+	private File rangeFile_;
+	private long rangeStart_, rangeEnd_;
+	private long lineCount_ = 0;
+
+	private DeltaIds deltaIds_;
+	private ReferenceChecks referenceChecks_;
+	private long fingerprint_ = 0;
+	private long fingerprintRows_ = 0;
+
+	private ValidationResult result_ = new ValidationResult();
+	private int lineEndingErrorCounter_ = 0;
+	private int encodingErrorCounter_ = 0;
+
+	/**
+	 * @param columnInfo the column types, as parsed from the header - or null, if the content can't be validated. In
+	 *            which case, only the line endings and encoding are checked.
+	 */
+	public RowValidator(FileInfo fi, String[] header, HashMap<Integer, DataType> columnInfo, int expectedEffectiveTime, SCTUUIDMaps maps, boolean validateDB)
+	{
+		fi_ = fi;
+		header_ = header;
+		columnInfo_ = columnInfo;
+		if (columnInfo != null)
+		{
+			columnTypes_ = new DataType[header.length];
+			for (int i = 0; i < columnTypes_.length; i++)
+			{
+				columnTypes_[i] = columnInfo.get(i);
+			}
+			row_ = new RowBuffer(columnTypes_);
+			if (columnTypes_.length > 0 && columnTypes_[0] == DataType.SCTID && header[0].equals("id"))
+			{
+				idNamespace_ = SCTIDDecoder.parseNamespace(fi.getCountryNamespace());
+			}
+		}
+		expectedEffectiveTime_ = expectedEffectiveTime;
+		maps_ = maps;
+		validateDB_ = validateDB;
+	}
+
+	/**
+	 * Validate the rows against the DB in batches of this many rows, ordered by their place in the DB, rather than
+	 * one at a time in file order. 1 (the default) disables batching.
+	 */
+	public void setDbBatchSize(int dbBatchSize)
+	{
+		dbBatchSize_ = dbBatchSize;
+	}
+
+	/**
+	 * Summarize the failures per rule and column, keeping this many samples of each, rather than keeping every one.
+	 * 0 (the default) keeps every failure.
+	 */
+	public void setErrorSamples(int errorSamples)
+	{
+		result_ = new ValidationResult(16, errorSamples);
+	}
+
+	/**
+	 * Only validate the content of the rows whose ids are in the Delta - the other rows only get the line ending,
+	 * encoding and column count checks, and are added to the fingerprint. Null (the default) validates every row.
+	 */
+	public void setDeltaIds(DeltaIds deltaIds)
+	{
+		deltaIds_ = deltaIds;
+	}
+
+	/**
+	 * Check the ids that the (otherwise valid) rows reference - null (the default) for no checks.
+	 */
+	public void setReferenceChecks(ReferenceChecks referenceChecks)
+	{
+		referenceChecks_ = referenceChecks;
+	}
+
+	/**
+	 * Hand the rows off to a pool of DB validation threads, in batches of {@link #setDbBatchSize(int)} rows (which may
+	 * be a single row), rather than validating them on the thread that parses them.
+	 * 
+	 * @param maxBatchesInFlight the number of batches that may be queued or validating, before parsing waits for the
+	 *            oldest one to finish - which bounds the memory used by rows that are waiting.
+	 */
+	public void setDbPool(ExecutorService dbPool, int maxBatchesInFlight)
+	{
+		dbPool_ = dbPool;
+		maxBatchesInFlight_ = maxBatchesInFlight;
+	}
+
+	/**
+	 * Set the byte range of the file that this validator will process, when it is run as a fork join task. The lines
+	 * are numbered from the start of the range - see {@link #getLineCount()}.
+	 */
+	public void setRange(File f, long start, long end)
+	{
+		rangeFile_ = f;
+		rangeStart_ = start;
+		rangeEnd_ = end;
+	}
+
+	@Override
+	protected void compute()
+	{
+		try (MappedRowScanner r = new MappedRowScanner(rangeFile_, rangeStart_, rangeEnd_))
+		{
+			validateRows(r);
+		}
+		catch (Exception e)
+		{
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Validate all of the remaining rows of the scanner.
+	 */
+	public void validateRows(MappedRowScanner r) throws Exception
+	{
+		// The line endings and the encoding are checked on every line, even if the content can't be validated
+		while (r.next())
+		{
+			long lineNo = r.getLineNumber();
+			checkRowEncoding(r);
+			if (columnInfo_ != null)
+			{
+				boolean inDelta = (deltaIds_ == null || deltaIds_.contains(r, 0));
+				if (!inDelta)
+				{
+					fingerprint_ += DeltaIds.hashRow(r);
+					fingerprintRows_++;
+				}
+				if (r.getCellCount() != header_.length)
+				{
+					result_.add(ValidationRule.WRONG_COLUMN_COUNT, lineNo, -1, header_.length, r.getCellCount());
+				}
+				else if (inDelta && validateRow(r, lineNo))
+				{
+					if (referenceChecks_ != null)
+					{
+						referenceChecks_.check(r, lineNo, result_);
+					}
+					if (validateDB_)
+					{
+						validateRowAgainstDB(lineNo);
+					}
+				}
+			}
+		}
+		lineCount_ = r.getLineNumber();
+		validateBatch();
+		while (!batchesInFlight_.isEmpty())
+		{
+			collectBatch();
+		}
+	}
+
+	private void validateRowAgainstDB(long lineNo)
+	{
+		try
+		{
+			if (!dbValidatorCreated_)
+			{
+				dbValidator_ = createDbValidator();
+				dbValidatorCreated_ = true;
+			}
+			if (dbValidator_ != null)
+			{
+				if (dbBatchSize_ > 1 || dbPool_ != null)
+				{
+					if (batch_ == null)
+					{
+						batch_ = new DBValidationBatch(dbBatchSize_);
+					}
+					batch_.add(lineNo, row_.copy());
+					if (batch_.isFull())
+					{
+						validateBatch();
+					}
+				}
+				else
+				{
+					dbValidator_.validate(row_, lineNo, result_);
+				}
+			}
+		}
+		catch (Exception e)
+		{
+			result_.add(ValidationRule.DB_LOOKUP_FAILED, lineNo, -1, e.getMessage());
+		}
+	}
+
+	private void validateBatch()
+	{
+		if (batch_ == null)
+		{
+			return;
+		}
+		final DBValidationBatch batch = batch_;
+		batch_ = null;
+		if (dbPool_ == null)
+		{
+			batch.validate(dbValidator_);
+			batch.addResults(result_);
+			return;
+		}
+		while (batchesInFlight_.size() >= maxBatchesInFlight_)
+		{
+			collectBatch();
+		}
+		batchesInFlight_.add(dbPool_.submit(new Callable<DBValidationBatch>()
+		{
+			@Override
+			public DBValidationBatch call()
+			{
+				// The row validators keep per row state - each batch gets its own
+				try
+				{
+					batch.validate(createDbValidator());
+				}
+				catch (Exception e)
+				{
+					batch.failAll(e.getMessage());
+				}
+				return batch;
+			}
+		}));
+	}
+
+	/**
+	 * Wait for the oldest batch in flight, and add its results - so the results are still added in line order.
+	 */
+	private void collectBatch()
+	{
+		try
+		{
+			batchesInFlight_.removeFirst().get().addResults(result_);
+		}
+		catch (InterruptedException | ExecutionException e)
+		{
+			throw new RuntimeException("DB validation was interrupted", e);
+		}
+	}
+
+	private ValidatorBase createDbValidator() throws Exception
+	{
+		String[] otherFieldNames = (header_.length > 5 ? Arrays.copyOfRange(header_, 6, header_.length) : new String[] {});
+		if (fi_.getContentType().equals("Concept"))
+		{
+			return (fi_.getIsUUIDFile() ? new UUIDConcept(expectedEffectiveTime_) : new Concept(expectedEffectiveTime_, maps_.getMap(fi_)));
+		}
+		else if (fi_.getContentType().equals("Description"))
+		{
+			return (fi_.getIsUUIDFile() ? new UUIDDescription(expectedEffectiveTime_) : new Description(expectedEffectiveTime_, maps_.getMap(fi_)));
+		}
+		else if (fi_.getContentType().matches("(Relationship)|(StatedRelationship)"))
+		{
+			return (fi_.getIsUUIDFile() ? new UUIDRelationship(expectedEffectiveTime_) : new Relationship(expectedEffectiveTime_, maps_.getMap(fi_)));
+		}
+		else if (fi_.getContentType().equals("Identifier"))
+		{
+			return (fi_.getIsUUIDFile() ? new UUIDIdentifier(expectedEffectiveTime_) : new Identifier(expectedEffectiveTime_, maps_.getMap(fi_)));
+		}
+		else if (fi_.getContentType().endsWith("Refset"))
+		{
+			return (fi_.getIsUUIDFile() ? new UUIDRefset(expectedEffectiveTime_, otherFieldNames) : new Refset(expectedEffectiveTime_, maps_.getMap(fi_),
+					otherFieldNames));
+		}
+		return null;
+	}
+
+	/**
+	 * Parse each column of the row into row_.
+	 * 
+	 * @return true, if all of the columns were valid.
+	 */
+	private boolean validateRow(MappedRowScanner row, long lineNo)
+	{
+		boolean valid = true;
+		row_.setSource(row);
+		for (int i = 0; i < columnTypes_.length; i++)
+		{
+			if (!parseData(row, i, columnTypes_[i], lineNo))
+			{
+				valid = false;
+			}
+		}
+		return valid;
+	}
+
+	/**
+	 * Parse the cell into row_ - adding the failure to the result, rather than throwing, if it is invalid.
+	 * 
+	 * @return true, if the cell was valid.
+	 */
+	private boolean parseData(MappedRowScanner row, int column, DataType dataType, long lineNo)
+	{
+		if (dataType == null)
+		{
+			result_.add(ValidationRule.UNKNOWN_COLUMN, lineNo, column);
+			return false;
+		}
+		switch (dataType)
+		{
+			case Integer:
+				long value = row.tryParseInt(column);
+				if (value == MappedRowScanner.NOT_AN_INT)
+				{
+					result_.add(ValidationRule.NOT_INTEGER, lineNo, column);
+					return false;
+				}
+				row_.setInt(column, (int) value);
+				return true;
+			case Boolean:
+				if (row.getCellLength(column) != 1 || !(row.byteAt(column, 0) == '0' || row.byteAt(column, 0) == '1'))
+				{
+					result_.add(ValidationRule.NOT_BOOLEAN, lineNo, column);
+					return false;
+				}
+				row_.setBoolean(column, row.byteAt(column, 0) == '1');
+				return true;
+			case SCTID:
+				long sctid = SCTIDDecoder.decode(row, column);
+				if (sctid == SCTIDDecoder.INVALID)
+				{
+					result_.add(ValidationRule.NOT_SCTID, lineNo, column);
+					return false;
+				}
+				row_.setLong(column, sctid);
+				if (column == 0 && idNamespace_ != SCTIDDecoder.NO_NAMESPACE)
+				{
+					int namespace = SCTIDDecoder.getNamespace(sctid);
+					if (namespace != SCTIDDecoder.NO_NAMESPACE && namespace != idNamespace_)
+					{
+						result_.add(ValidationRule.WRONG_SCTID_NAMESPACE, lineNo, column, namespace, idNamespace_);
+						return false;
+					}
+				}
+				return true;
+			case SCTIDorUUID:
+				if (row.getCellLength(column) == 36)
+				{
+					if (!row.isUUID(column))
+					{
+						result_.add(ValidationRule.NOT_SCTID_OR_UUID, lineNo, column);
+						return false;
+					}
+					row_.setUUID(column, row.parseUUIDMostSignificantBits(column), row.parseUUIDLeastSignificantBits(column));
+					return true;
+				}
+				sctid = SCTIDDecoder.decode(row, column);
+				if (sctid == SCTIDDecoder.INVALID)
+				{
+					result_.add(ValidationRule.NOT_SCTID_OR_UUID, lineNo, column);
+					return false;
+				}
+				row_.setLong(column, sctid);
+				return true;
+			case String:
+				if (row.getCellLength(column) == 0)
+				{
+					result_.add(ValidationRule.EMPTY_STRING, lineNo, column);
+					return false;
+				}
+				// left in the scanner, until someone asks for it
+				return true;
+			case Time:
+				int time = timeParser_.parse(row, column);
+				if (time == EffectiveTimeParser.INVALID)
+				{
+					result_.add(ValidationRule.NOT_TIME, lineNo, column);
+					return false;
+				}
+				row_.setInt(column, time);
+				return true;
+			case UUID:
+				if (!row.isUUID(column))
+				{
+					result_.add(ValidationRule.NOT_UUID, lineNo, column);
+					return false;
+				}
+				row_.setUUID(column, row.parseUUIDMostSignificantBits(column), row.parseUUIDLeastSignificantBits(column));
+				return true;
+			case UUIDBoolean:
+				if (row.cellEqualsIgnoreCase(column, "true"))
+				{
+					row_.setBoolean(column, true);
+				}
+				else if (row.cellEqualsIgnoreCase(column, "false"))
+				{
+					row_.setBoolean(column, false);
+				}
+				else
+				{
+					result_.add(ValidationRule.NOT_UUID_BOOLEAN, lineNo, column);
+					return false;
+				}
+				return true;
+			default:
+				result_.add(ValidationRule.UNKNOWN_COLUMN, lineNo, column);
+				return false;
+		}
+	}
+
+	protected void checkRowEncoding(MappedRowScanner r)
+	{
+		if (!r.hasLineTerminator())
+		{
+			result_.add(ValidationRule.MISSING_FINAL_LINE_ENDING, r.getLineNumber(), -1);
+		}
+		else if (!r.hasCRLF())
+		{
+			if (lineEndingErrorCounter_++ < FileValidator.MAX_ENCODING_ERRORS_PER_FILE || result_.isSummarizing())
+			{
+				result_.add(ValidationRule.LINE_ENDING, r.getLineNumber(), -1);
+			}
+		}
+
+		if (r.getMalformedUTF8Cell() >= 0)
+		{
+			if (encodingErrorCounter_++ < FileValidator.MAX_ENCODING_ERRORS_PER_FILE || result_.isSummarizing())
+			{
+				result_.add(ValidationRule.ENCODING, r.getLineNumber(), r.getMalformedUTF8Cell());
+			}
+		}
+	}
+
+	/**
+	 * The failures found in the rows - both the format and the DB failures, each in line order.
+	 */
+	public ValidationResult getResult()
+	{
+		return result_;
+	}
+
+	/**
+	 * The number of the last line that was validated - for a range, the number of lines in it.
+	 */
+	public long getLineCount()
+	{
+		return lineCount_;
+	}
+
+	/**
+	 * The sum of the hashes of the rows that weren't in the Delta - see {@link #setDeltaIds(DeltaIds)}.
+	 */
+	public long getFingerprint()
+	{
+		return fingerprint_;
+	}
+
+	public long getFingerprintRows()
+	{
+		return fingerprintRows_;
+	}
+
+	/**
+	 * The total number of lines with line ending errors - only the first few of which are included in the result.
+	 */
+	public int getLineEndingErrorCount()
+	{
+		return lineEndingErrorCounter_;
+	}
+
+	/**
+	 * The total number of lines with encoding errors - only the first few of which are included in the result.
+	 */
+	public int getEncodingErrorCount()
+	{
+		return encodingErrorCounter_;
+	}
+}
@@ -0,0 +1,268 @@
+package gov.va.rf2.validator;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * The failures of one rule in one column of a file, aggregated - how many there were, the first and last lines they
+ * were on, and a fixed size random sample of them.
+ *
+ * The sample is a reservoir sample, so every failure is equally likely to end up in it, however many there are. The
+ * random numbers are seeded from the rule and column, so the same file always gives the same report.
+ */
+public class RuleSummary
+{
+	private ValidationRule rule_;
+	private int column_;
+	private long count_ = 0;
+	private long firstLine_ = Long.MAX_VALUE;
+	private long lastLine_ = Long.MIN_VALUE;
+
+	private long[] sampleLines_;
+	private Object[][] sampleValues_;
+	private int sampleCount_ = 0;
+	private long random_;
+
+	public RuleSummary(ValidationRule rule, int column, int sampleSize)
+	{
+		rule_ = rule;
+		column_ = column;
+		sampleLines_ = new long[sampleSize];
+		sampleValues_ = new Object[sampleSize][];
+		random_ = 0x9E3779B97F4A7C15L ^ (((long) rule.ordinal() << 32) | (column + 1));
+	}
+
+	/**
+	 * Count a failure, possibly keeping it as a sample.
+	 */
+	public void add(long line, Object[] values)
+	{
+		count_++;
+		firstLine_ = Math.min(firstLine_, line);
+		lastLine_ = Math.max(lastLine_, line);
+		if (sampleCount_ < sampleLines_.length)
+		{
+			sampleLines_[sampleCount_] = line;
+			sampleValues_[sampleCount_] = values;
+			sampleCount_++;
+		}
+		else
+		{
+			long slot = nextRandom(count_);
+			if (slot < sampleLines_.length)
+			{
+				sampleLines_[(int) slot] = line;
+				sampleValues_[(int) slot] = values;
+			}
+		}
+	}
+
+	/**
+	 * Add the failures of another summary of the same rule and column (of another part of the file).
+	 */
+	public void merge(RuleSummary other)
+	{
+		// Draw the merged sample from the two samples, in proportion to the number of failures each one stands for
+		long[] lines = new long[sampleLines_.length];
+		Object[][] values = new Object[sampleLines_.length][];
+		int count = 0;
+		int mine = 0, theirs = 0;
+		long myWeight = count_, theirWeight = other.count_;
+		while (count < lines.length && (mine < sampleCount_ || theirs < other.sampleCount_))
+		{
+			boolean takeMine;
+			if (mine == sampleCount_)
+			{
+				takeMine = false;
+			}
+			else if (theirs == other.sampleCount_)
+			{
+				takeMine = true;
+			}
+			else
+			{
+				takeMine = nextRandom(myWeight + theirWeight) < myWeight;
+			}
+			// any of the remaining samples of the chosen side - the order of a reservoir isn't random
+			if (takeMine)
+			{
+				int pick = mine + (int) nextRandom(sampleCount_ - mine);
+				swap(this, mine, pick);
+				lines[count] = sampleLines_[mine];
+				values[count] = sampleValues_[mine];
+				mine++;
+				myWeight--;
+			}
+			else
+			{
+				int pick = theirs + (int) nextRandom(other.sampleCount_ - theirs);
+				swap(other, theirs, pick);
+				lines[count] = other.sampleLines_[theirs];
+				values[count] = other.sampleValues_[theirs];
+				theirs++;
+				theirWeight--;
+			}
+			count++;
+		}
+		sampleLines_ = lines;
+		sampleValues_ = values;
+		sampleCount_ = count;
+
+		count_ += other.count_;
+		firstLine_ = Math.min(firstLine_, other.firstLine_);
+		lastLine_ = Math.max(lastLine_, other.lastLine_);
+	}
+
+	/**
+	 * Move the lines of the failures down by a number of lines - see {@link ValidationResult#shiftLines(long)}.
+	 */
+	public void shiftLines(long lines)
+	{
+		firstLine_ += lines;
+		lastLine_ += lines;
+		for (int i = 0; i < sampleCount_; i++)
+		{
+			sampleLines_[i] += lines;
+		}
+	}
+
+	public ValidationRule getRule()
+	{
+		return rule_;
+	}
+
+	/**
+	 * @return the (0 based) column, or -1
+	 */
+	public int getColumn()
+	{
+		return column_;
+	}
+
+	public long getCount()
+	{
+		return count_;
+	}
+
+	public long getFirstLine()
+	{
+		return firstLine_;
+	}
+
+	public long getLastLine()
+	{
+		return lastLine_;
+	}
+
+	public int getSampleCount()
+	{
+		return sampleCount_;
+	}
+
+	/**
+	 * Put the samples in line order.
+	 */
+	public void sortSamples()
+	{
+		// insertion sort - there are only a handful
+		for (int i = 1; i < sampleCount_; i++)
+		{
+			long line = sampleLines_[i];
+			Object[] values = sampleValues_[i];
+			int j = i - 1;
+			while (j >= 0 && sampleLines_[j] > line)
+			{
+				sampleLines_[j + 1] = sampleLines_[j];
+				sampleValues_[j + 1] = sampleValues_[j];
+				j--;
+			}
+			sampleLines_[j + 1] = line;
+			sampleValues_[j + 1] = values;
+		}
+	}
+
+	public long getSampleLine(int index)
+	{
+		return sampleLines_[index];
+	}
+
+	public Object[] getSampleValues(int index)
+	{
+		return sampleValues_[index];
+	}
+
+	public String getSampleMessage(int index)
+	{
+		return rule_.format(sampleLines_[index], column_, sampleValues_[index]);
+	}
+
+	/**
+	 * @return a one line description - such as "1953 x NOT_INTEGER in column 7, lines 4 to 99871"
+	 */
+	public String getDescription()
+	{
+		return count_ + " x " + rule_ + (column_ >= 0 ? " in column " + (column_ + 1) : "") + ", " + (firstLine_ == lastLine_ ? "line " + firstLine_ : "lines "
+				+ firstLine_ + " to " + lastLine_);
+	}
+
+	/**
+	 * Write the summary, for {@link #read(DataInput, int)} - see {@link ValidationResult#write(DataOutput)}.
+	 */
+	public void write(DataOutput out) throws IOException
+	{
+		out.writeUTF(rule_.name());
+		out.writeInt(column_);
+		out.writeLong(count_);
+		out.writeLong(firstLine_);
+		out.writeLong(lastLine_);
+		out.writeLong(random_);
+		out.writeInt(sampleCount_);
+		for (int i = 0; i < sampleCount_; i++)
+		{
+			out.writeLong(sampleLines_[i]);
+			ValidationResult.writeValues(out, sampleValues_[i]);
+		}
+	}
+
+	public static RuleSummary read(DataInput in, int sampleSize) throws IOException
+	{
+		RuleSummary summary = new RuleSummary(ValidationRule.valueOf(in.readUTF()), in.readInt(), sampleSize);
+		summary.count_ = in.readLong();
+		summary.firstLine_ = in.readLong();
+		summary.lastLine_ = in.readLong();
+		summary.random_ = in.readLong();
+		summary.sampleCount_ = in.readInt();
+		if (summary.sampleCount_ > sampleSize)
+		{
+			throw new IOException("More samples than the sample size");
+		}
+		for (int i = 0; i < summary.sampleCount_; i++)
+		{
+			summary.sampleLines_[i] = in.readLong();
+			summary.sampleValues_[i] = ValidationResult.readValues(in);
+		}
+		return summary;
+	}
+
+	private static void swap(RuleSummary summary, int a, int b)
+	{
+		long line = summary.sampleLines_[a];
+		summary.sampleLines_[a] = summary.sampleLines_[b];
+		summary.sampleLines_[b] = line;
+		Object[] values = summary.sampleValues_[a];
+		summary.sampleValues_[a] = summary.sampleValues_[b];
+		summary.sampleValues_[b] = values;
+	}
+
+	/**
+	 * @return a random number from 0 (inclusive) to bound (exclusive) - xorshift, as it is only for sampling
+	 */
+	private long nextRandom(long bound)
+	{
+		random_ ^= random_ << 13;
+		random_ ^= random_ >>> 7;
+		random_ ^= random_ << 17;
+		return (random_ >>> 1) % bound;
+	}
+}
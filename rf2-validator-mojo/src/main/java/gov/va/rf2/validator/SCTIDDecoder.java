@@ -0,0 +1,104 @@
+package gov.va.rf2.validator;
+
+/**
+ * Decodes and validates SCTIDs directly from the bytes of a row, without creating any intermediate objects.
+ *
+ * A single (right to left) pass over the digits computes the value and the Verhoeff check digit. The partition and
+ * namespace are then simple arithmetic on the value:
+ *
+ * <pre>
+ * [namespace (7 digits, long format only)][item id][partition (2 digits)][check digit]
+ * </pre>
+ *
+ * A partition starting with 1 (10 - 15) is the long format, which carries a namespace. 0 - 5 is the short format.
+ */
+public class SCTIDDecoder
+{
+	public static final int NO_NAMESPACE = -1;
+	public static final long INVALID = -1;
+
+	/**
+	 * @return the value of the SCTID in the specified cell of the current row, or {@link #INVALID} if the length,
+	 *         digits, check digit or partition are invalid. Invalid SCTIDs are common enough in a broken file that
+	 *         they aren't worth an exception each.
+	 */
+	public static long decode(MappedRowScanner r, int cell)
+	{
+		int length = r.getCellLength(cell);
+		if (length < 6 || length > 18)
+		{
+			return INVALID;
+		}
+
+		long value = 0;
+		long scale = 1;
+		int check = 0;
+		for (int i = length - 1; i >= 0; i--)
+		{
+			int digit = r.byteAt(cell, i) - '0';
+			if (digit < 0 || digit > 9)
+			{
+				return INVALID;
+			}
+			if (i < length - 1)
+			{
+				check = VerhoeffDihedralCheck.step(check, length - 1 - i, digit);
+			}
+			value += digit * scale;
+			scale *= 10;
+		}
+
+		if (VerhoeffDihedralCheck.computedCheckDigit(check) != value % 10)
+		{
+			return INVALID;
+		}
+
+		int partition = getPartition(value);
+		if (partition > 15 || (partition > 5 && partition < 10))
+		{
+			return INVALID;
+		}
+		return value;
+	}
+
+	/**
+	 * @return the two digit partition identifier of the SCTID
+	 */
+	public static int getPartition(long sctid)
+	{
+		return (int) ((sctid / 10) % 100);
+	}
+
+	/**
+	 * @return the namespace of a long format SCTID, or {@link #NO_NAMESPACE} for a short format SCTID.
+	 */
+	public static int getNamespace(long sctid)
+	{
+		if (getPartition(sctid) / 10 != 1)
+		{
+			return NO_NAMESPACE;
+		}
+		return (int) ((sctid / 1000) % 10000000);
+	}
+
+	/**
+	 * @param countryNamespace the country|namespace element of a file name, such as INT, US1000161 or 1000161
+	 * @return the namespace, or {@link #NO_NAMESPACE} if the element doesn't contain one.
+	 */
+	public static int parseNamespace(String countryNamespace)
+	{
+		if (countryNamespace == null || countryNamespace.length() < 7)
+		{
+			return NO_NAMESPACE;
+		}
+		String digits = countryNamespace.substring(countryNamespace.length() - 7);
+		for (int i = 0; i < digits.length(); i++)
+		{
+			if (digits.charAt(i) < '0' || digits.charAt(i) > '9')
+			{
+				return NO_NAMESPACE;
+			}
+		}
+		return Integer.parseInt(digits);
+	}
+}
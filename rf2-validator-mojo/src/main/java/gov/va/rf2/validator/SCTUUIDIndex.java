@@ -0,0 +1,173 @@
+package gov.va.rf2.validator;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ * A sct2_to_uuid_map file, as a binary index file of (sctId, uuid msb, uuid lsb) entries sorted by sctId, that is
+ * memory mapped and binary searched. The data stays off of the heap, and the index is kept between runs.
+ *
+ * The index starts with a header that identifies the map file it was built from - the length and the SHA-256 of the
+ * content of the file. If the header doesn't match the map file, the index is rebuilt.
+ */
+public class SCTUUIDIndex implements SCTUUIDLookup
+{
+	private static final long MAGIC = 0x5343545555494458L; // SCTUUIDX
+	private static final int VERSION = 2;
+	private static final int HEADER_SIZE = 64;
+	private static final int ENTRY_SIZE = 24;
+	// Each mapped segment must be less than 2GB
+	private static final int ENTRIES_PER_SEGMENT = (Integer.MAX_VALUE / ENTRY_SIZE) & ~0xFFF;
+
+	private final MappedByteBuffer[] segments_;
+	private final long count_;
+
+	private SCTUUIDIndex(File indexFile, long count) throws IOException
+	{
+		count_ = count;
+		segments_ = new MappedByteBuffer[(int) ((count + ENTRIES_PER_SEGMENT - 1) / ENTRIES_PER_SEGMENT)];
+		try (RandomAccessFile raf = new RandomAccessFile(indexFile, "r"); FileChannel channel = raf.getChannel())
+		{
+			for (int i = 0; i < segments_.length; i++)
+			{
+				long first = (long) i * ENTRIES_PER_SEGMENT;
+				long entries = Math.min(ENTRIES_PER_SEGMENT, count - first);
+				segments_[i] = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE + first * ENTRY_SIZE, entries * ENTRY_SIZE);
+			}
+		}
+	}
+
+	/**
+	 * Open the index of the map file, building (or rebuilding) it first, if the index file is missing or stale.
+	 *
+	 * @return the index - or, if the index file couldn't be written, the map file loaded into memory.
+	 */
+	public static SCTUUIDLookup open(File mapFile, File indexFile) throws Exception
+	{
+		byte[] fingerprint = ResultCache.sha256(mapFile);
+		long count = readHeader(indexFile, mapFile, fingerprint);
+		if (count >= 0)
+		{
+			return new SCTUUIDIndex(indexFile, count);
+		}
+
+		SCTUUIDMap map = SCTUUIDMaps.load(mapFile);
+		try
+		{
+			count = write(map, indexFile, mapFile, fingerprint);
+		}
+		catch (IOException e)
+		{
+			return map;
+		}
+		return new SCTUUIDIndex(indexFile, count);
+	}
+
+	@Override
+	public UUID get(long sctid)
+	{
+		long low = 0;
+		long high = count_ - 1;
+		while (low <= high)
+		{
+			long mid = (low + high) >>> 1;
+			ByteBuffer segment = segments_[(int) (mid / ENTRIES_PER_SEGMENT)];
+			int offset = (int) (mid % ENTRIES_PER_SEGMENT) * ENTRY_SIZE;
+			long key = segment.getLong(offset);
+			if (key < sctid)
+			{
+				low = mid + 1;
+			}
+			else if (key > sctid)
+			{
+				high = mid - 1;
+			}
+			else
+			{
+				return new UUID(segment.getLong(offset + 8), segment.getLong(offset + 16));
+			}
+		}
+		return null;
+	}
+
+	public long size()
+	{
+		return count_;
+	}
+
+	/**
+	 * @return the number of entries in the index, or -1 if the index file doesn't exist, or doesn't match the map file.
+	 */
+	private static long readHeader(File indexFile, File mapFile, byte[] fingerprint) throws IOException
+	{
+		if (!indexFile.isFile() || indexFile.length() < HEADER_SIZE)
+		{
+			return -1;
+		}
+		try (RandomAccessFile raf = new RandomAccessFile(indexFile, "r"))
+		{
+			if (raf.readLong() != MAGIC || raf.readInt() != VERSION || raf.readLong() != mapFile.length())
+			{
+				return -1;
+			}
+			byte[] indexed = new byte[fingerprint.length];
+			raf.readFully(indexed);
+			if (!Arrays.equals(indexed, fingerprint))
+			{
+				return -1;
+			}
+			long count = raf.readLong();
+			if (indexFile.length() != HEADER_SIZE + count * ENTRY_SIZE)
+			{
+				return -1;
+			}
+			return count;
+		}
+	}
+
+	/**
+	 * Write the index to a temporary file, and then move it into place - so that an interrupted run never leaves a
+	 * partial index behind.
+	 */
+	private static long write(SCTUUIDMap map, File indexFile, File mapFile, byte[] fingerprint) throws IOException
+	{
+		long[] keys = map.sortedKeys();
+		File temp = new File(indexFile.getParentFile(), indexFile.getName() + ".tmp");
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp), 1024 * 1024)))
+		{
+			out.writeLong(MAGIC);
+			out.writeInt(VERSION);
+			out.writeLong(mapFile.length());
+			out.write(fingerprint);
+			out.writeLong(keys.length);
+			out.write(new byte[HEADER_SIZE - out.size()]);
+			for (long key : keys)
+			{
+				UUID uuid = map.get(key);
+				out.writeLong(key);
+				out.writeLong(uuid.getMostSignificantBits());
+				out.writeLong(uuid.getLeastSignificantBits());
+			}
+		}
+		if (indexFile.exists() && !indexFile.delete())
+		{
+			temp.delete();
+			throw new IOException("Couldn't replace " + indexFile);
+		}
+		if (!temp.renameTo(indexFile))
+		{
+			temp.delete();
+			throw new IOException("Couldn't create " + indexFile);
+		}
+		return keys.length;
+	}
+}
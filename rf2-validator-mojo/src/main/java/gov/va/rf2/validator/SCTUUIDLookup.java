@@ -0,0 +1,16 @@
+package gov.va.rf2.validator;
+
+import java.util.UUID;
+
+/**
+ * Finds the UUID that an SCTID was generated from, per a sct2_to_uuid_map file.
+ *
+ * Implementations must be safe for concurrent lookups.
+ */
+public interface SCTUUIDLookup
+{
+	/**
+	 * @return the UUID for the SCTID, or null if it isn't in the map file.
+	 */
+	public UUID get(long sctid);
+}
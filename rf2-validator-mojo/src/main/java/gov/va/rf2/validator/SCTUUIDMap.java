@@ -0,0 +1,182 @@
+package gov.va.rf2.validator;
+
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ * A map from SCTID to UUID, stored in primitive arrays.
+ *
+ * A release map file has tens of millions of rows - as a HashMap<Long, UUID> each one costs a Long, a UUID and a
+ * HashMap.Node on top of the table slot. Here, each entry is three longs (the SCTID and the two halves of the UUID) in
+ * parallel arrays, found by open addressing with linear probing.
+ *
+ * SCTID 0 marks an empty slot - it is stored separately, should it ever appear.
+ *
+ * Not thread safe for writing. Once loaded, any number of threads may read it.
+ */
+public class SCTUUIDMap implements SCTUUIDLookup
+{
+	private static final int MIN_CAPACITY = 16;
+
+	private long[] keys_;
+	private long[] mostSigBits_;
+	private long[] leastSigBits_;
+	private int size_ = 0;
+	private int resizeAt_;
+
+	private boolean hasZero_ = false;
+	private long zeroMostSigBits_, zeroLeastSigBits_;
+
+	public SCTUUIDMap()
+	{
+		this(MIN_CAPACITY);
+	}
+
+	/**
+	 * @param expectedSize the number of entries that will be stored - the map grows as needed if this is exceeded.
+	 */
+	public SCTUUIDMap(int expectedSize)
+	{
+		int capacity = MIN_CAPACITY;
+		while (capacity / 3 * 2 < expectedSize)
+		{
+			capacity *= 2;
+		}
+		allocate(capacity);
+	}
+
+	public void put(long sctid, UUID uuid)
+	{
+		put(sctid, uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+	}
+
+	/**
+	 * Store the UUID for the SCTID, replacing any previous value.
+	 */
+	public void put(long sctid, long mostSigBits, long leastSigBits)
+	{
+		if (sctid == 0)
+		{
+			if (!hasZero_)
+			{
+				size_++;
+			}
+			hasZero_ = true;
+			zeroMostSigBits_ = mostSigBits;
+			zeroLeastSigBits_ = leastSigBits;
+			return;
+		}
+		int slot = findSlot(keys_, sctid);
+		if (keys_[slot] == 0)
+		{
+			keys_[slot] = sctid;
+			size_++;
+		}
+		mostSigBits_[slot] = mostSigBits;
+		leastSigBits_[slot] = leastSigBits;
+		if (size_ > resizeAt_)
+		{
+			rehash();
+		}
+	}
+
+	@Override
+	public UUID get(long sctid)
+	{
+		if (sctid == 0)
+		{
+			return (hasZero_ ? new UUID(zeroMostSigBits_, zeroLeastSigBits_) : null);
+		}
+		int slot = findSlot(keys_, sctid);
+		if (keys_[slot] == 0)
+		{
+			return null;
+		}
+		return new UUID(mostSigBits_[slot], leastSigBits_[slot]);
+	}
+
+	public boolean containsKey(long sctid)
+	{
+		if (sctid == 0)
+		{
+			return hasZero_;
+		}
+		return keys_[findSlot(keys_, sctid)] != 0;
+	}
+
+	public int size()
+	{
+		return size_;
+	}
+
+	/**
+	 * @return all of the SCTIDs in the map, in ascending order.
+	 */
+	public long[] sortedKeys()
+	{
+		long[] result = new long[size_];
+		int i = 0;
+		if (hasZero_)
+		{
+			result[i++] = 0;
+		}
+		for (long key : keys_)
+		{
+			if (key != 0)
+			{
+				result[i++] = key;
+			}
+		}
+		Arrays.sort(result);
+		return result;
+	}
+
+	/**
+	 * @return the slot that holds the key, or the empty slot where it would go.
+	 */
+	private static int findSlot(long[] keys, long key)
+	{
+		int mask = keys.length - 1;
+		int slot = hash(key) & mask;
+		while (keys[slot] != 0 && keys[slot] != key)
+		{
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	private static int hash(long key)
+	{
+		// The low digits of an SCTID are the check digit and partition - mix the bits, so they don't cluster
+		key ^= key >>> 33;
+		key *= 0xff51afd7ed558ccdL;
+		key ^= key >>> 33;
+		return (int) key;
+	}
+
+	private void allocate(int capacity)
+	{
+		keys_ = new long[capacity];
+		mostSigBits_ = new long[capacity];
+		leastSigBits_ = new long[capacity];
+		resizeAt_ = capacity / 3 * 2;
+	}
+
+	private void rehash()
+	{
+		long[] oldKeys = keys_;
+		long[] oldMostSigBits = mostSigBits_;
+		long[] oldLeastSigBits = leastSigBits_;
+		allocate(oldKeys.length * 2);
+		for (int i = 0; i < oldKeys.length; i++)
+		{
+			if (oldKeys[i] != 0)
+			{
+				int slot = findSlot(keys_, oldKeys[i]);
+				keys_[slot] = oldKeys[i];
+				mostSigBits_[slot] = oldMostSigBits[i];
+				leastSigBits_[slot] = oldLeastSigBits[i];
+			}
+		}
+	}
+}
@@ -1,44 +1,101 @@
 package gov.va.rf2.validator;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.InputStreamReader;
-import java.util.HashMap;
-import java.util.UUID;
-import org.apache.commons.io.input.BOMInputStream;
-import au.com.bytecode.opencsv.CSVReader;
-
-
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 
+/**
+ * The sct2_to_uuid_map files of a release - one each for Delta, Full and Snapshot.
+ *
+ * The map files are only found up front. Each one is loaded the first time that its map is asked for (or when
+ * {@link #preload()} is called), by streaming the rows straight into a {@link SCTUUIDMap} - or, if an index folder
+ * is provided, by opening the {@link SCTUUIDIndex} of the map file that is kept there. A map is only ever loaded
+ * once - threads that ask for a map while it is being loaded wait for it, while different maps may load at the same
+ * time.
+ */
 public class SCTUUIDMaps
 {
-	
-	private HashMap<Long, UUID> delta_;
-	private HashMap<Long, UUID> full_;
-	private HashMap<Long, UUID> snapshot_;
+	// the map files are "sctId <tab> uuid" rows - used to pre-size the maps, so they don't need to grow while loading
+	private static final int ESTIMATED_BYTES_PER_ROW = 50;
+
+	private File indexFolder_;
+	private FutureTask<SCTUUIDLookup> delta_;
+	private FutureTask<SCTUUIDLookup> full_;
+	private FutureTask<SCTUUIDLookup> snapshot_;
 
 	public SCTUUIDMaps(File folder) throws Exception
 	{
+		this(folder, null);
+	}
+
+	/**
+	 * @param indexFolder the folder to keep the indexes of the map files in, between runs - or null, to load the map
+	 *            files into memory.
+	 */
+	public SCTUUIDMaps(File folder, File indexFolder) throws Exception
+	{
+		indexFolder_ = indexFolder;
 		processFolder(folder);
 	}
-	
-	protected HashMap<Long, UUID> getMap(FileInfo fi)
+
+	/**
+	 * Start loading all of the maps, each on its own background thread.
+	 */
+	public void preload()
+	{
+		for (FutureTask<SCTUUIDLookup> task : Arrays.asList(delta_, full_, snapshot_))
+		{
+			if (task != null)
+			{
+				Thread t = new Thread(task, "SCTUUIDMap loader");
+				t.setDaemon(true);
+				t.start();
+			}
+		}
+	}
+
+	/**
+	 * @return the map for the content sub type (Delta, Full, Snapshot) of the file - or null, if there is no map file
+	 *         for it.
+	 * @throws Exception if the map file couldn't be loaded
+	 */
+	protected SCTUUIDLookup getMap(FileInfo fi) throws Exception
 	{
 		if (fi.getContentSubType().contains("Delta"))
 		{
-			return delta_;
+			return get(delta_);
 		}
 		else if (fi.getContentSubType().contains("Snapshot"))
 		{
-			return snapshot_;
+			return get(snapshot_);
 		}
 		else if (fi.getContentSubType().contains("Full"))
 		{
-			return full_;
+			return get(full_);
 		}
 		return null;
 	}
-	
+
+	private SCTUUIDLookup get(FutureTask<SCTUUIDLookup> task) throws Exception
+	{
+		if (task == null)
+		{
+			return null;
+		}
+		// Loads the map on this thread - unless it is already loaded, or another thread is loading it
+		task.run();
+		try
+		{
+			return task.get();
+		}
+		catch (ExecutionException e)
+		{
+			throw new Exception(e.getCause().getMessage(), e.getCause());
+		}
+	}
+
 	private void processFolder(File folder) throws Exception
 	{
 		for (File f : folder.listFiles())
@@ -51,15 +108,13 @@ public class SCTUUIDMaps
 			{
 				if (f.getName().startsWith("sct2_to_uuid_map"))
 				{
-					HashMap<Long, UUID> map;
 					if (f.getName().contains("Delta"))
 					{
 						if (delta_ != null)
 						{
 							throw new Exception("Found multiple Delta map files");
 						}
-						delta_ = new HashMap<>();
-						map = delta_;
+						delta_ = loader(f);
 					}
 					else if (f.getName().contains("Full"))
 					{
@@ -67,8 +122,7 @@ public class SCTUUIDMaps
 						{
 							throw new Exception("Found multiple Full map files");
 						}
-						full_ = new HashMap<>();
-						map = full_;
+						full_ = loader(f);
 					}
 					else if (f.getName().contains("Snapshot"))
 					{
@@ -76,30 +130,64 @@ public class SCTUUIDMaps
 						{
 							throw new Exception("Found multiple Snapshot map files");
 						}
-						snapshot_ = new HashMap<>();
-						map = snapshot_;
+						snapshot_ = loader(f);
 					}
 					else
 					{
 						throw new Exception("Unexpected mapping file");
 					}
-					
-					CSVReader r = new CSVReader(new InputStreamReader(new BOMInputStream(new FileInputStream(f)), "UTF-8"), '\t');
-					for (String[] row : r.readAll())
+				}
+			}
+		}
+	}
+
+	private FutureTask<SCTUUIDLookup> loader(final File f)
+	{
+		return new FutureTask<>(new Callable<SCTUUIDLookup>()
+		{
+			@Override
+			public SCTUUIDLookup call() throws Exception
+			{
+				if (indexFolder_ == null)
+				{
+					return load(f);
+				}
+				return SCTUUIDIndex.open(f, new File(indexFolder_, f.getName() + ".idx"));
+			}
+		});
+	}
+
+	protected static SCTUUIDMap load(File f) throws Exception
+	{
+		SCTUUIDMap map = new SCTUUIDMap((int) Math.min(f.length() / ESTIMATED_BYTES_PER_ROW, Integer.MAX_VALUE / 4));
+		try (MappedRowScanner r = new MappedRowScanner(f))
+		{
+			while (r.next())
+			{
+				if (r.getCellCount() == 1 && r.getCellLength(0) == 0)
+				{
+					// blank line
+					continue;
+				}
+				if (r.getLineNumber() == 1 && r.getString(0).equals("sctId"))
+				{
+					// header
+					continue;
+				}
+				try
+				{
+					if (r.getCellCount() < 2)
 					{
-						if (row.length > 0)
-						{
-							if (row[0].equals("sctId"))
-							{
-								//header
-								continue;
-							}
-							map.put(Long.parseLong(row[0]), UUID.fromString(row[1]));
-						}
+						throw new NumberFormatException("expected 2 columns, found " + r.getCellCount());
 					}
-					r.close();
+					map.put(r.parseLong(0), r.parseUUIDMostSignificantBits(1), r.parseUUIDLeastSignificantBits(1));
+				}
+				catch (NumberFormatException e)
+				{
+					throw new Exception("Invalid row " + r.getLineNumber() + " in the map file " + f.getName() + ": " + e.getMessage());
 				}
 			}
 		}
+		return map;
 	}
-}
\ No newline at end of file
+}
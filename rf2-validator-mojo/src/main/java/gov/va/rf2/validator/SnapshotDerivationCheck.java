@@ -0,0 +1,250 @@
+package gov.va.rf2.validator;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Checks that a Snapshot file is exactly the Snapshot derived from its Full file - the latest row of each id.
+ *
+ * Both files are reduced to a record per row - the id, the effective time, the hash of the row and the line - and
+ * sorted by id, latest first, each by a {@link RecordSorter} drawing on the shared {@link MemoryBudget}. The two
+ * sorts run in parallel. The sorted records are then merged as they are read back, so that neither file is ever held
+ * in memory.
+ * Rows whose id or effective time doesn't parse are skipped - they are already reported.
+ */
+public class SnapshotDerivationCheck
+{
+	private static final int RECORD_LONGS = 5;
+	private static final int MAX_MISSING_ROWS = 1000;
+
+	private File fullFile_;
+	private File snapshotFile_;
+	private MemoryBudget budget_;
+	private File tempFolder_;
+	private boolean uuids_ = false;
+
+	private ValidationResult failures_ = new ValidationResult();
+	private long missingRows_ = 0;
+
+	// the record read after the latest record of the current id of the Full file
+	private long[] fullNext_ = new long[RECORD_LONGS];
+	private boolean haveFullNext_;
+
+	/**
+	 * @param budget the memory that the two sorts may use - shared with the other checks running at the same time
+	 * @param tempFolder the folder of the runs of the sorts - or null, for the default temp folder
+	 */
+	public SnapshotDerivationCheck(File fullFile, File snapshotFile, MemoryBudget budget, File tempFolder)
+	{
+		fullFile_ = fullFile;
+		snapshotFile_ = snapshotFile;
+		budget_ = budget;
+		tempFolder_ = tempFolder;
+	}
+
+	/**
+	 * Add the rows of the Snapshot file that are missing, extra, or don't match the latest row of their id to the
+	 * result - in line order, after the missing rows.
+	 *
+	 * @param pool the pool to sort the Full file in, while the Snapshot file is sorted - or null, to sort one after the
+	 *            other
+	 */
+	public void check(ForkJoinPool pool, ValidationResult result) throws IOException
+	{
+		ForkJoinTask<RecordSorter> fullTask = ForkJoinTask.adapt(new Callable<RecordSorter>()
+		{
+			@Override
+			public RecordSorter call() throws Exception
+			{
+				return sort(fullFile_);
+			}
+		});
+		RecordSorter full = null;
+		RecordSorter snapshot = null;
+		try
+		{
+			if (pool == null)
+			{
+				full = fullTask.invoke();
+			}
+			else if (ForkJoinTask.inForkJoinPool())
+			{
+				fullTask.fork();
+			}
+			else
+			{
+				pool.execute(fullTask);
+			}
+			snapshot = sort(snapshotFile_);
+			full = fullTask.join();
+			merge(full, snapshot);
+		}
+		finally
+		{
+			if (full == null)
+			{
+				try
+				{
+					// let the Full sort finish, so its temp files are deleted
+					full = fullTask.join();
+				}
+				catch (RuntimeException e)
+				{
+					// it failed, and cleaned up after itself
+				}
+			}
+			if (full != null)
+			{
+				full.close();
+			}
+			if (snapshot != null)
+			{
+				snapshot.close();
+			}
+		}
+		if (missingRows_ > MAX_MISSING_ROWS)
+		{
+			failures_.add(ValidationRule.SNAPSHOT_MISSING_SUMMARY, -1, -1, missingRows_ - MAX_MISSING_ROWS);
+		}
+		failures_.sortByLine();
+		result.addAll(failures_);
+	}
+
+	/**
+	 * @return the records of the rows of the file - id (as two longs), negated effective time, row hash and line -
+	 *         sorted, so the latest row of each id comes first
+	 */
+	private RecordSorter sort(File f) throws IOException
+	{
+		RecordSorter sorter = new RecordSorter(RECORD_LONGS, budget_, tempFolder_);
+		try (MappedRowScanner r = new MappedRowScanner(f))
+		{
+			long[] record = new long[RECORD_LONGS];
+			boolean header = true;
+			while (r.next())
+			{
+				if (header)
+				{
+					header = false;
+					continue;
+				}
+				if (r.getCellCount() < 2)
+				{
+					continue;
+				}
+				long time = r.tryParseDigits(1);
+				if (time < 0)
+				{
+					continue;
+				}
+				long id = r.tryParseDigits(0);
+				if (id >= 0)
+				{
+					record[0] = id;
+					record[1] = 0;
+				}
+				else if (r.isUUID(0))
+				{
+					record[0] = r.parseUUIDMostSignificantBits(0);
+					record[1] = r.parseUUIDLeastSignificantBits(0);
+					uuids_ = true;
+				}
+				else
+				{
+					continue;
+				}
+				record[2] = -time;
+				record[3] = r.hashRow();
+				record[4] = r.getLineNumber();
+				sorter.add(record);
+			}
+			sorter.sort();
+		}
+		catch (IOException | RuntimeException e)
+		{
+			sorter.close();
+			throw e;
+		}
+		return sorter;
+	}
+
+	/**
+	 * A sort-merge of the records - the latest record of each id of the Full file against the records of the same id of
+	 * the Snapshot file.
+	 */
+	private void merge(RecordSorter full, RecordSorter snapshot) throws IOException
+	{
+		long[] latest = new long[RECORD_LONGS];
+		long[] row = new long[RECORD_LONGS];
+		haveFullNext_ = full.next(fullNext_);
+		boolean haveLatest = nextLatest(full, latest);
+		boolean haveRow = snapshot.next(row);
+		while (haveLatest || haveRow)
+		{
+			int c = (!haveRow ? -1 : !haveLatest ? 1 : compareIds(latest, row));
+			if (c < 0)
+			{
+				missing(latest);
+				haveLatest = nextLatest(full, latest);
+				continue;
+			}
+			if (c > 0)
+			{
+				failures_.add(ValidationRule.SNAPSHOT_EXTRA_ROW, row[4], -1);
+			}
+			else
+			{
+				if (latest[3] != row[3])
+				{
+					failures_.add(ValidationRule.SNAPSHOT_ROW_MISMATCH, row[4], -1, latest[4]);
+				}
+				haveLatest = nextLatest(full, latest);
+			}
+			// any further (older) rows of the same id are extra
+			long id0 = row[0];
+			long id1 = row[1];
+			while ((haveRow = snapshot.next(row)) && row[0] == id0 && row[1] == id1)
+			{
+				failures_.add(ValidationRule.SNAPSHOT_EXTRA_ROW, row[4], -1);
+			}
+		}
+	}
+
+	/**
+	 * Read the latest record of the next id of the Full file into latest, skipping the older records of the id.
+	 *
+	 * @return false, if there are no more ids
+	 */
+	private boolean nextLatest(RecordSorter full, long[] latest) throws IOException
+	{
+		if (!haveFullNext_)
+		{
+			return false;
+		}
+		System.arraycopy(fullNext_, 0, latest, 0, RECORD_LONGS);
+		while ((haveFullNext_ = full.next(fullNext_)) && compareIds(latest, fullNext_) == 0)
+		{
+			// an older row of the same id
+		}
+		return true;
+	}
+
+	private void missing(long[] latest)
+	{
+		if (++missingRows_ <= MAX_MISSING_ROWS)
+		{
+			String id = (uuids_ && latest[1] != 0 ? new UUID(latest[0], latest[1]).toString() : Long.toString(latest[0]));
+			failures_.add(ValidationRule.SNAPSHOT_MISSING_ROW, -1, -1, "id " + id, latest[4]);
+		}
+	}
+
+	private static int compareIds(long[] a, long[] b)
+	{
+		int c = Long.compare(a[0], b[0]);
+		return (c != 0 ? c : Long.compare(a[1], b[1]));
+	}
+}
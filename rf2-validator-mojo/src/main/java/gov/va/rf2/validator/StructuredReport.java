@@ -0,0 +1,229 @@
+package gov.va.rf2.validator;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A machine readable copy of the reports - one record per line, as JSON Lines or as TSV, so that tools can filter the
+ * results in a single streaming pass, rather than parsing the prose of the text reports.
+ *
+ * Every record has the same fields - type, file, line, column, rule, severity, count and message - any of which may
+ * be empty (omitted from JSON, an empty cell in TSV). The types of record are:
+ * <ul>
+ * <li>failure - a failure, with its line and (1 based) column, where it has them</li>
+ * <li>rule - the summary of the failures of a rule and column of a file (when summarizing), with the count and the
+ * first and last lines - as "line" and in the message. Its samples follow, as failure records</li>
+ * <li>file - after the records of each file, with the number of failures, and a severity of OK or ERROR - OK being
+ * valid, as counted by the text reports (which only counts the format failures)</li>
+ * <li>total - the last record, with the number of files, and the same message as the text reports</li>
+ * </ul>
+ */
+public class StructuredReport
+{
+	public enum Format
+	{
+		JSONL("jsonl"), TSV("tsv");
+
+		private String extension_;
+
+		private Format(String extension)
+		{
+			extension_ = extension;
+		}
+
+		public String getExtension()
+		{
+			return extension_;
+		}
+
+		/**
+		 * @return the format with the extension (ignoring case) - or null, if there isn't one
+		 */
+		public static Format parse(String extension)
+		{
+			for (Format f : values())
+			{
+				if (f.extension_.equalsIgnoreCase(extension.trim()))
+				{
+					return f;
+				}
+			}
+			return null;
+		}
+	}
+
+	private static final String FAILURE = "failure";
+	private static final String RULE = "rule";
+	private static final String FILE = "file";
+	private static final String TOTAL = "total";
+
+	private static final String[] FIELDS = new String[] {"type", "file", "line", "column", "rule", "severity", "count", "message"};
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	private Format format_;
+	private BufferedWriter out_;
+	private StringBuilder record_ = new StringBuilder();
+
+	public StructuredReport(File f, Format format, int bufferSize) throws IOException
+	{
+		format_ = format;
+		out_ = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(f), StandardCharsets.UTF_8), bufferSize);
+		if (format_ == Format.TSV)
+		{
+			for (int i = 0; i < FIELDS.length; i++)
+			{
+				out_.write((i > 0 ? "\t" : "") + FIELDS[i]);
+			}
+			out_.newLine();
+		}
+	}
+
+	/**
+	 * Write a failure (or the sample of a summary).
+	 *
+	 * @param line the line, or -1
+	 * @param column the (0 based) column, or -1
+	 */
+	public void failure(String file, long line, int column, ValidationRule rule, String message) throws IOException
+	{
+		write(FAILURE, file, (line >= 0 ? line : null), (column >= 0 ? column + 1 : null), rule.name(), "ERROR", null, message);
+	}
+
+	public void rule(String file, RuleSummary summary) throws IOException
+	{
+		write(RULE, file, summary.getFirstLine(), (summary.getColumn() >= 0 ? summary.getColumn() + 1 : null), summary.getRule().name(), "ERROR",
+				summary.getCount(), summary.getDescription());
+	}
+
+	public void file(String file, boolean valid, long failures) throws IOException
+	{
+		write(FILE, file, null, null, null, (valid ? "OK" : "ERROR"), failures, (valid ? "valid" : "had errors"));
+	}
+
+	public void total(int files, String message) throws IOException
+	{
+		write(TOTAL, null, null, null, null, null, files, message);
+	}
+
+	public void close() throws IOException
+	{
+		out_.close();
+	}
+
+	private void write(String type, String file, Long line, Integer column, String rule, String severity, Number count, String message)
+			throws IOException
+	{
+		Object[] values = new Object[] {type, file, line, column, rule, severity, count, message};
+		record_.setLength(0);
+		if (format_ == Format.JSONL)
+		{
+			record_.append('{');
+			for (int i = 0; i < FIELDS.length; i++)
+			{
+				if (values[i] == null)
+				{
+					continue;
+				}
+				if (record_.length() > 1)
+				{
+					record_.append(',');
+				}
+				record_.append('"').append(FIELDS[i]).append("\":");
+				if (values[i] instanceof Number)
+				{
+					record_.append(values[i]);
+				}
+				else
+				{
+					appendJsonString(values[i].toString());
+				}
+			}
+			record_.append('}');
+		}
+		else
+		{
+			for (int i = 0; i < FIELDS.length; i++)
+			{
+				if (i > 0)
+				{
+					record_.append('\t');
+				}
+				if (values[i] != null)
+				{
+					appendTsvValue(values[i].toString());
+				}
+			}
+		}
+		out_.append(record_);
+		out_.newLine();
+	}
+
+	private void appendJsonString(String s)
+	{
+		record_.append('"');
+		for (int i = 0; i < s.length(); i++)
+		{
+			char c = s.charAt(i);
+			if (c == '"' || c == '\\')
+			{
+				record_.append('\\').append(c);
+			}
+			else if (c == '\n')
+			{
+				record_.append("\\n");
+			}
+			else if (c == '\r')
+			{
+				record_.append("\\r");
+			}
+			else if (c == '\t')
+			{
+				record_.append("\\t");
+			}
+			else if (c < 0x20)
+			{
+				record_.append("\\u00").append(HEX[c >> 4]).append(HEX[c & 0xF]);
+			}
+			else
+			{
+				record_.append(c);
+			}
+		}
+		record_.append('"');
+	}
+
+	/**
+	 * The same escapes as the linear TSV format - so a value never breaks the line or the columns.
+	 */
+	private void appendTsvValue(String s)
+	{
+		for (int i = 0; i < s.length(); i++)
+		{
+			char c = s.charAt(i);
+			if (c == '\\')
+			{
+				record_.append("\\\\");
+			}
+			else if (c == '\t')
+			{
+				record_.append("\\t");
+			}
+			else if (c == '\n')
+			{
+				record_.append("\\n");
+			}
+			else if (c == '\r')
+			{
+				record_.append("\\r");
+			}
+			else
+			{
+				record_.append(c);
+			}
+		}
+	}
+}
@@ -0,0 +1,405 @@
+package gov.va.rf2.validator;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.TreeMap;
+
+/**
+ * The failures found by a validator, in the order they were found - each one a {@link ValidationRule}, the line and
+ * column it was found at, and the values the check recorded.
+ *
+ * Nothing is formatted until {@link #getMessage(int)} is called - a broken file can fail millions of checks, and most
+ * of those failures may only ever be counted. The failures are kept in parallel arrays, rather than as an object each.
+ *
+ * A summarizing result keeps only the failures that aren't about a line (those about the file name and header). The
+ * failures on the lines are counted per rule and column, in a {@link RuleSummary} with a few samples - so the memory
+ * used is the same, however broken the file is.
+ */
+public class ValidationResult
+{
+	private static final Object[] NO_VALUES = new Object[0];
+
+	private ValidationRule[] rules_;
+	private long[] lines_;
+	private int[] columns_;
+	private Object[][] values_;
+	private int size_ = 0;
+
+	// rule ordinal and column, to summary - when summarizing
+	private int sampleSize_;
+	private TreeMap<Long, RuleSummary> summaries_;
+	private RuleSummary lastSummary_;
+
+	public ValidationResult()
+	{
+		this(16, 0);
+	}
+
+	/**
+	 * @param sampleSize when more than 0, summarize the failures on the lines, keeping this many samples of each rule
+	 *            and column.
+	 */
+	public ValidationResult(int initialCapacity, int sampleSize)
+	{
+		sampleSize_ = sampleSize;
+		if (sampleSize > 0)
+		{
+			summaries_ = new TreeMap<>();
+		}
+		initialCapacity = Math.max(1, initialCapacity);
+		rules_ = new ValidationRule[initialCapacity];
+		lines_ = new long[initialCapacity];
+		columns_ = new int[initialCapacity];
+		values_ = new Object[initialCapacity][];
+	}
+
+	/**
+	 * Record a failure.
+	 *
+	 * @param line the line the failure was found on, or -1, if it isn't about a line
+	 * @param column the (0 based) column the failure was found in, or -1, if it isn't about a column
+	 * @param values the values to describe the failure with - see {@link ValidationRule}
+	 */
+	public void add(ValidationRule rule, long line, int column, Object... values)
+	{
+		if (summaries_ != null && line >= 0)
+		{
+			summarize(rule, line, column, (values.length == 0 ? NO_VALUES : values));
+			return;
+		}
+		if (size_ == rules_.length)
+		{
+			grow();
+		}
+		rules_[size_] = rule;
+		lines_[size_] = line;
+		columns_[size_] = column;
+		values_[size_] = (values.length == 0 ? NO_VALUES : values);
+		size_++;
+	}
+
+	/**
+	 * Copy the failure at the index of the other result to the end of this one.
+	 */
+	public void add(ValidationResult other, int index)
+	{
+		add(other.rules_[index], other.lines_[index], other.columns_[index], other.values_[index]);
+	}
+
+	/**
+	 * Copy all of the failures (and summaries) of the other result to the end of this one.
+	 */
+	public void addAll(ValidationResult other)
+	{
+		for (int i = 0; i < other.size_; i++)
+		{
+			add(other, i);
+		}
+		addSummaries(other);
+	}
+
+	/**
+	 * Merge the summaries of the other result into this one - or, if this result isn't summarizing, add the samples.
+	 */
+	public void addSummaries(ValidationResult other)
+	{
+		if (other.summaries_ == null)
+		{
+			return;
+		}
+		for (RuleSummary theirs : other.summaries_.values())
+		{
+			if (summaries_ == null)
+			{
+				theirs.sortSamples();
+				for (int i = 0; i < theirs.getSampleCount(); i++)
+				{
+					add(theirs.getRule(), theirs.getSampleLine(i), theirs.getColumn(), theirs.getSampleValues(i));
+				}
+				continue;
+			}
+			Long key = key(theirs.getRule(), theirs.getColumn());
+			RuleSummary mine = summaries_.get(key);
+			if (mine == null)
+			{
+				mine = new RuleSummary(theirs.getRule(), theirs.getColumn(), sampleSize_);
+				summaries_.put(key, mine);
+			}
+			mine.merge(theirs);
+		}
+	}
+
+	/**
+	 * Move the failures on the lines (and their summaries) down by a number of lines - for the result of a range of a
+	 * file, whose lines were numbered from the start of the range.
+	 */
+	public void shiftLines(long lines)
+	{
+		for (int i = 0; i < size_; i++)
+		{
+			if (lines_[i] >= 0)
+			{
+				lines_[i] += lines;
+			}
+		}
+		for (RuleSummary summary : getSummaries())
+		{
+			summary.shiftLines(lines);
+		}
+	}
+
+	/**
+	 * The number of failures that were kept individually - when summarizing, the failures on the lines are only in the
+	 * summaries.
+	 */
+	public int size()
+	{
+		return size_;
+	}
+
+	public boolean isSummarizing()
+	{
+		return summaries_ != null;
+	}
+
+	/**
+	 * @return the summaries, in rule, then column, order - empty, if this result isn't summarizing.
+	 */
+	public Collection<RuleSummary> getSummaries()
+	{
+		return (summaries_ == null ? new ArrayList<RuleSummary>() : summaries_.values());
+	}
+
+	public ValidationRule getRule(int index)
+	{
+		return rules_[index];
+	}
+
+	/**
+	 * @return the line the failure was found on, or -1
+	 */
+	public long getLine(int index)
+	{
+		return lines_[index];
+	}
+
+	/**
+	 * @return the (0 based) column the failure was found in, or -1
+	 */
+	public int getColumn(int index)
+	{
+		return columns_[index];
+	}
+
+	/**
+	 * @return the description of the failure - formatted on each call.
+	 */
+	public String getMessage(int index)
+	{
+		return rules_[index].format(lines_[index], columns_[index], values_[index]);
+	}
+
+	/**
+	 * @return the number of failures that belong in the report - including those that were summarized.
+	 */
+	public long count(ValidationRule.Report report)
+	{
+		long count = 0;
+		for (int i = 0; i < size_; i++)
+		{
+			if (rules_[i].getReport() == report)
+			{
+				count++;
+			}
+		}
+		for (RuleSummary summary : getSummaries())
+		{
+			if (summary.getRule().getReport() == report)
+			{
+				count += summary.getCount();
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Put the failures in line order - failures on the same line stay in the order they were found.
+	 */
+	public void sortByLine()
+	{
+		Integer[] order = new Integer[size_];
+		for (int i = 0; i < size_; i++)
+		{
+			order[i] = i;
+		}
+		// a stable sort
+		Arrays.sort(order, new Comparator<Integer>()
+		{
+			@Override
+			public int compare(Integer a, Integer b)
+			{
+				return Long.compare(lines_[a], lines_[b]);
+			}
+		});
+
+		ValidationRule[] rules = new ValidationRule[rules_.length];
+		long[] lines = new long[lines_.length];
+		int[] columns = new int[columns_.length];
+		Object[][] values = new Object[values_.length][];
+		for (int i = 0; i < size_; i++)
+		{
+			rules[i] = rules_[order[i]];
+			lines[i] = lines_[order[i]];
+			columns[i] = columns_[order[i]];
+			values[i] = values_[order[i]];
+		}
+		rules_ = rules;
+		lines_ = lines;
+		columns_ = columns;
+		values_ = values;
+	}
+
+	/**
+	 * Write the result, for {@link #read(DataInput)} - the values are written as ints, longs or strings, which is all
+	 * that the rules format.
+	 */
+	public void write(DataOutput out) throws IOException
+	{
+		out.writeInt(sampleSize_);
+		out.writeInt(size_);
+		for (int i = 0; i < size_; i++)
+		{
+			out.writeUTF(rules_[i].name());
+			out.writeLong(lines_[i]);
+			out.writeInt(columns_[i]);
+			writeValues(out, values_[i]);
+		}
+		Collection<RuleSummary> summaries = getSummaries();
+		out.writeInt(summaries.size());
+		for (RuleSummary summary : summaries)
+		{
+			summary.write(out);
+		}
+	}
+
+	public static ValidationResult read(DataInput in) throws IOException
+	{
+		int sampleSize = in.readInt();
+		int size = in.readInt();
+		if (size < 0)
+		{
+			throw new IOException("Invalid size " + size);
+		}
+		ValidationResult result = new ValidationResult(size, sampleSize);
+		for (int i = 0; i < size; i++)
+		{
+			ValidationRule rule = ValidationRule.valueOf(in.readUTF());
+			long line = in.readLong();
+			int column = in.readInt();
+			// not add() - which would summarize failures on a line
+			result.rules_[i] = rule;
+			result.lines_[i] = line;
+			result.columns_[i] = column;
+			result.values_[i] = readValues(in);
+		}
+		result.size_ = size;
+		int summaries = in.readInt();
+		for (int i = 0; i < summaries; i++)
+		{
+			RuleSummary summary = RuleSummary.read(in, sampleSize);
+			result.summaries_.put(key(summary.getRule(), summary.getColumn()), summary);
+		}
+		return result;
+	}
+
+	static void writeValues(DataOutput out, Object[] values) throws IOException
+	{
+		out.writeInt(values.length);
+		for (Object value : values)
+		{
+			if (value instanceof Integer)
+			{
+				out.writeByte('I');
+				out.writeInt((Integer) value);
+			}
+			else if (value instanceof Long)
+			{
+				out.writeByte('L');
+				out.writeLong((Long) value);
+			}
+			else
+			{
+				out.writeByte('S');
+				out.writeUTF(String.valueOf(value));
+			}
+		}
+	}
+
+	static Object[] readValues(DataInput in) throws IOException
+	{
+		int length = in.readInt();
+		if (length == 0)
+		{
+			return NO_VALUES;
+		}
+		Object[] values = new Object[length];
+		for (int i = 0; i < length; i++)
+		{
+			byte type = in.readByte();
+			if (type == 'I')
+			{
+				values[i] = in.readInt();
+			}
+			else if (type == 'L')
+			{
+				values[i] = in.readLong();
+			}
+			else if (type == 'S')
+			{
+				values[i] = in.readUTF();
+			}
+			else
+			{
+				throw new IOException("Unknown value type " + type);
+			}
+		}
+		return values;
+	}
+
+	private void summarize(ValidationRule rule, long line, int column, Object[] values)
+	{
+		// the failures of a broken file tend to come in runs of the same rule and column
+		RuleSummary summary = lastSummary_;
+		if (summary == null || summary.getRule() != rule || summary.getColumn() != column)
+		{
+			Long key = key(rule, column);
+			summary = summaries_.get(key);
+			if (summary == null)
+			{
+				summary = new RuleSummary(rule, column, sampleSize_);
+				summaries_.put(key, summary);
+			}
+			lastSummary_ = summary;
+		}
+		summary.add(line, values);
+	}
+
+	private static Long key(ValidationRule rule, int column)
+	{
+		return ((long) rule.ordinal() << 32) | (column + 1);
+	}
+
+	private void grow()
+	{
+		int capacity = rules_.length * 2;
+		rules_ = Arrays.copyOf(rules_, capacity);
+		lines_ = Arrays.copyOf(lines_, capacity);
+		columns_ = Arrays.copyOf(columns_, capacity);
+		values_ = Arrays.copyOf(values_, capacity);
+	}
+}
@@ -0,0 +1,110 @@
+package gov.va.rf2.validator;
+
+import java.util.Locale;
+
+/**
+ * The checks that the validator makes. The name of each rule is its code - stable, so that results can be counted and
+ * filtered by rule, without parsing the messages.
+ *
+ * Each rule knows which report its failures belong in, and how to describe a failure. The message is only formatted
+ * when a failure is actually written, from the line, the (1 based) column and the values the check recorded - which
+ * are available to the template as %1$, %2$ and %3$ onwards.
+ */
+public enum ValidationRule
+{
+	// The file name and header
+	FILE_NAME(Report.FORMAT, "%3$s"),
+	FILE_HEADER(Report.FORMAT, "%3$s"),
+	FILE_CONTENT_TYPE(Report.FORMAT, "%3$s"),
+
+	// The line endings and encoding
+	MISSING_FINAL_LINE_ENDING(Report.FORMAT, "Files are supposed to end with a windows style line feed - CR+LF"),
+	LINE_ENDING(Report.FORMAT, "Line %1$d does not end with a windows style line feed - CR+LF"),
+	LINE_ENDING_SUMMARY(Report.FORMAT, "%3$d further lines do not end with a windows style line feed - CR+LF"),
+	ENCODING(Report.FORMAT, "Data on line %1$d column %2$d is not valid UTF-8"),
+	ENCODING_SUMMARY(Report.FORMAT, "%3$d further lines are not valid UTF-8"),
+
+	// The format of each row and cell
+	WRONG_COLUMN_COUNT(Report.FORMAT, "Line %1$d should have %3$d columns, but it has %4$d"),
+	UNKNOWN_COLUMN(Report.FORMAT, "Data on line %1$d column %2$d is illegal - malformed data file, unknown what the column should be"),
+	NOT_INTEGER(Report.FORMAT, "Data on line %1$d column %2$d is illegal - should be an Integer"),
+	NOT_BOOLEAN(Report.FORMAT, "Data on line %1$d column %2$d is illegal - should be '0' (false) or '1' (true)"),
+	NOT_SCTID(Report.FORMAT, "Data on line %1$d column %2$d is illegal - should be a SCTID"),
+	WRONG_SCTID_NAMESPACE(Report.FORMAT, "Data on line %1$d column %2$d is illegal - SCTID namespace %3$07d doesn't match the file namespace %4$07d"),
+	NOT_SCTID_OR_UUID(Report.FORMAT, "Data on line %1$d column %2$d is illegal - should be a SCTID or UUID"),
+	EMPTY_STRING(Report.FORMAT, "Data on line %1$d column %2$d is illegal - No data found"),
+	NOT_TIME(Report.FORMAT, "Data on line %1$d column %2$d is illegal - unparsable time value"),
+	NOT_UUID(Report.FORMAT, "Data on line %1$d column %2$d is illegal - should be a UUID"),
+	NOT_UUID_BOOLEAN(Report.FORMAT, "Data on line %1$d column %2$d is illegal - should be 'true' or 'false'"),
+
+	// The keys of the rows
+	DUPLICATE_KEY(Report.FORMAT, "Line %1$d has the same %3$s as line %4$d"),
+
+	// The Snapshot, against the Snapshot derived from the Full file
+	SNAPSHOT_MISSING_ROW(Report.FORMAT, "The latest row of %3$s (line %4$d of the Full file) is missing"),
+	SNAPSHOT_MISSING_SUMMARY(Report.FORMAT, "%3$d further latest rows of the Full file are missing"),
+	SNAPSHOT_EXTRA_ROW(Report.FORMAT, "Line %1$d is not the latest row of any id of the Full file"),
+	SNAPSHOT_ROW_MISMATCH(Report.FORMAT, "Line %1$d doesn't match line %3$d of the Full file - the latest row of its id"),
+
+	// The references between the files, without a DB
+	REFERENCE_NOT_FOUND(Report.FORMAT, "Data on line %1$d column %2$d is illegal - the %3$s %4$s is not in the release"),
+
+	// The rows that the Delta didn't change
+	DELTA_FINGERPRINT(Report.FORMAT, "The %3$d rows whose ids aren't in the Delta don't match the %4$d rows of %5$s whose ids aren't in the Delta"),
+
+	// The content, against the DB
+	DB_LOOKUP_FAILED(Report.DB, "%3$s"),
+	DB_COMPONENT_NOT_FOUND(Report.DB, "Couldn't find the %3$s with the ID %4$s in the DB"),
+	DB_UNSUPPORTED_ID_SCHEME(Report.DB, "Validator doesn't support the identifier scheme %3$s"),
+	DB_WRONG_TIME(Report.DB, "Wrong time - expected %3$s but file has %4$s"),
+	DB_WRONG_STATUS(Report.DB, "Wrong status - expected %3$s but file has %4$s"),
+	DB_WRONG_MODULE(Report.DB, "Wrong module - expected %3$s but file has %4$s"),
+	DB_WRONG_DEFINITION_STATUS(Report.DB, "Wrong definition status - expected %3$s but file has %4$s"),
+	DB_WRONG_LANGUAGE_CODE(Report.DB, "Wrong languageCode - expected %3$s but file has %4$s"),
+	DB_WRONG_TYPE(Report.DB, "Wrong typeId - expected %3$s but file has %4$s"),
+	DB_WRONG_TERM(Report.DB, "Wrong term - expected %3$s but file has %4$s"),
+	DB_WRONG_CASE_SIGNIFICANCE(Report.DB, "Wrong caseSignificanceId - expected %3$s but file has %4$s"),
+	DB_WRONG_RELATIONSHIP_GROUP(Report.DB, "Wrong relationshipGroup - expected %3$s but file has %4$s"),
+	DB_WRONG_CHARACTERISTIC_TYPE(Report.DB, "Wrong CharacteristicId - expected %3$s but file has %4$s"),
+	DB_WRONG_MODIFIER(Report.DB, "Wrong ModifierId - expected %3$s but file has %4$s"),
+	DB_ALTERNATE_ID_MISMATCH(Report.DB, "Concept looked up by alternate identifier did not match concept looked up by primary identifier"),
+	DB_REFSET_NOT_FOUND(Report.DB, "Couldn't locate specified refset - %3$s is not in the DB"),
+	DB_REFERENCED_COMPONENT_NOT_FOUND(Report.DB, "Couldn't locate the member referenced by the refset %3$s - it is not in the DB"),
+	DB_EXTENSION_FIELD(Report.DB, "Failed validating extension field %3$s: %4$s");
+
+	/**
+	 * The report that failures of a rule are written to.
+	 */
+	public enum Report
+	{
+		FORMAT, DB
+	}
+
+	private Report report_;
+	private String template_;
+
+	private ValidationRule(Report report, String template)
+	{
+		report_ = report;
+		template_ = template;
+	}
+
+	public Report getReport()
+	{
+		return report_;
+	}
+
+	/**
+	 * @param line the line the failure was found on, or -1
+	 * @param column the (0 based) column the failure was found in, or -1
+	 * @param values the values that the check recorded
+	 */
+	public String format(long line, int column, Object[] values)
+	{
+		Object[] args = new Object[2 + values.length];
+		args[0] = line;
+		args[1] = column + 1;
+		System.arraycopy(values, 0, args, 2, values.length);
+		return String.format(Locale.ROOT, template_, args);
+	}
+}
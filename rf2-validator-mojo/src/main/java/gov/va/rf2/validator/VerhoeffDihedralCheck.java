@@ -38,18 +38,39 @@ public class VerhoeffDihedralCheck
 
 	public static void validateCheckDigit(String sctid) throws Exception
 	{
-		String idValue = sctid.substring(0, sctid.length() - 1);
 		int check = 0;
-		for (int i = idValue.length() - 1; i >= 0; i--)
+		for (int i = sctid.length() - 2; i >= 0; i--)
 		{
-			int fnfrow = (idValue.length() - i) % 8;
-			int fnfcol = (new Integer(idValue.substring(i, i + 1))).intValue();
-			check = Dihedral[check][FnF[fnfrow][fnfcol]];
+			int digit = sctid.charAt(i) - '0';
+			if (digit < 0 || digit > 9)
+			{
+				throw new Exception("SCTID should be a number");
+			}
+			check = step(check, sctid.length() - 1 - i, digit);
 		}
-		String computed = (new Integer(InverseD5[check])).toString();
-		if (!computed.equals(sctid.substring(sctid.length() - 1, sctid.length())))
+		int computed = computedCheckDigit(check);
+		if (computed != sctid.charAt(sctid.length() - 1) - '0')
 		{
 			throw new Exception("SCTID check digit should be '" + computed + "'");
 		}
 	}
+
+	/**
+	 * Fold one digit of the id (excluding the check digit) into the running check value. The digits must be
+	 * supplied right to left, starting with the running check value 0.
+	 * 
+	 * @param position the position of the digit, counted from the right - the digit just before the check digit is 1.
+	 */
+	public static int step(int check, int position, int digit)
+	{
+		return Dihedral[check][FnF[position % 8][digit]];
+	}
+
+	/**
+	 * @return the check digit that corresponds to the running check value, after all digits were folded in.
+	 */
+	public static int computedCheckDigit(int check)
+	{
+		return InverseD5[check];
+	}
 }
@@ -1,63 +1,59 @@
 package gov.va.rf2.validator.rowData;
 
-import java.util.ArrayList;
-import java.util.Date;
-import java.util.HashMap;
-import java.util.UUID;
+import gov.va.rf2.validator.SCTUUIDLookup;
+import gov.va.rf2.validator.ValidationRule;
 import org.ihtsdo.tk.api.conceptattribute.ConceptAttributeVersionBI;
 
 public class Concept extends ValidatorBase
 {
-	Long id_;
-	Date effectiveTime_, expectedEffectiveTime_;
+	long id_;
+	int effectiveTime_;
+	int expectedEffectiveTime_;
 	boolean active_;
 	long moduleId_;
 	long definitionStatusId_;
 
-	public Concept(Object[] data, Date expectedEffectiveTime, HashMap<Long, UUID> sctToUUIDMap)
+	public Concept(int expectedEffectiveTime, SCTUUIDLookup sctToUUIDMap)
 	{
-		id_ = (long) data[0];
-		effectiveTime_ = (Date) data[1];
-		active_ = (boolean) data[2];
-		moduleId_ = (long) data[3];
-		definitionStatusId_ = (long) data[4];
 		expectedEffectiveTime_ = expectedEffectiveTime;
 		sctToUUIDMap_ = sctToUUIDMap;
 	}
 
-	public void validate() throws Exception
+	@Override
+	public int getComponentNid(RowBuffer row) throws Exception
 	{
-		
-		ArrayList<String> errors = new ArrayList<>();
-		ConceptAttributeVersionBI<?> cav = lookupConceptBySCTID(id_);
-		
-		try
-		{
-			checkModule(cav, moduleId_);
-		}
-		catch (Exception e)
-		{
-			errors.add(e.getMessage());
-		}
+		return getNidForSCTID(row.getLong(0));
+	}
 
-		if (expectedEffectiveTime_.getTime() != effectiveTime_.getTime())
-		{
-			errors.add("Wrong time - expected " + expectedEffectiveTime_.toString() + " but file has " + effectiveTime_.toString());
-		}
-		try
+	@Override
+	protected void validate(RowBuffer row) throws Exception
+	{
+		id_ = row.getLong(0);
+		effectiveTime_ = row.getInt(1);
+		active_ = row.getBoolean(2);
+		moduleId_ = row.getLong(3);
+		definitionStatusId_ = row.getLong(4);
+
+
+		ConceptAttributeVersionBI<?> cav = lookupConcept(id_, 0);
+		if (cav == null)
 		{
-			checkStatus(cav, active_);
+			return;
 		}
-		catch (Exception e)
+		
+		checkModule(cav, moduleId_, 3);
+
+		if (expectedEffectiveTime_ != effectiveTime_)
 		{
-			errors.add(e.getMessage());
+			error(ValidationRule.DB_WRONG_TIME, 1, expectedEffectiveTime_, effectiveTime_);
 		}
+
+		checkStatus(cav, active_, 2);
 		
-		if (definitionStatusId_ == (cav.isDefined() ? 900000000000073002l : 900000000000074008l))
+		long expectedDefinitionStatus = (cav.isDefined() ? MetadataRegistry.DEFINED : MetadataRegistry.PRIMITIVE);
+		if (definitionStatusId_ != expectedDefinitionStatus)
 		{
-			errors.add("Wrong definition status - expected " + (cav.isDefined() ? 900000000000073002l : 900000000000074008l) + " but file has " + definitionStatusId_);
+			error(ValidationRule.DB_WRONG_DEFINITION_STATUS, 4, expectedDefinitionStatus, definitionStatusId_);
 		}
-
-		throwErrors(errors);
 	}
 }
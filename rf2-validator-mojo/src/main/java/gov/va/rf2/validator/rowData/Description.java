@@ -1,16 +1,15 @@
 package gov.va.rf2.validator.rowData;
 
-import java.util.ArrayList;
-import java.util.Date;
-import java.util.HashMap;
-import java.util.UUID;
-import org.ihtsdo.tk.Ts;
+import gov.va.rf2.validator.SCTUUIDLookup;
+import gov.va.rf2.validator.ValidationRule;
+import org.ihtsdo.tk.api.conceptattribute.ConceptAttributeVersionBI;
 import org.ihtsdo.tk.api.description.DescriptionVersionBI;
 
 public class Description extends ValidatorBase
 {
 	long id_;
-	Date effectiveTime_, expectedEffectiveTime_;
+	int effectiveTime_;
+	int expectedEffectiveTime_;
 	boolean active_;
 	long moduleId_;
 	long conceptId_;
@@ -19,78 +18,76 @@ public class Description extends ValidatorBase
 	String term_;
 	long caseSignificanceId_;
 	
-	public Description(Object[] data, Date expectedEffectiveTime, HashMap<Long, UUID> sctToUUIDMap)
+	public Description(int expectedEffectiveTime, SCTUUIDLookup sctToUUIDMap)
 	{
-		id_ = (long)data[0];
-		effectiveTime_ = (Date)data[1];
-		active_ = (boolean)data[2];
-		moduleId_ = (long)data[3];
-		conceptId_ = (long)data[4];
-		languageCode_ = (String)data[5];
-		typeId_ = (long)data[6];
-		term_ = (String)data[7];
-		caseSignificanceId_ = (long)data[8];
 		expectedEffectiveTime_ = expectedEffectiveTime;
 		sctToUUIDMap_ = sctToUUIDMap;
 	}
 	
-	@SuppressWarnings("rawtypes")
-	public void validate() throws Exception
+	@Override
+	public int getComponentNid(RowBuffer row) throws Exception
 	{
-		ArrayList<String> errors = new ArrayList<>();
+		return getNidForSCTID(row.getLong(0));
+	}
 
-		DescriptionVersionBI dv = (DescriptionVersionBI)lookupComponentBySCTID(id_);
-		
-		if (expectedEffectiveTime_.getTime() != effectiveTime_.getTime())
-		{
-			errors.add("Wrong time - expected " + expectedEffectiveTime_.toString() + " but file has " + effectiveTime_.toString());
-		}
+	@Override
+	@SuppressWarnings("rawtypes")
+	protected void validate(RowBuffer row) throws Exception
+	{
+		id_ = row.getLong(0);
+		effectiveTime_ = row.getInt(1);
+		active_ = row.getBoolean(2);
+		moduleId_ = row.getLong(3);
+		conceptId_ = row.getLong(4);
+		languageCode_ = row.getString(5);
+		typeId_ = row.getLong(6);
+		term_ = row.getString(7);
+		caseSignificanceId_ = row.getLong(8);
 
-		try
+		DescriptionVersionBI dv = (DescriptionVersionBI)lookupComponent(id_, 0);
+		if (dv == null)
 		{
-			checkStatus(dv, active_);
-		}
-		catch (Exception e)
-		{
-			errors.add(e.getMessage());
+			return;
 		}
 		
-		try
-		{
-			checkModule(dv, moduleId_);
-		}
-		catch (Exception e)
+		if (expectedEffectiveTime_ != effectiveTime_)
 		{
-			errors.add(e.getMessage());
+			error(ValidationRule.DB_WRONG_TIME, 1, expectedEffectiveTime_, effectiveTime_);
 		}
+
+		checkStatus(dv, active_, 2);
+		
+		checkModule(dv, moduleId_, 3);
 		
-		lookupConceptBySCTID(conceptId_);
+		lookupConcept(conceptId_, 4);
 		
 		//languageCode
 		if (!dv.getLang().equals(languageCode_))
 		{
-			errors.add("Wrong languageCode - expected " + dv.getLang() + " but file has " + languageCode_);
+			error(ValidationRule.DB_WRONG_LANGUAGE_CODE, 5, dv.getLang(), languageCode_);
 		}
 		
 		//typeId
-		if (!lookupConceptBySCTID(typeId_).getPrimUuid().equals(Ts.get().getConceptForNid(dv.getTypeNid()).getPrimUuid()))
+		if (MetadataRegistry.get().getSCTID(dv.getTypeNid()) != typeId_)
 		{
-			errors.add("Wrong typeId - expected an SCTID for " + Ts.get().getConceptForNid(dv.getTypeNid()).getPrimUuid() + " but file has " + typeId_);
+			ConceptAttributeVersionBI<?> type = lookupConcept(typeId_, 6);
+			if (type != null && !type.getPrimUuid().equals(getPrimUuid(dv.getTypeNid())))
+			{
+				error(ValidationRule.DB_WRONG_TYPE, 6, getPrimUuid(dv.getTypeNid()), typeId_);
+			}
 		}
 		
 		//term
 		if (!dv.getText().equals(term_))
 		{
-			errors.add("Wrong term - expected " + dv.getText() + " but file has " + term_);
+			error(ValidationRule.DB_WRONG_TERM, 7, dv.getText(), term_);
 		}
 		
 		//caseSig
-		long expectedCase = (dv.isInitialCaseSignificant() ? 900000000000017005l : 900000000000448009l);
+		long expectedCase = (dv.isInitialCaseSignificant() ? MetadataRegistry.ENTIRE_TERM_CASE_SENSITIVE : MetadataRegistry.ENTIRE_TERM_CASE_INSENSITIVE);
 		if (caseSignificanceId_ != expectedCase)
 		{
-			errors.add("Wrong caseSignificanceId - expected " + expectedCase + " but file has " + caseSignificanceId_);
+			error(ValidationRule.DB_WRONG_CASE_SIGNIFICANCE, 8, expectedCase, caseSignificanceId_);
 		}
-		
-		throwErrors(errors);
 	}
 }
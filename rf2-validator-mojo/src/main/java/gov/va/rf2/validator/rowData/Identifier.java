@@ -1,8 +1,7 @@
 package gov.va.rf2.validator.rowData;
 
-import java.util.ArrayList;
-import java.util.Date;
-import java.util.HashMap;
+import gov.va.rf2.validator.SCTUUIDLookup;
+import gov.va.rf2.validator.ValidationRule;
 import java.util.UUID;
 import org.ihtsdo.tk.api.ComponentVersionBI;
 
@@ -10,71 +9,62 @@ public class Identifier extends ValidatorBase
 {
 	long identifierSchemeId_;
 	String alternateIdentifier_;
-	Date effectiveTime_, expectedEffectiveTime_;
+	int effectiveTime_;
+	int expectedEffectiveTime_;
 	boolean active_;
 	long moduleId_;
 	long referencedComponentId_;
 	
 	private final long uuidIdScheme = 900000000000002006l;
 	
-	public Identifier(Object[] data, Date expectedEffectiveTime, HashMap<Long, UUID> sctToUUIDMap)
+	public Identifier(int expectedEffectiveTime, SCTUUIDLookup sctToUUIDMap)
 	{
-		identifierSchemeId_ = (long)data[0];
-		alternateIdentifier_ = (String)data[1];
-		effectiveTime_ = (Date)data[2];
-		active_ = (boolean)data[3];
-		moduleId_ = (long)data[4];
-		referencedComponentId_ = (long)data[5];
 		expectedEffectiveTime_ = expectedEffectiveTime;
 		sctToUUIDMap_ = sctToUUIDMap;
 	}
 	
-	public void validate() throws Exception
+	@Override
+	public int getComponentNid(RowBuffer row) throws Exception
 	{
-		ArrayList<String> errors = new ArrayList<>();
+		return getNidForSCTID(row.getLong(5));
+	}
+
+	@Override
+	protected void validate(RowBuffer row) throws Exception
+	{
+		identifierSchemeId_ = row.getLong(0);
+		alternateIdentifier_ = row.getString(1);
+		effectiveTime_ = row.getInt(2);
+		active_ = row.getBoolean(3);
+		moduleId_ = row.getLong(4);
+		referencedComponentId_ = row.getLong(5);
+
 		if (uuidIdScheme != identifierSchemeId_)
 		{
-			throw new Exception("Validator doesn't support the identifier scheme " + identifierSchemeId_);
+			error(ValidationRule.DB_UNSUPPORTED_ID_SCHEME, 0, identifierSchemeId_);
+			return;
 		}
 		
-		ComponentVersionBI cv = lookupComponentBySCTID(referencedComponentId_);
-		
-		if (expectedEffectiveTime_.getTime() != effectiveTime_.getTime())
+		ComponentVersionBI cv = lookupComponent(referencedComponentId_, 5);
+		if (cv == null)
 		{
-			errors.add("Wrong time - expected " + expectedEffectiveTime_.toString() + " but file has " + effectiveTime_.toString());
+			return;
 		}
 		
-		try
-		{
-			checkStatus(cv, active_);
-		}
-		catch (Exception e)
+		if (expectedEffectiveTime_ != effectiveTime_)
 		{
-			errors.add(e.getMessage());
+			error(ValidationRule.DB_WRONG_TIME, 2, expectedEffectiveTime_, effectiveTime_);
 		}
 		
-		try
-		{
-			checkModule(cv, moduleId_);
-		}
-		catch (Exception e)
-		{
-			errors.add(e.getMessage());
-		}
+		checkStatus(cv, active_, 3);
 		
-		try
-		{
-			ComponentVersionBI cv2 = lookupComponentByUUID(UUID.fromString(alternateIdentifier_));
-			if (!cv2.getPrimUuid().equals(cv.getPrimUuid()))
-			{
-				errors.add("Concept looked up by alternate identifier did not match concept looked up by primary identifier");
-			}
-		}
-		catch (Exception e) 
+		checkModule(cv, moduleId_, 4);
+		
+		UUID alternateId = parseUUID(alternateIdentifier_, 1);
+		ComponentVersionBI cv2 = (alternateId == null ? null : lookupComponent(alternateId, 1));
+		if (cv2 != null && !cv2.getPrimUuid().equals(cv.getPrimUuid()))
 		{
-			errors.add(e.getMessage());
+			error(ValidationRule.DB_ALTERNATE_ID_MISMATCH, 1);
 		}
-		
-		throwErrors(errors);
 	}
 }
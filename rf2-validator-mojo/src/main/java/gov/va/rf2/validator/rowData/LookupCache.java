@@ -0,0 +1,113 @@
+package gov.va.rf2.validator.rowData;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A size bounded, least recently used cache, for the results of DB lookups.
+ *
+ * The entries are spread over a number of independently locked segments (each an access ordered LinkedHashMap), so
+ * that the validator threads don't all contend for a single lock. Each segment evicts its own least recently used
+ * entry when it is full.
+ */
+public class LookupCache<K, V>
+{
+	private static final int SEGMENTS = 16;
+
+	private String name_;
+	private Segment<K, V>[] segments_;
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public LookupCache(String name, int maxSize)
+	{
+		name_ = name;
+		segments_ = new Segment[SEGMENTS];
+		for (int i = 0; i < segments_.length; i++)
+		{
+			segments_[i] = new Segment<>(Math.max(1, maxSize / SEGMENTS));
+		}
+	}
+
+	/**
+	 * @return the cached value, or null, if the key isn't cached.
+	 */
+	public V get(K key)
+	{
+		Segment<K, V> segment = segmentFor(key);
+		synchronized (segment)
+		{
+			V value = segment.get(key);
+			if (value == null)
+			{
+				segment.misses_++;
+			}
+			else
+			{
+				segment.hits_++;
+			}
+			return value;
+		}
+	}
+
+	public void put(K key, V value)
+	{
+		Segment<K, V> segment = segmentFor(key);
+		synchronized (segment)
+		{
+			segment.put(key, value);
+		}
+	}
+
+	/**
+	 * @return a one line summary of the hits, misses and evictions, so far.
+	 */
+	public String getStatistics()
+	{
+		long hits = 0, misses = 0, evictions = 0, size = 0;
+		for (Segment<K, V> segment : segments_)
+		{
+			synchronized (segment)
+			{
+				hits += segment.hits_;
+				misses += segment.misses_;
+				evictions += segment.evictions_;
+				size += segment.size();
+			}
+		}
+		long lookups = hits + misses;
+		return name_ + " cache: " + lookups + " lookups, " + hits + " hits (" + (lookups == 0 ? 0 : (hits * 100 / lookups)) + "%), " + misses
+				+ " misses, " + evictions + " evictions, " + size + " entries";
+	}
+
+	private Segment<K, V> segmentFor(K key)
+	{
+		int h = key.hashCode();
+		h ^= (h >>> 16);
+		return segments_[h & (SEGMENTS - 1)];
+	}
+
+	private static class Segment<K, V> extends LinkedHashMap<K, V>
+	{
+		private static final long serialVersionUID = 1L;
+
+		private int maxSize_;
+		private long hits_, misses_, evictions_;
+
+		Segment(int maxSize)
+		{
+			super(16, 0.75f, true);
+			maxSize_ = maxSize;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<K, V> eldest)
+		{
+			if (size() > maxSize_)
+			{
+				evictions_++;
+				return true;
+			}
+			return false;
+		}
+	}
+}
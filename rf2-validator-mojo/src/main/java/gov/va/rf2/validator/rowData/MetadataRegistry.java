@@ -0,0 +1,160 @@
+package gov.va.rf2.validator.rowData;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import org.ihtsdo.tk.Ts;
+import org.ihtsdo.tk.api.concept.ConceptChronicleBI;
+import org.ihtsdo.tk.api.id.IdBI;
+import org.ihtsdo.tk.binding.snomed.SnomedMetadataRf2;
+import org.ihtsdo.tk.binding.snomed.TermAux;
+
+/**
+ * The nids and SCTIDs of the metadata concepts (status, module, characteristic type, modifier, case significance,
+ * description type, definition status) which nearly every row refers to - so that the row validators can compare
+ * ints and longs, rather than looking up and comparing UUIDs.
+ *
+ * The well known RF2 metadata concepts are resolved once, when the registry is created. The SCTID of any other
+ * concept (such as an extension module) is resolved the first time it is asked for, and then remembered - the DB
+ * doesn't change during a validation run.
+ */
+public class MetadataRegistry
+{
+	public static final long NO_SCTID = -1;
+
+	public static final long DEFINED = 900000000000073002l;
+	public static final long PRIMITIVE = 900000000000074008l;
+	public static final long SOME = 900000000000451002l;
+	public static final long ALL = 900000000000450001l;
+	public static final long ENTIRE_TERM_CASE_SENSITIVE = 900000000000017005l;
+	public static final long ENTIRE_TERM_CASE_INSENSITIVE = 900000000000448009l;
+	public static final long INITIAL_CHARACTER_CASE_INSENSITIVE = 900000000000020002l;
+
+	private static final long[] WELL_KNOWN_SCTIDS = new long[] {
+		900000000000207008l, // SNOMED CT core module
+		900000000000012004l, // SNOMED CT model component module
+		900000000000010007l, // Stated relationship
+		900000000000011006l, // Inferred relationship
+		900000000000227009l, // Additional relationship
+		900000000000225001l, // Qualifying relationship
+		SOME, ALL,
+		ENTIRE_TERM_CASE_SENSITIVE, ENTIRE_TERM_CASE_INSENSITIVE, INITIAL_CHARACTER_CASE_INSENSITIVE,
+		900000000000003001l, // Fully specified name
+		900000000000013009l, // Synonym
+		900000000000550004l, // Definition
+		116680003l, // Is a
+		DEFINED, PRIMITIVE };
+
+	private static volatile MetadataRegistry instance_;
+
+	private int sctAuthorityNid_;
+	private int[] activeStatusNids_;
+	private ConcurrentHashMap<Integer, Long> nidToSCTID_ = new ConcurrentHashMap<>();
+
+	/**
+	 * @return the registry - creating it on the first call. The DB must be open.
+	 */
+	public static MetadataRegistry get() throws IOException
+	{
+		MetadataRegistry result = instance_;
+		if (result == null)
+		{
+			synchronized (MetadataRegistry.class)
+			{
+				result = instance_;
+				if (result == null)
+				{
+					result = new MetadataRegistry();
+					instance_ = result;
+				}
+			}
+		}
+		return result;
+	}
+
+	private MetadataRegistry() throws IOException
+	{
+		sctAuthorityNid_ = TermAux.SCT_ID_AUTHORITY.getLenient().getNid();
+		activeStatusNids_ = new int[] { SnomedMetadataRf2.ACTIVE_VALUE_RF2.getLenient().getNid(), SnomedMetadataRf2.PENDING_MOVE_RF2.getLenient().getNid(),
+				SnomedMetadataRf2.CONCEPT_NON_CURRENT_RF2.getLenient().getNid() };
+		for (long sctid : WELL_KNOWN_SCTIDS)
+		{
+			try
+			{
+				int nid = Ts.get().getNidFromAlternateId(ValidatorBase.SCTAuthority, sctid + "");
+				nidToSCTID_.put(nid, sctid);
+			}
+			catch (Exception e)
+			{
+				// not in this DB - it will just be resolved the slow way, if it is ever used
+			}
+		}
+	}
+
+	/**
+	 * @return true, if the status is one that RF2 exports as active
+	 */
+	public boolean isActiveStatus(int statusNid)
+	{
+		for (int nid : activeStatusNids_)
+		{
+			if (nid == statusNid)
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return the SCTID of the concept, or {@link #NO_SCTID} if the concept doesn't have one in the DB (it may still
+	 *         have a generated one, in the map file).
+	 */
+	public long getSCTID(int conceptNid) throws IOException
+	{
+		Long sctid = nidToSCTID_.get(conceptNid);
+		if (sctid == null)
+		{
+			sctid = lookupSCTID(conceptNid);
+			nidToSCTID_.put(conceptNid, sctid);
+		}
+		return sctid;
+	}
+
+	/**
+	 * @return the number of concepts resolved, so far
+	 */
+	public int size()
+	{
+		return nidToSCTID_.size();
+	}
+
+	private long lookupSCTID(int conceptNid) throws IOException
+	{
+		ConceptChronicleBI c = Ts.get().getConceptForNid(conceptNid);
+		if (c == null || c.getConceptAttributes() == null || c.getConceptAttributes().getVersions().size() < 1)
+		{
+			return NO_SCTID;
+		}
+		Collection<? extends IdBI> altIds = ValidatorBase.getNewest(c).getAdditionalIds();
+		if (altIds != null)
+		{
+			for (IdBI id : altIds)
+			{
+				if (id.getAuthorityNid() == sctAuthorityNid_)
+				{
+					//TODO not sure if multiple SCTIDs are allowed, if so, this needs to keep them all, not just the first
+					try
+					{
+						return Long.parseLong(id.getDenotation().toString());
+					}
+					catch (NumberFormatException e)
+					{
+						return NO_SCTID;
+					}
+				}
+			}
+		}
+		return NO_SCTID;
+	}
+}
@@ -1,114 +1,75 @@
 package gov.va.rf2.validator.rowData;
 
-import java.util.ArrayList;
-import java.util.Date;
-import java.util.HashMap;
+import gov.va.rf2.validator.SCTUUIDLookup;
+import gov.va.rf2.validator.ValidationRule;
 import java.util.UUID;
 import org.ihtsdo.tk.api.ComponentVersionBI;
 
 public class Refset extends ValidatorBase
 {
 	UUID id_;
-	Date effectiveTime_, expectedEffectiveTime_;
+	int effectiveTime_;
+	int expectedEffectiveTime_;
 	boolean active_;
 	long moduleId_;
 	long refsetId_;
 	long referencedComponentId1_;
 	UUID referencedComponentId2_;
-	ArrayList<Object> otherFields_ = new ArrayList<>();
 	String[] otherFieldNames_;
 
-	public Refset(Object[] data, Date expectedEffectiveTime, HashMap<Long, UUID> sctToUUIDMap, String[] otherFieldNames)
+	public Refset(int expectedEffectiveTime, SCTUUIDLookup sctToUUIDMap, String[] otherFieldNames)
 	{
-		id_ = (UUID) data[0];
-		effectiveTime_ = (Date) data[1];
-		active_ = (boolean) data[2];
-		moduleId_ = (long) data[3];
-		refsetId_ = (long) data[4];
-		if (data[5] instanceof UUID)
-		{
-			referencedComponentId2_ = (UUID) data[5];
-		}
-		else
-		{
-			referencedComponentId1_ = (long) data[5];
-		}
 		expectedEffectiveTime_ = expectedEffectiveTime;
-		for (int i = 6; i < data.length; i++)
-		{
-			otherFields_.add(data[i]);
-		}
 		otherFieldNames_ = otherFieldNames;
 		sctToUUIDMap_ = sctToUUIDMap;
 	}
 
-	public void validate() throws Exception
+	@Override
+	protected void validate(RowBuffer row) throws Exception
 	{
-		ArrayList<String> errors = new ArrayList<>();
-
-		ComponentVersionBI cv = lookupComponentByUUID(id_);
-
-		if (expectedEffectiveTime_.getTime() != effectiveTime_.getTime())
-		{
-			errors.add("Wrong time - expected " + expectedEffectiveTime_.toString() + " but file has " + effectiveTime_.toString());
-		}
-
-		try
+		id_ = row.getUUID(0);
+		effectiveTime_ = row.getInt(1);
+		active_ = row.getBoolean(2);
+		moduleId_ = row.getLong(3);
+		refsetId_ = row.getLong(4);
+		if (row.isUUID(5))
 		{
-			checkStatus(cv, active_);
+			referencedComponentId2_ = row.getUUID(5);
 		}
-		catch (Exception e)
+		else
 		{
-			errors.add(e.getMessage());
+			referencedComponentId1_ = row.getLong(5);
+			referencedComponentId2_ = null;
 		}
 
-		try
-		{
-			checkModule(cv, moduleId_);
-		}
-		catch (Exception e)
+		ComponentVersionBI cv = lookupComponent(id_, 0);
+		if (cv == null)
 		{
-			errors.add(e.getMessage());
+			return;
 		}
 
-		try
+		if (expectedEffectiveTime_ != effectiveTime_)
 		{
-			lookupComponentBySCTID(refsetId_);
-		}
-		catch (Exception e)
-		{
-			errors.add("Couldn't locate specified refset - " + e.getMessage());
+			error(ValidationRule.DB_WRONG_TIME, 1, expectedEffectiveTime_, effectiveTime_);
 		}
 
-		try
+		checkStatus(cv, active_, 2);
+
+		checkModule(cv, moduleId_, 3);
+
+		if (findComponentBySCTID(refsetId_) == null)
 		{
-			if (referencedComponentId2_ == null)
-			{
-				lookupComponentBySCTID(referencedComponentId1_);
-			}
-			else
-			{
-				lookupComponentByUUID(referencedComponentId2_);
-			}
+			error(ValidationRule.DB_REFSET_NOT_FOUND, 4, refsetId_);
 		}
-		catch (Exception e)
+
+		if ((referencedComponentId2_ == null ? findComponentBySCTID(referencedComponentId1_) : findComponentByUUID(referencedComponentId2_)) == null)
 		{
-			errors.add("Couldn't locate the member referenced by the refset " + (referencedComponentId2_ == null ? referencedComponentId1_ : referencedComponentId2_)
-					+ " " + e.getMessage());
+			error(ValidationRule.DB_REFERENCED_COMPONENT_NOT_FOUND, 5, (referencedComponentId2_ == null ? referencedComponentId1_ : referencedComponentId2_));
 		}
 
-		int i = 6;
-		for (Object o : otherFields_)
+		for (int i = 6; i < row.getColumnCount(); i++)
 		{
-			try
-			{
-				checkExtensionField(o, otherFieldNames_[i++]);
-			}
-			catch (Exception e)
-			{
-				errors.add("Failed validating extension field " + o + ": " + e.getMessage());
-			}
+			checkExtensionField(row, i, otherFieldNames_[i - 6]);
 		}
-		throwErrors(errors);
 	}
 }
@@ -1,17 +1,16 @@
 package gov.va.rf2.validator.rowData;
 
-import java.util.ArrayList;
-import java.util.Date;
-import java.util.HashMap;
-import java.util.UUID;
-import org.ihtsdo.tk.Ts;
+import gov.va.rf2.validator.SCTUUIDLookup;
+import gov.va.rf2.validator.ValidationRule;
+import org.ihtsdo.tk.api.conceptattribute.ConceptAttributeVersionBI;
 import org.ihtsdo.tk.api.relationship.RelationshipVersionBI;
 import org.ihtsdo.tk.binding.snomed.Snomed;
 
 public class Relationship extends ValidatorBase
 {
 	long id_;
-	Date effectiveTime_, expectedEffectiveTime_;
+	int effectiveTime_;
+	int expectedEffectiveTime_;
 	boolean active_;
 	long moduleId_;
 	long conceptId_;
@@ -21,93 +20,86 @@ public class Relationship extends ValidatorBase
 	long characteristicTypeId_;
 	long modifierId_;
 	
-	public Relationship(Object[] data, Date expectedEffectiveTime, HashMap<Long, UUID> sctToUUIDMap)
+	public Relationship(int expectedEffectiveTime, SCTUUIDLookup sctToUUIDMap)
 	{
-		id_ = (long)data[0];
-		effectiveTime_ = (Date)data[1];
-		active_ = (boolean)data[2];
-		moduleId_ = (long)data[3];
-		conceptId_ = (long)data[4];
-		destinationId_ = (long)data[5];
-		relationshipGroup_ = (int)data[6];
-		typeId_ = (long)data[7];
-		characteristicTypeId_ = (long)data[8];
-		modifierId_ = (long)data[9];
 		expectedEffectiveTime_ = expectedEffectiveTime;
 		sctToUUIDMap_ = sctToUUIDMap;
 	}
 	
+	@Override
+	public int getComponentNid(RowBuffer row) throws Exception
+	{
+		return getNidForSCTID(row.getLong(0));
+	}
+
+	@Override
 	@SuppressWarnings("rawtypes")
-	public void validate() throws Exception
+	protected void validate(RowBuffer row) throws Exception
 	{
-		ArrayList<String> errors = new ArrayList<>();
+		id_ = row.getLong(0);
+		effectiveTime_ = row.getInt(1);
+		active_ = row.getBoolean(2);
+		moduleId_ = row.getLong(3);
+		conceptId_ = row.getLong(4);
+		destinationId_ = row.getLong(5);
+		relationshipGroup_ = row.getInt(6);
+		typeId_ = row.getLong(7);
+		characteristicTypeId_ = row.getLong(8);
+		modifierId_ = row.getLong(9);
 
-		RelationshipVersionBI rv = (RelationshipVersionBI)lookupComponentBySCTID(id_);
-		
-		if (expectedEffectiveTime_.getTime() != effectiveTime_.getTime())
+		MetadataRegistry registry = MetadataRegistry.get();
+		RelationshipVersionBI rv = (RelationshipVersionBI)lookupComponent(id_, 0);
+		if (rv == null)
 		{
-			errors.add("Wrong time - expected " + expectedEffectiveTime_.toString() + " but file has " + effectiveTime_.toString());
+			return;
 		}
 		
-		try
-		{
-			checkStatus(rv, active_);
-		}
-		catch (Exception e)
+		if (expectedEffectiveTime_ != effectiveTime_)
 		{
-			errors.add(e.getMessage());
+			error(ValidationRule.DB_WRONG_TIME, 1, expectedEffectiveTime_, effectiveTime_);
 		}
 		
-		try
-		{
-			checkModule(rv, moduleId_);
-		}
-		catch (Exception e)
-		{
-			errors.add(e.getMessage());
-		}
-		try
-		{
-			lookupConceptBySCTID(conceptId_);
-		}
-		catch (Exception e)
-		{
-			errors.add(e.getMessage());
-		}
+		checkStatus(rv, active_, 2);
 		
-		try
-		{
-			lookupConceptBySCTID(destinationId_);
-		}
-		catch (Exception e)
-		{
-			errors.add(e.getMessage());
-		}
+		checkModule(rv, moduleId_, 3);
+
+		lookupConcept(conceptId_, 4);
+		lookupConcept(destinationId_, 5);
 		
 		//relationshipGroup
 		if (rv.getGroup() != relationshipGroup_)
 		{
-			errors.add("Wrong relationshipGroup - expected " + rv.getGroup() + " but file had " + relationshipGroup_);
+			error(ValidationRule.DB_WRONG_RELATIONSHIP_GROUP, 6, rv.getGroup(), relationshipGroup_);
 		}
 		
 		//typeId
-		if (!Ts.get().getComponent(rv.getTypeNid()).getPrimUuid().equals(lookupConceptBySCTID(typeId_).getPrimUuid()))
+		if (registry.getSCTID(rv.getTypeNid()) != typeId_)
 		{
-			errors.add("Wrong typeId - expected the SCTID for " + Ts.get().getComponent(rv.getTypeNid()).getPrimUuid() + " but file has " + typeId_);
+			ConceptAttributeVersionBI<?> type = lookupConcept(typeId_, 7);
+			if (type != null && !getPrimUuid(rv.getTypeNid()).equals(type.getPrimUuid()))
+			{
+				error(ValidationRule.DB_WRONG_TYPE, 7, getPrimUuid(rv.getTypeNid()), typeId_);
+			}
 		}
 		
 		//characteristicTypeId
-		if (!Ts.get().getComponent(rv.getCharacteristicNid()).getPrimUuid().equals(lookupConceptBySCTID(characteristicTypeId_).getPrimUuid()))
+		if (registry.getSCTID(rv.getCharacteristicNid()) != characteristicTypeId_)
 		{
-			errors.add("Wrong CharacteristicId - expected the SCTID for " + Ts.get().getComponent(rv.getTypeNid()).getPrimUuid() + " but file has " + characteristicTypeId_);
+			ConceptAttributeVersionBI<?> characteristicType = lookupConcept(characteristicTypeId_, 8);
+			if (characteristicType != null && !getPrimUuid(rv.getCharacteristicNid()).equals(characteristicType.getPrimUuid()))
+			{
+				error(ValidationRule.DB_WRONG_CHARACTERISTIC_TYPE, 8, getPrimUuid(rv.getTypeNid()), characteristicTypeId_);
+			}
 		}
 		
 		//modifierId - doesn't exist in WB, as far as I see - looks to be hardcoded to SOME
-		if (!Snomed.SOME.getUuids()[0].equals(lookupConceptBySCTID(modifierId_).getPrimUuid()))
+		if (modifierId_ != MetadataRegistry.SOME)
 		{
-			errors.add("Wrong ModifierId - expected the SCTID for " + Snomed.SOME.getUuids()[0] + " but file has " + modifierId_);
+			ConceptAttributeVersionBI<?> modifier = lookupConcept(modifierId_, 9);
+			if (modifier != null && !Snomed.SOME.getUuids()[0].equals(modifier.getPrimUuid()))
+			{
+				error(ValidationRule.DB_WRONG_MODIFIER, 9, Snomed.SOME.getUuids()[0], modifierId_);
+			}
 		}
-		
-		throwErrors(errors);
 	}
 }
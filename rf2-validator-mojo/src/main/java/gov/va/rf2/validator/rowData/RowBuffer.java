@@ -0,0 +1,154 @@
+package gov.va.rf2.validator.rowData;
+
+import gov.va.rf2.validator.DataType;
+import gov.va.rf2.validator.MappedRowScanner;
+import java.util.UUID;
+
+/**
+ * A reusable, primitive typed holder for the parsed values of one row of an RF2 file.
+ * 
+ * The RowValidator fills a single instance for every row of a file (or range of a file), and the row validators in this
+ * package read from it - so the row loop doesn't box or allocate anything. SCTIDs are kept in long slots, integers,
+ * booleans and times (as packed yyyyMMdd values) in int slots, and UUIDs as two longs. Strings are left in the scanner, and are only decoded
+ * when asked for.
+ */
+public class RowBuffer
+{
+	private DataType[] types_;
+	private long[] longs_;
+	private long[] uuidLeastSigBits_;
+	private int[] ints_;
+	private boolean[] isUUID_;
+	private MappedRowScanner source_;
+	private String[] strings_;
+
+	public RowBuffer(DataType[] types)
+	{
+		types_ = types;
+		longs_ = new long[types.length];
+		uuidLeastSigBits_ = new long[types.length];
+		ints_ = new int[types.length];
+		isUUID_ = new boolean[types.length];
+	}
+
+	/**
+	 * The scanner that the String columns are read from.
+	 */
+	public void setSource(MappedRowScanner source)
+	{
+		source_ = source;
+	}
+
+	public int getColumnCount()
+	{
+		return types_.length;
+	}
+
+	public DataType getType(int column)
+	{
+		return types_[column];
+	}
+
+	public void setLong(int column, long value)
+	{
+		longs_[column] = value;
+		isUUID_[column] = false;
+	}
+
+	public long getLong(int column)
+	{
+		return longs_[column];
+	}
+
+	public void setInt(int column, int value)
+	{
+		ints_[column] = value;
+	}
+
+	public int getInt(int column)
+	{
+		return ints_[column];
+	}
+
+	public void setBoolean(int column, boolean value)
+	{
+		ints_[column] = (value ? 1 : 0);
+	}
+
+	public boolean getBoolean(int column)
+	{
+		return ints_[column] == 1;
+	}
+
+	public void setUUID(int column, long mostSigBits, long leastSigBits)
+	{
+		longs_[column] = mostSigBits;
+		uuidLeastSigBits_[column] = leastSigBits;
+		isUUID_[column] = true;
+	}
+
+	/**
+	 * True if the column holds a UUID (rather than an SCTID) - for {@link DataType#SCTIDorUUID} columns.
+	 */
+	public boolean isUUID(int column)
+	{
+		return isUUID_[column];
+	}
+
+	public UUID getUUID(int column)
+	{
+		return new UUID(longs_[column], uuidLeastSigBits_[column]);
+	}
+
+	public String getString(int column)
+	{
+		return (strings_ == null ? source_.getString(column) : strings_[column]);
+	}
+
+	/**
+	 * @return a copy of the current row, which doesn't depend on the scanner - for rows that are held on to, rather
+	 *         than validated as they are read.
+	 */
+	public RowBuffer copy()
+	{
+		RowBuffer result = new RowBuffer(types_);
+		System.arraycopy(longs_, 0, result.longs_, 0, longs_.length);
+		System.arraycopy(uuidLeastSigBits_, 0, result.uuidLeastSigBits_, 0, uuidLeastSigBits_.length);
+		System.arraycopy(ints_, 0, result.ints_, 0, ints_.length);
+		System.arraycopy(isUUID_, 0, result.isUUID_, 0, isUUID_.length);
+		result.strings_ = new String[types_.length];
+		for (int i = 0; i < types_.length; i++)
+		{
+			if (types_[i] == DataType.String)
+			{
+				result.strings_[i] = getString(i);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * The value of the column, formatted for an error message.
+	 */
+	public String getValueString(int column)
+	{
+		switch (types_[column])
+		{
+			case SCTID:
+				return longs_[column] + "";
+			case SCTIDorUUID:
+				return (isUUID_[column] ? getUUID(column).toString() : longs_[column] + "");
+			case UUID:
+				return getUUID(column).toString();
+			case Integer:
+				return ints_[column] + "";
+			case Boolean:
+			case UUIDBoolean:
+				return getBoolean(column) + "";
+			case Time:
+				return ints_[column] + "";
+			default:
+				return getString(column);
+		}
+	}
+}
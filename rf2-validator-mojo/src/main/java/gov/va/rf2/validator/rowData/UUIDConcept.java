@@ -1,51 +1,53 @@
 package gov.va.rf2.validator.rowData;
 
-import java.util.ArrayList;
-import java.util.Date;
+import gov.va.rf2.validator.ValidationRule;
 import java.util.UUID;
-import org.ihtsdo.tk.Ts;
 import org.ihtsdo.tk.api.conceptattribute.ConceptAttributeVersionBI;
 
 public class UUIDConcept extends ValidatorBase
 {
 	UUID id_;
-	Date effectiveTime_, expectedEffectiveTime_;
+	int effectiveTime_;
+	int expectedEffectiveTime_;
 	UUID active_;
 	UUID moduleId_;
 	boolean definitionStatusId_;
 	
-	public UUIDConcept(Object[] data, Date expectedEffectiveTime)
+	public UUIDConcept(int expectedEffectiveTime)
 	{
-		id_ = (UUID)data[0];
-		effectiveTime_ = (Date)data[1];
-		active_ = (UUID)data[2];
-		moduleId_ = (UUID)data[3];
-		definitionStatusId_ = (boolean)data[4];
 		expectedEffectiveTime_ = expectedEffectiveTime;
 	}
 	
+	@Override
 	@SuppressWarnings("rawtypes")
-	public void validate() throws Exception
+	protected void validate(RowBuffer row) throws Exception
 	{
-		ArrayList<String> errors = new ArrayList<>();
-		ConceptAttributeVersionBI cab = lookupConceptByUUID(id_);
-		if (!Ts.get().getComponent(cab.getModuleNid()).getPrimUuid().equals(moduleId_))
+		id_ = row.getUUID(0);
+		effectiveTime_ = row.getInt(1);
+		active_ = row.getUUID(2);
+		moduleId_ = row.getUUID(3);
+		definitionStatusId_ = row.getBoolean(4);
+
+		ConceptAttributeVersionBI cab = lookupConcept(id_, 0);
+		if (cab == null)
+		{
+			return;
+		}
+		if (!getPrimUuid(cab.getModuleNid()).equals(moduleId_))
 		{
-			errors.add("Wrong module - expected " + Ts.get().getComponent(cab.getModuleNid()).getPrimUuid() + " but file has " + moduleId_);
+			error(ValidationRule.DB_WRONG_MODULE, 3, getPrimUuid(cab.getModuleNid()), moduleId_);
 		}
-		if (expectedEffectiveTime_.getTime() != effectiveTime_.getTime())
+		if (expectedEffectiveTime_ != effectiveTime_)
 		{
-			errors.add("Wrong time - expected " + expectedEffectiveTime_.toString() + " but file has " + effectiveTime_.toString());
+			error(ValidationRule.DB_WRONG_TIME, 1, expectedEffectiveTime_, effectiveTime_);
 		}
-		if (!Ts.get().getComponent(cab.getStatusNid()).getPrimUuid().equals(active_))
+		if (!getPrimUuid(cab.getStatusNid()).equals(active_))
 		{
-			errors.add("Wrong status - expected " + Ts.get().getComponent(cab.getStatusNid()).getPrimUuid() + " but file has " + active_);
+			error(ValidationRule.DB_WRONG_STATUS, 2, getPrimUuid(cab.getStatusNid()), active_);
 		}
 		if (cab.isDefined() != definitionStatusId_)
 		{
-			errors.add("Wrong definition status - expected " + cab.isDefined() + " but file has " + definitionStatusId_);
+			error(ValidationRule.DB_WRONG_DEFINITION_STATUS, 4, cab.isDefined(), definitionStatusId_);
 		}
-		
-		throwErrors(errors);
 	}
 }
@@ -1,15 +1,14 @@
 package gov.va.rf2.validator.rowData;
 
-import java.util.ArrayList;
-import java.util.Date;
+import gov.va.rf2.validator.ValidationRule;
 import java.util.UUID;
-import org.ihtsdo.tk.Ts;
 import org.ihtsdo.tk.api.description.DescriptionVersionBI;
 
 public class UUIDDescription extends ValidatorBase
 {
 	UUID id_;
-	Date effectiveTime_, expectedEffectiveTime_;
+	int effectiveTime_;
+	int expectedEffectiveTime_;
 	UUID active_;
 	UUID moduleId_;
 	UUID conceptId_;
@@ -18,68 +17,70 @@ public class UUIDDescription extends ValidatorBase
 	String term_;
 	boolean caseSignificanceId_;
 	
-	public UUIDDescription(Object[] data, Date expectedEffectiveTime)
+	public UUIDDescription(int expectedEffectiveTime)
 	{
-		id_ = (UUID)data[0];
-		effectiveTime_ = (Date)data[1];
-		active_ = (UUID)data[2];
-		moduleId_ = (UUID)data[3];
-		conceptId_ = (UUID)data[4];
-		languageCode_ = (String)data[5];
-		typeId_ = (UUID)data[6];
-		term_ = (String)data[7];
-		caseSignificanceId_ = (boolean)data[8];
 		expectedEffectiveTime_ = expectedEffectiveTime;
 	}
 	
+	@Override
 	@SuppressWarnings("rawtypes")
-	public void validate() throws Exception
+	protected void validate(RowBuffer row) throws Exception
 	{
-		ArrayList<String> errors = new ArrayList<>();
+		id_ = row.getUUID(0);
+		effectiveTime_ = row.getInt(1);
+		active_ = row.getUUID(2);
+		moduleId_ = row.getUUID(3);
+		conceptId_ = row.getUUID(4);
+		languageCode_ = row.getString(5);
+		typeId_ = row.getUUID(6);
+		term_ = row.getString(7);
+		caseSignificanceId_ = row.getBoolean(8);
 
-		DescriptionVersionBI dv = (DescriptionVersionBI)lookupComponentByUUID(id_);
+		DescriptionVersionBI dv = (DescriptionVersionBI)lookupComponent(id_, 0);
+		if (dv == null)
+		{
+			return;
+		}
 		
-		if (expectedEffectiveTime_.getTime() != effectiveTime_.getTime())
+		if (expectedEffectiveTime_ != effectiveTime_)
 		{
-			errors.add("Wrong time - expected " + expectedEffectiveTime_.toString() + " but file has " + effectiveTime_.toString());
+			error(ValidationRule.DB_WRONG_TIME, 1, expectedEffectiveTime_, effectiveTime_);
 		}
 
-		if (!Ts.get().getComponent(dv.getStatusNid()).getPrimUuid().equals(active_))
+		if (!getPrimUuid(dv.getStatusNid()).equals(active_))
 		{
-			errors.add("Wrong status - expected " + Ts.get().getComponent(dv.getStatusNid()).getPrimUuid() + " but file has " + active_);
+			error(ValidationRule.DB_WRONG_STATUS, 2, getPrimUuid(dv.getStatusNid()), active_);
 		}
 		
-		if (!Ts.get().getComponent(dv.getModuleNid()).getPrimUuid().equals(moduleId_))
+		if (!getPrimUuid(dv.getModuleNid()).equals(moduleId_))
 		{
-			errors.add("Wrong module - expected " + Ts.get().getComponent(dv.getModuleNid()).getPrimUuid() + " but file has " + moduleId_);
+			error(ValidationRule.DB_WRONG_MODULE, 3, getPrimUuid(dv.getModuleNid()), moduleId_);
 		}
 		
-		lookupConceptByUUID(conceptId_);
+		lookupConcept(conceptId_, 4);
 		
 		//languageCode
 		if (!dv.getLang().equals(languageCode_))
 		{
-			errors.add("Wrong languageCode - expected " + dv.getLang() + " but file has " + languageCode_);
+			error(ValidationRule.DB_WRONG_LANGUAGE_CODE, 5, dv.getLang(), languageCode_);
 		}
 		
 		//typeId
-		if (!Ts.get().getComponent(dv.getTypeNid()).getPrimUuid().equals(typeId_))
+		if (!getPrimUuid(dv.getTypeNid()).equals(typeId_))
 		{
-			errors.add("Wrong typeId - expected " + Ts.get().getComponent(dv.getTypeNid()).getPrimUuid() + " but file has " + typeId_);
+			error(ValidationRule.DB_WRONG_TYPE, 6, getPrimUuid(dv.getTypeNid()), typeId_);
 		}
 		
 		//term
 		if (!dv.getText().equals(term_))
 		{
-			errors.add("Wrong term - expected " + dv.getText() + " but file has " + term_);
+			error(ValidationRule.DB_WRONG_TERM, 7, dv.getText(), term_);
 		}
 		
 		//caseSig
 		if (dv.isInitialCaseSignificant() != caseSignificanceId_)
 		{
-			errors.add("Wrong caseSignificanceId - expected " + dv.isInitialCaseSignificant() + " but file has " + caseSignificanceId_);
+			error(ValidationRule.DB_WRONG_CASE_SIGNIFICANCE, 8, dv.isInitialCaseSignificant(), caseSignificanceId_);
 		}
-		
-		throwErrors(errors);
 	}
 }
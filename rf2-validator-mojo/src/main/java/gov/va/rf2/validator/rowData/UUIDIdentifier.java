@@ -1,70 +1,70 @@
 package gov.va.rf2.validator.rowData;
 
-import java.util.ArrayList;
-import java.util.Date;
+import gov.va.rf2.validator.ValidationRule;
 import java.util.UUID;
-import org.ihtsdo.tk.Ts;
 import org.ihtsdo.tk.api.ComponentVersionBI;
 
 public class UUIDIdentifier extends ValidatorBase
 {
 	UUID identifierSchemeId_;
 	String alternateIdentifier_;
-	Date effectiveTime_, expectedEffectiveTime_;
+	int effectiveTime_;
+	int expectedEffectiveTime_;
 	UUID active_;
 	UUID moduleId_;
 	UUID referencedComponentId_;
 	
 	private final UUID uuidIdScheme = UUID.fromString("680f3f6c-7a2a-365d-b527-8c9a96dd1a94");
 	
-	public UUIDIdentifier(Object[] data, Date expectedEffectiveTime)
+	public UUIDIdentifier(int expectedEffectiveTime)
 	{
-		identifierSchemeId_ = (UUID)data[0];
-		alternateIdentifier_ = (String)data[1];
-		effectiveTime_ = (Date)data[2];
-		active_ = (UUID)data[3];
-		moduleId_ = (UUID)data[4];
-		referencedComponentId_ = (UUID)data[5];
 		expectedEffectiveTime_ = expectedEffectiveTime;
 	}
 	
-	public void validate() throws Exception
+	@Override
+	protected void validate(RowBuffer row) throws Exception
 	{
-		ArrayList<String> errors = new ArrayList<>();
+		identifierSchemeId_ = row.getUUID(0);
+		alternateIdentifier_ = row.getString(1);
+		effectiveTime_ = row.getInt(2);
+		active_ = row.getUUID(3);
+		moduleId_ = row.getUUID(4);
+		referencedComponentId_ = row.getUUID(5);
+
 		if (!uuidIdScheme.equals(identifierSchemeId_))
 		{
-			throw new Exception("Validator doesn't support the identifier scheme " + identifierSchemeId_);
+			error(ValidationRule.DB_UNSUPPORTED_ID_SCHEME, 0, identifierSchemeId_);
+			return;
 		}
 		
-		ComponentVersionBI cv = lookupComponentByUUID(referencedComponentId_);
+		ComponentVersionBI cv = lookupComponent(referencedComponentId_, 5);
+		if (cv == null)
+		{
+			return;
+		}
 		
-		if (expectedEffectiveTime_.getTime() != effectiveTime_.getTime())
+		if (expectedEffectiveTime_ != effectiveTime_)
 		{
-			errors.add("Wrong time - expected " + expectedEffectiveTime_.toString() + " but file has " + effectiveTime_.toString());
+			error(ValidationRule.DB_WRONG_TIME, 2, expectedEffectiveTime_, effectiveTime_);
 		}
 		
-		if (!Ts.get().getComponent(cv.getStatusNid()).getPrimUuid().equals(active_))
+		if (!getPrimUuid(cv.getStatusNid()).equals(active_))
 		{
-			errors.add("Wrong status - expected " + Ts.get().getComponent(cv.getStatusNid()).getPrimUuid() + " but file has " + active_);
+			error(ValidationRule.DB_WRONG_STATUS, 3, getPrimUuid(cv.getStatusNid()), active_);
 		}
 		
-		if (!Ts.get().getComponent(cv.getModuleNid()).getPrimUuid().equals(moduleId_))
+		if (!getPrimUuid(cv.getModuleNid()).equals(moduleId_))
 		{
-			errors.add("Wrong module - expected " + Ts.get().getComponent(cv.getModuleNid()).getPrimUuid() + " but file has " + moduleId_);
+			error(ValidationRule.DB_WRONG_MODULE, 4, getPrimUuid(cv.getModuleNid()), moduleId_);
 		}
 		
 		if (!referencedComponentId_.equals(alternateIdentifier_))
 		{
-			try
+			UUID alternateId = parseUUID(alternateIdentifier_, 1);
+			if (alternateId != null)
 			{
-				lookupComponentByUUID(UUID.fromString(alternateIdentifier_));
-			}
-			catch (Exception e)
-			{
-				errors.add(e.getMessage());
+				lookupComponent(alternateId, 1);
 			}
 		}
-		
-		throwErrors(errors);
 	}
 }
@@ -1,107 +1,80 @@
 package gov.va.rf2.validator.rowData;
 
-import java.util.ArrayList;
-import java.util.Date;
+import gov.va.rf2.validator.ValidationRule;
 import java.util.UUID;
-import org.ihtsdo.tk.Ts;
 import org.ihtsdo.tk.api.ComponentVersionBI;
 
 public class UUIDRefset extends ValidatorBase
 {
 	UUID id_;
-	Date effectiveTime_, expectedEffectiveTime_;
+	int effectiveTime_;
+	int expectedEffectiveTime_;
 	UUID active_;
 	UUID moduleId_;
 	UUID refsetId_;
 	long referencedComponentId1_;
 	UUID referencedComponentId2_;
-	ArrayList<Object> otherFields_ = new ArrayList<>();
 	String[] otherFieldNames_;
 	
 
-	public UUIDRefset(Object[] data, Date expectedEffectiveTime, String[] otherFieldNames)
+	public UUIDRefset(int expectedEffectiveTime, String[] otherFieldNames)
 	{
-		id_ = (UUID) data[0];
-		effectiveTime_ = (Date) data[1];
-		active_ = (UUID) data[2];
-		moduleId_ = (UUID) data[3];
-		refsetId_ = (UUID) data[4];
-		if (data[5] instanceof UUID)
-		{
-			referencedComponentId2_ = (UUID) data[5];
-		}
-		else
-		{
-			referencedComponentId1_ = (long) data[5];
-		}
 		expectedEffectiveTime_ = expectedEffectiveTime;
-		for (int i = 6; i < data.length; i++)
-		{
-			otherFields_.add(data[i]);
-		}
 		otherFieldNames_ = otherFieldNames;
 	}
 
-	public void validate() throws Exception
+	@Override
+	protected void validate(RowBuffer row) throws Exception
 	{
-		ArrayList<String> errors = new ArrayList<>();
-
-		ComponentVersionBI cv = lookupComponentByUUID(id_);
-
-		if (expectedEffectiveTime_.getTime() != effectiveTime_.getTime())
+		id_ = row.getUUID(0);
+		effectiveTime_ = row.getInt(1);
+		active_ = row.getUUID(2);
+		moduleId_ = row.getUUID(3);
+		refsetId_ = row.getUUID(4);
+		if (row.isUUID(5))
+		{
+			referencedComponentId2_ = row.getUUID(5);
+		}
+		else
 		{
-			errors.add("Wrong time - expected " + expectedEffectiveTime_.toString() + " but file has " + effectiveTime_.toString());
+			referencedComponentId1_ = row.getLong(5);
+			referencedComponentId2_ = null;
 		}
 
-		if (!Ts.get().getComponent(cv.getStatusNid()).getPrimUuid().equals(active_))
+		ComponentVersionBI cv = lookupComponent(id_, 0);
+		if (cv == null)
 		{
-			errors.add("Wrong status - expected " + Ts.get().getComponent(cv.getStatusNid()).getPrimUuid() + " but file has " + active_);
+			return;
 		}
 
-		if (!Ts.get().getComponent(cv.getModuleNid()).getPrimUuid().equals(moduleId_))
+		if (expectedEffectiveTime_ != effectiveTime_)
 		{
-			errors.add("Wrong module - expected " + Ts.get().getComponent(cv.getModuleNid()).getPrimUuid() + " but file has " + moduleId_);
+			error(ValidationRule.DB_WRONG_TIME, 1, expectedEffectiveTime_, effectiveTime_);
 		}
 
-		try
+		if (!getPrimUuid(cv.getStatusNid()).equals(active_))
 		{
-			lookupComponentByUUID(refsetId_);
+			error(ValidationRule.DB_WRONG_STATUS, 2, getPrimUuid(cv.getStatusNid()), active_);
 		}
-		catch (Exception e)
+
+		if (!getPrimUuid(cv.getModuleNid()).equals(moduleId_))
 		{
-			errors.add("Couldn't locate specified refset - " + e.getMessage());
+			error(ValidationRule.DB_WRONG_MODULE, 3, getPrimUuid(cv.getModuleNid()), moduleId_);
 		}
 
-		try
+		if (findComponentByUUID(refsetId_) == null)
 		{
-			if (referencedComponentId2_ == null)
-			{
-				lookupComponentBySCTID(referencedComponentId1_);
-			}
-			else
-			{
-				lookupComponentByUUID(referencedComponentId2_);
-			}
+			error(ValidationRule.DB_REFSET_NOT_FOUND, 4, refsetId_);
 		}
-		catch (Exception e)
+
+		if ((referencedComponentId2_ == null ? findComponentBySCTID(referencedComponentId1_) : findComponentByUUID(referencedComponentId2_)) == null)
 		{
-			errors.add("Couldn't locate the member referenced by the refset " + (referencedComponentId2_ == null ? referencedComponentId1_ : referencedComponentId2_)
-					+ " " + e.getMessage());
+			error(ValidationRule.DB_REFERENCED_COMPONENT_NOT_FOUND, 5, (referencedComponentId2_ == null ? referencedComponentId1_ : referencedComponentId2_));
 		}
-		
-		int i = 6;
-		for (Object o : otherFields_)
+
+		for (int i = 6; i < row.getColumnCount(); i++)
 		{
-			try
-			{
-				checkExtensionField(o, otherFieldNames_[i++]);
-			}
-			catch (Exception e)
-			{
-				errors.add("Failed validating extension field " + o + ": " + e.getMessage());
-			}
+			checkExtensionField(row, i, otherFieldNames_[i - 6]);
 		}
-		
-		throwErrors(errors);
 	}
 }
@@ -1,16 +1,15 @@
 package gov.va.rf2.validator.rowData;
 
-import java.util.ArrayList;
-import java.util.Date;
+import gov.va.rf2.validator.ValidationRule;
 import java.util.UUID;
-import org.ihtsdo.tk.Ts;
 import org.ihtsdo.tk.api.relationship.RelationshipVersionBI;
 import org.ihtsdo.tk.binding.snomed.Snomed;
 
 public class UUIDRelationship extends ValidatorBase
 {
 	UUID id_;
-	Date effectiveTime_, expectedEffectiveTime_;
+	int effectiveTime_;
+	int expectedEffectiveTime_;
 	UUID active_;
 	UUID moduleId_;
 	UUID conceptId_;
@@ -20,70 +19,72 @@ public class UUIDRelationship extends ValidatorBase
 	UUID characteristicTypeId_;
 	UUID modifierId_;
 	
-	public UUIDRelationship(Object[] data, Date expectedEffectiveTime)
+	public UUIDRelationship(int expectedEffectiveTime)
 	{
-		id_ = (UUID)data[0];
-		effectiveTime_ = (Date)data[1];
-		active_ = (UUID)data[2];
-		moduleId_ = (UUID)data[3];
-		conceptId_ = (UUID)data[4];
-		destinationId_ = (UUID)data[5];
-		relationshipGroup_ = (int)data[6];
-		typeId_ = (UUID)data[7];
-		characteristicTypeId_ = (UUID)data[8];
-		modifierId_ = (UUID)data[9];
 		expectedEffectiveTime_ = expectedEffectiveTime;
 	}
 	
+	@Override
 	@SuppressWarnings("rawtypes")
-	public void validate() throws Exception
+	protected void validate(RowBuffer row) throws Exception
 	{
-		ArrayList<String> errors = new ArrayList<>();
+		id_ = row.getUUID(0);
+		effectiveTime_ = row.getInt(1);
+		active_ = row.getUUID(2);
+		moduleId_ = row.getUUID(3);
+		conceptId_ = row.getUUID(4);
+		destinationId_ = row.getUUID(5);
+		relationshipGroup_ = row.getInt(6);
+		typeId_ = row.getUUID(7);
+		characteristicTypeId_ = row.getUUID(8);
+		modifierId_ = row.getUUID(9);
 
-		RelationshipVersionBI rv = (RelationshipVersionBI)lookupComponentByUUID(id_);
+		RelationshipVersionBI rv = (RelationshipVersionBI)lookupComponent(id_, 0);
+		if (rv == null)
+		{
+			return;
+		}
 		
-		if (expectedEffectiveTime_.getTime() != effectiveTime_.getTime())
+		if (expectedEffectiveTime_ != effectiveTime_)
 		{
-			errors.add("Wrong time - expected " + expectedEffectiveTime_.toString() + " but file has " + effectiveTime_.toString());
+			error(ValidationRule.DB_WRONG_TIME, 1, expectedEffectiveTime_, effectiveTime_);
 		}
 
-		if (!Ts.get().getComponent(rv.getStatusNid()).getPrimUuid().equals(active_))
+		if (!getPrimUuid(rv.getStatusNid()).equals(active_))
 		{
-			errors.add("Wrong status - expected " + Ts.get().getComponent(rv.getStatusNid()).getPrimUuid() + " but file has " + active_);
+			error(ValidationRule.DB_WRONG_STATUS, 2, getPrimUuid(rv.getStatusNid()), active_);
 		}
 		
-		if (!Ts.get().getComponent(rv.getModuleNid()).getPrimUuid().equals(moduleId_))
+		if (!getPrimUuid(rv.getModuleNid()).equals(moduleId_))
 		{
-			errors.add("Wrong module - expected " + Ts.get().getComponent(rv.getModuleNid()).getPrimUuid() + " but file has " + moduleId_);
+			error(ValidationRule.DB_WRONG_MODULE, 3, getPrimUuid(rv.getModuleNid()), moduleId_);
 		}
 		
-		lookupConceptByUUID(conceptId_);
-		lookupConceptByUUID(destinationId_);
+		lookupConcept(conceptId_, 4);
+		lookupConcept(destinationId_, 5);
 		
 		//relationshipGroup
 		if (rv.getGroup() != relationshipGroup_)
 		{
-			errors.add("Wrong relationshipGroup - expected " + rv.getGroup() + " but file had " + relationshipGroup_);
+			error(ValidationRule.DB_WRONG_RELATIONSHIP_GROUP, 6, rv.getGroup(), relationshipGroup_);
 		}
 		
 		//typeId
-		if (!Ts.get().getComponent(rv.getTypeNid()).getPrimUuid().equals(typeId_))
+		if (!getPrimUuid(rv.getTypeNid()).equals(typeId_))
 		{
-			errors.add("Wrong typeId - expected " + Ts.get().getComponent(rv.getTypeNid()).getPrimUuid() + " but file has " + typeId_);
+			error(ValidationRule.DB_WRONG_TYPE, 7, getPrimUuid(rv.getTypeNid()), typeId_);
 		}
 		
 		//characteristicTypeId
-		if (!Ts.get().getComponent(rv.getCharacteristicNid()).getPrimUuid().equals(characteristicTypeId_))
+		if (!getPrimUuid(rv.getCharacteristicNid()).equals(characteristicTypeId_))
 		{
-			errors.add("Wrong CharacteristicId - expected " + Ts.get().getComponent(rv.getTypeNid()).getPrimUuid() + " but file has " + characteristicTypeId_);
+			error(ValidationRule.DB_WRONG_CHARACTERISTIC_TYPE, 8, getPrimUuid(rv.getTypeNid()), characteristicTypeId_);
 		}
 		
 		//modifierId - doesn't exist in WB, as far as I see - looks to be hardcoded to SOME
 		if (!Snomed.SOME.getUuids()[0].equals(modifierId_))
 		{
-			errors.add("Wrong ModifierId - expected " + Snomed.SOME.getUuids()[0] + " but file has " + modifierId_);
+			error(ValidationRule.DB_WRONG_MODIFIER, 9, Snomed.SOME.getUuids()[0], modifierId_);
 		}
-		
-		throwErrors(errors);
 	}
 }
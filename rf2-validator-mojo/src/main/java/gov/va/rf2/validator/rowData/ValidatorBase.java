@@ -1,247 +1,427 @@
 package gov.va.rf2.validator.rowData;
 
+import gov.va.rf2.validator.SCTUUIDLookup;
+import gov.va.rf2.validator.ValidationResult;
+import gov.va.rf2.validator.ValidationRule;
 import java.io.IOException;
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.HashMap;
+import java.util.List;
 import java.util.UUID;
 import org.ihtsdo.tk.Ts;
 import org.ihtsdo.tk.api.ComponentChronicleBI;
 import org.ihtsdo.tk.api.ComponentVersionBI;
 import org.ihtsdo.tk.api.concept.ConceptChronicleBI;
 import org.ihtsdo.tk.api.conceptattribute.ConceptAttributeVersionBI;
-import org.ihtsdo.tk.api.id.IdBI;
-import org.ihtsdo.tk.binding.snomed.SnomedMetadataRf2;
 import org.ihtsdo.tk.binding.snomed.TermAux;
 
-public class ValidatorBase
+public abstract class ValidatorBase
 {
-	protected HashMap<Long, UUID> sctToUUIDMap_;
+	public static final int DEFAULT_CACHE_SIZE = 100000;
+	public static final int UNKNOWN_NID = Integer.MAX_VALUE;
+
+	protected SCTUUIDLookup sctToUUIDMap_;
+	// the row being validated
+	private long lineNumber_;
+	private ValidationResult result_;
 	protected static final UUID SCTAuthority = TermAux.SCT_ID_AUTHORITY.getUuids()[0];
 
-	@SuppressWarnings("rawtypes")
-	protected ConceptAttributeVersionBI getNewest(ConceptChronicleBI c) throws IOException
+	// The same (mostly metadata) concepts are looked up over and over - these are shared by all of the validators
+	private static LookupCache<Long, Integer> sctidToNid_;
+	private static LookupCache<Integer, UUID> nidToUUID_;
+	// The newest version of the component, or NOT_IN_DB - only what the DB holds under the id itself, as the map files
+	// that are also checked for an SCTID differ between the Delta, Full and Snapshot files
+	private static final Object NOT_IN_DB = new Object();
+	private static LookupCache<Long, Object> sctidToConcept_;
+	private static LookupCache<Long, Object> sctidToComponent_;
+	private static LookupCache<UUID, Object> uuidToConcept_;
+	private static LookupCache<UUID, Object> uuidToComponent_;
+	private static LookupCache<Integer, ConceptAttributeVersionBI<?>> nidToNewestConcept_;
+	private static LookupCache<Integer, ComponentVersionBI> nidToNewestComponent_;
+	static
 	{
-		ArrayList<ConceptAttributeVersionBI> cabs = new ArrayList<>();
-		cabs.addAll(c.getConceptAttributes().getVersions());
-		
-		//TODO Make sure this sorts the right direction
-		Collections.sort(cabs, new Comparator<ConceptAttributeVersionBI>()
-		{
+		configureCaches(DEFAULT_CACHE_SIZE);
+	}
 
-			@Override
-			public int compare(ConceptAttributeVersionBI o1, ConceptAttributeVersionBI o2)
-			{
-				try
-				{
-					return -1 * Long.compare(o1.getPosition().getTime(), o2.getPosition().getTime());
-				}
-				catch (IOException e)
-				{
-					throw new RuntimeException(e);
-				}
-			}
-		});
-		
-		return cabs.get(0);
+	/**
+	 * (Re)create the DB lookup caches, each holding up to maxSize entries. Must be called before validation starts.
+	 */
+	public static void configureCaches(int maxSize)
+	{
+		sctidToNid_ = new LookupCache<>("SCTID to nid", maxSize);
+		nidToUUID_ = new LookupCache<>("nid to UUID", maxSize);
+		sctidToConcept_ = new LookupCache<>("SCTID to concept", maxSize);
+		sctidToComponent_ = new LookupCache<>("SCTID to component", maxSize);
+		uuidToConcept_ = new LookupCache<>("UUID to concept", maxSize);
+		uuidToComponent_ = new LookupCache<>("UUID to component", maxSize);
+		nidToNewestConcept_ = new LookupCache<>("Newest concept version", maxSize);
+		nidToNewestComponent_ = new LookupCache<>("Newest component version", maxSize);
+	}
+
+	/**
+	 * @return a line for each of the DB lookup caches, with its hit / miss / eviction counts.
+	 */
+	public static List<String> getCacheStatistics()
+	{
+		return Arrays.asList(sctidToNid_.getStatistics(), nidToUUID_.getStatistics(), sctidToConcept_.getStatistics(),
+				sctidToComponent_.getStatistics(), uuidToConcept_.getStatistics(), uuidToComponent_.getStatistics(), nidToNewestConcept_.getStatistics(),
+				nidToNewestComponent_.getStatistics());
+	}
+
+	/**
+	 * Validate the content of a row against the DB, adding each check that fails to the result. Instances are reused
+	 * for every row of a file, by a single thread.
+	 * 
+	 * @throws Exception if the row couldn't be validated at all - because the DB couldn't be read. Components that
+	 *             aren't in the DB are reported as failures, like any other check.
+	 */
+	public void validate(RowBuffer row, long lineNumber, ValidationResult result) throws Exception
+	{
+		lineNumber_ = lineNumber;
+		result_ = result;
+		validate(row);
+	}
+
+	/**
+	 * Check the row - reporting each failure with {@link #error(ValidationRule, int, Object...)}.
+	 */
+	protected abstract void validate(RowBuffer row) throws Exception;
+
+	/**
+	 * Report a failed check of the row being validated.
+	 */
+	protected void error(ValidationRule rule, int column, Object... values)
+	{
+		result_.add(rule, lineNumber_, column, values);
+	}
+
+	/**
+	 * @return the nid of the component that the row describes, for ordering batches of rows by their place in the DB
+	 *         - or {@link #UNKNOWN_NID}, if it can't be resolved without loading the component.
+	 */
+	public int getComponentNid(RowBuffer row) throws Exception
+	{
+		return UNKNOWN_NID;
+	}
+
+	/**
+	 * @return the newest version of the concept attributes. Remembered per concept, since the DB doesn't change
+	 *         during validation.
+	 */
+	protected static ConceptAttributeVersionBI<?> getNewest(ConceptChronicleBI c) throws IOException
+	{
+		ConceptAttributeVersionBI<?> result = nidToNewestConcept_.get(c.getNid());
+		if (result == null)
+		{
+			result = newest(c.getConceptAttributes().getVersions(), c.getNid());
+			nidToNewestConcept_.put(c.getNid(), result);
+		}
+		return result;
 	}
 	
-	protected ComponentVersionBI getNewest(ComponentChronicleBI<?> cc) throws IOException
+	/**
+	 * @return the newest version of the component. Remembered per component, since the DB doesn't change during
+	 *         validation.
+	 */
+	protected static ComponentVersionBI getNewest(ComponentChronicleBI<?> cc) throws IOException
 	{
-		ArrayList<ComponentVersionBI> cabs = new ArrayList<>();
-		cabs.addAll(cc.getVersions());
-		
-		//TODO Make sure this sorts the right direction
-		Collections.sort(cabs, new Comparator<ComponentVersionBI>()
+		ComponentVersionBI result = nidToNewestComponent_.get(cc.getNid());
+		if (result == null)
 		{
+			result = newest(cc.getVersions(), cc.getNid());
+			nidToNewestComponent_.put(cc.getNid(), result);
+		}
+		return result;
+	}
 
-			@Override
-			public int compare(ComponentVersionBI o1, ComponentVersionBI o2)
+	/**
+	 * @return the version with the latest position time - the first one found, if several share it.
+	 */
+	private static <T extends ComponentVersionBI> T newest(Collection<? extends T> versions, int nid) throws IOException
+	{
+		T result = null;
+		long resultTime = Long.MIN_VALUE;
+		for (T version : versions)
+		{
+			long time = version.getPosition().getTime();
+			if (result == null || time > resultTime)
 			{
-				try
-				{
-					return -1 * Long.compare(o1.getPosition().getTime(), o2.getPosition().getTime());
-				}
-				catch (IOException e)
-				{
-					throw new RuntimeException(e);
-				}
+				result = version;
+				resultTime = time;
 			}
-		});
-		
-		return cabs.get(0);
+		}
+		if (result == null)
+		{
+			throw new IOException("No versions found for the component " + nid);
+		}
+		return result;
 	}
 	
-	protected void throwErrors(ArrayList<String> errors) throws Exception
+	protected int getNidForSCTID(long sctid) throws IOException
 	{
-		if (errors.size() > 0)
+		Integer nid = sctidToNid_.get(sctid);
+		if (nid == null)
 		{
-			StringBuilder sb = new StringBuilder();
-			for (String s : errors)
+			nid = Ts.get().getNidFromAlternateId(SCTAuthority, sctid + "");
+			sctidToNid_.put(sctid, nid);
+		}
+		return nid;
+	}
+
+	protected UUID getPrimUuid(int nid) throws IOException
+	{
+		UUID uuid = nidToUUID_.get(nid);
+		if (uuid == null)
+		{
+			uuid = Ts.get().getComponent(nid).getPrimUuid();
+			if (uuid != null)
 			{
-				sb.append(s + "; "); 
+				nidToUUID_.put(nid, uuid);
 			}
-			sb.setLength(sb.length() - 2);
-			throw new Exception(sb.toString());
 		}
+		return uuid;
 	}
-	
-	protected ConceptAttributeVersionBI<?> lookupConceptByUUID(UUID uuid) throws Exception
+
+	/**
+	 * @return the newest version of the concept - or null, if it isn't in the DB, which is reported against the column.
+	 */
+	protected ConceptAttributeVersionBI<?> lookupConcept(UUID uuid, int column) throws IOException
 	{
-		ConceptChronicleBI c = Ts.get().getConcept(uuid);
-		if (!Ts.get().hasUuid(uuid) || c == null || c.getPrimUuid() == null || c.getConceptAttributes() == null || c.getConceptAttributes().getVersions().size() < 1)
+		ConceptAttributeVersionBI<?> result = findConceptByUUID(uuid);
+		if (result == null)
 		{
-			throw new Exception("Couldn't find the concept with the ID " + uuid + " in the DB");
+			error(ValidationRule.DB_COMPONENT_NOT_FOUND, column, "concept", uuid);
 		}
-		return getNewest(c);
+		return result;
 	}
-	
-	
 
-	protected ConceptAttributeVersionBI<?> lookupConceptBySCTID(long sctid) throws Exception
+	/**
+	 * @see #lookupConcept(UUID, int)
+	 */
+	protected ConceptAttributeVersionBI<?> lookupConcept(long sctid, int column) throws IOException
 	{
-		int nid = Ts.get().getNidFromAlternateId(SCTAuthority, sctid + "");
-		// Seriously. WTF is the difference between getConceptforNid(nid) and getConcept(nid). This API....
-		ConceptChronicleBI c = Ts.get().getConceptForNid(nid);
-		if (c == null || c.getPrimUuid() == null || c.getConceptAttributes() == null || c.getConceptAttributes().getVersions().size() < 1)
+		ConceptAttributeVersionBI<?> result = findConceptBySCTID(sctid);
+		if (result == null)
 		{
-			// The exported concept didn't have a preexisting SCTID - it was probably generated. Check the map file.
-			UUID uuid = sctToUUIDMap_.get(sctid);
-			if (uuid != null && Ts.get().hasUuid(uuid))
-			{
-				return lookupConceptByUUID(uuid);
-			}
-			else
-			{
-				throw new Exception("Couldn't find the concept with the ID " + sctid + " in the DB");
-			}
+			error(ValidationRule.DB_COMPONENT_NOT_FOUND, column, "concept", sctid);
 		}
-		else
+		return result;
+	}
+
+	/**
+	 * @return the newest version of the component - or null, if it isn't in the DB, which is reported against the
+	 *         column.
+	 */
+	protected ComponentVersionBI lookupComponent(UUID uuid, int column) throws IOException
+	{
+		ComponentVersionBI result = findComponentByUUID(uuid);
+		if (result == null)
 		{
-			return getNewest(c);
+			error(ValidationRule.DB_COMPONENT_NOT_FOUND, column, "component", uuid);
 		}
+		return result;
 	}
-	
-	protected ComponentVersionBI lookupComponentBySCTID(long sctid) throws Exception
+
+	/**
+	 * @see #lookupComponent(UUID, int)
+	 */
+	protected ComponentVersionBI lookupComponent(long sctid, int column) throws IOException
 	{
-		int nid = Ts.get().getNidFromAlternateId(SCTAuthority, sctid + "");
-		ComponentChronicleBI<?> c = Ts.get().getComponent(nid);
-		if (c == null || c.getPrimUuid() == null)
+		ComponentVersionBI result = findComponentBySCTID(sctid);
+		if (result == null)
 		{
-			// The exported concept didn't have a preexisting SCTID - it was probably generated. Check the map file.
-			UUID uuid = sctToUUIDMap_.get(sctid);
-			if (uuid != null && Ts.get().hasUuid(uuid))
-			{
-				return lookupComponentByUUID(uuid);
-			}
-			else
-			{
-				throw new Exception("Couldn't find the component with the ID " + sctid + " in the DB");
-			}
+			error(ValidationRule.DB_COMPONENT_NOT_FOUND, column, "component", sctid);
 		}
-		else
+		return result;
+	}
+
+	/**
+	 * @return the newest version of the concept, or null, if it isn't in the DB
+	 */
+	protected ConceptAttributeVersionBI<?> findConceptByUUID(UUID uuid) throws IOException
+	{
+		Object result = uuidToConcept_.get(uuid);
+		if (result == null)
 		{
-			return getNewest(c);
+			result = (Ts.get().hasUuid(uuid) ? newestOrNotInDB(Ts.get().getConcept(uuid)) : NOT_IN_DB);
+			uuidToConcept_.put(uuid, result);
 		}
+		return (result == NOT_IN_DB ? null : (ConceptAttributeVersionBI<?>) result);
 	}
-	
-	protected ComponentVersionBI lookupComponentByUUID(UUID id) throws Exception
+
+	/**
+	 * @return the newest version of the concept, or null, if it isn't in the DB - under the SCTID, or under the UUID
+	 *         that the map file gives it.
+	 */
+	protected ConceptAttributeVersionBI<?> findConceptBySCTID(long sctid) throws IOException
 	{
-		ComponentChronicleBI<?> cc = Ts.get().getComponent(id);
-		
-		if (cc == null || cc.getPrimUuid() == null)
+		Object result = sctidToConcept_.get(sctid);
+		if (result == null)
 		{
-			throw new Exception("Couldn't find the component with the id " + id);
+			// Seriously. WTF is the difference between getConceptforNid(nid) and getConcept(nid). This API....
+			result = newestOrNotInDB(Ts.get().getConceptForNid(getNidForSCTID(sctid)));
+			sctidToConcept_.put(sctid, result);
 		}
-		
-		return getNewest(cc);
+		if (result != NOT_IN_DB)
+		{
+			return (ConceptAttributeVersionBI<?>) result;
+		}
+		// The exported concept didn't have a preexisting SCTID - it was probably generated. Check the map file.
+		UUID uuid = (sctToUUIDMap_ == null ? null : sctToUUIDMap_.get(sctid));
+		return (uuid == null ? null : findConceptByUUID(uuid));
 	}
-	
-	protected void checkStatus(ComponentVersionBI wbItem, boolean rowStatus) throws Exception
+
+	/**
+	 * @return the newest version of the component, or null, if it isn't in the DB
+	 */
+	protected ComponentVersionBI findComponentByUUID(UUID uuid) throws IOException
 	{
-		UUID wbStatusUUID = Ts.get().getComponent(wbItem.getStatusNid()).getPrimUuid();
-		boolean wbActiveStatus = (wbStatusUUID.equals(SnomedMetadataRf2.ACTIVE_VALUE_RF2.getUuids()[0])
-				|| wbStatusUUID.equals(SnomedMetadataRf2.PENDING_MOVE_RF2.getUuids()[0]) || wbStatusUUID.equals(SnomedMetadataRf2.CONCEPT_NON_CURRENT_RF2.getUuids()[0]));
-		if (rowStatus != wbActiveStatus)
+		Object result = uuidToComponent_.get(uuid);
+		if (result == null)
 		{
-			throw new Exception("Wrong status - expected " + wbActiveStatus + " but found " + rowStatus);
+			result = (Ts.get().hasUuid(uuid) ? newestOrNotInDB(Ts.get().getComponent(uuid)) : NOT_IN_DB);
+			uuidToComponent_.put(uuid, result);
 		}
+		return (result == NOT_IN_DB ? null : (ComponentVersionBI) result);
 	}
-	
-	protected void checkModule(ComponentVersionBI wbItem, long rowModule) throws Exception
+
+	/**
+	 * @return the newest version of the component, or null, if it isn't in the DB - under the SCTID, or under the UUID
+	 *         that the map file gives it.
+	 */
+	protected ComponentVersionBI findComponentBySCTID(long sctid) throws IOException
 	{
-		
-		Collection<? extends IdBI> altIds = getNewest(Ts.get().getConcept(wbItem.getModuleNid())).getAdditionalIds();
+		Object result = sctidToComponent_.get(sctid);
+		if (result == null)
+		{
+			result = newestOrNotInDB(Ts.get().getComponent(getNidForSCTID(sctid)));
+			sctidToComponent_.put(sctid, result);
+		}
+		if (result != NOT_IN_DB)
+		{
+			return (ComponentVersionBI) result;
+		}
+		// The exported component didn't have a preexisting SCTID - it was probably generated. Check the map file.
+		UUID uuid = (sctToUUIDMap_ == null ? null : sctToUUIDMap_.get(sctid));
+		return (uuid == null ? null : findComponentByUUID(uuid));
+	}
 
-		if (altIds != null)
+	private static Object newestOrNotInDB(ConceptChronicleBI c) throws IOException
+	{
+		if (c == null || c.getPrimUuid() == null || c.getConceptAttributes() == null || c.getConceptAttributes().getVersions().size() < 1)
 		{
-			for (IdBI id : altIds)
-			{
-				if (id.getAuthorityNid() == TermAux.SCT_ID_AUTHORITY.getLenient().getNid())
-				{
-					//TODO not sure if multiple SCTIDs are allowed, if so, need a loop
-					if (!(id.getDenotation().toString().equals(rowModule + "")))
-					{
-						throw new Exception("Expected moduleID of " + id.getDenotation() + " but found " + rowModule);
-					}
-					else
-					{
-						//correct value...
-						return;
-					}
-				}
-			}
+			return NOT_IN_DB;
 		}
+		return getNewest(c);
+	}
 
-		// perhaps, didn't have the ID because it was generated... check the map file.
-		UUID dbModule = getNewest(Ts.get().getConcept(wbItem.getModuleNid())).getPrimUuid();
-		UUID writtenModule = sctToUUIDMap_.get(rowModule);
-		if (!dbModule.equals(writtenModule))
+	private static Object newestOrNotInDB(ComponentChronicleBI<?> cc) throws IOException
+	{
+		if (cc == null || cc.getPrimUuid() == null)
 		{
-			if (writtenModule == null)
-			{
-				// Wow... seem to have the wrong module. Do another lookup to improve the error message...
-				// Since the SCTID didn't exist in the map file, and it didn't match the module we looked up in the DB.. look it up directly.
-				ConceptChronicleBI writtenModuleConcept = Ts.get().getConceptForNid(Ts.get().getNidFromAlternateId(SCTAuthority, rowModule + ""));
-				throw new Exception("Expected moduleID of " + dbModule + " (SCTID not in DB) but found " + rowModule + " (" + writtenModuleConcept.getPrimUuid() + ")");
-			}
-			else
+			return NOT_IN_DB;
+		}
+		return getNewest(cc);
+	}
+
+	/**
+	 * @return the UUID - or null, if the value isn't one, which is reported against the column.
+	 */
+	protected UUID parseUUID(String value, int column)
+	{
+		boolean valid = (value.length() == 36);
+		for (int i = 0; valid && i < 36; i++)
+		{
+			char c = value.charAt(i);
+			valid = (i == 8 || i == 13 || i == 18 || i == 23 ? c == '-' : Character.digit(c, 16) >= 0);
+		}
+		if (!valid)
+		{
+			error(ValidationRule.DB_LOOKUP_FAILED, column, "Invalid UUID string: " + value);
+			return null;
+		}
+		return UUID.fromString(value);
+	}
+
+	protected void checkStatus(ComponentVersionBI wbItem, boolean rowStatus, int column)
+	{
+		try
+		{
+			boolean wbActiveStatus = MetadataRegistry.get().isActiveStatus(wbItem.getStatusNid());
+			if (rowStatus != wbActiveStatus)
 			{
-				throw new Exception("Expected moduleID of " + dbModule + " (SCTID not in DB) but found " + rowModule + " (" + writtenModule + ")");
+				error(ValidationRule.DB_WRONG_STATUS, column, wbActiveStatus, rowStatus);
 			}
 		}
+		catch (Exception e)
+		{
+			error(ValidationRule.DB_LOOKUP_FAILED, column, e.getMessage());
+		}
 	}
 	
-	protected void checkExtensionField(Object data, String fieldName) throws Exception
+	protected void checkModule(ComponentVersionBI wbItem, long rowModule, int column)
 	{
 		try
 		{
-			if (data instanceof UUID)
+			long dbModuleSCTID = MetadataRegistry.get().getSCTID(wbItem.getModuleNid());
+			if (dbModuleSCTID != MetadataRegistry.NO_SCTID)
 			{
-				lookupComponentByUUID((UUID)data);
-			}
-			else if (data instanceof Long)
-			{
-				lookupComponentBySCTID((long)data);
-			}
-			else if (data instanceof Integer)
-			{
-				//TODO this would require custom, header based logic
-			}
-			else if (data instanceof String)
-			{
-				//TODO this would require custom, header based logic
+				if (dbModuleSCTID != rowModule)
+				{
+					error(ValidationRule.DB_WRONG_MODULE, column, dbModuleSCTID, rowModule);
+				}
+				//correct value...
+				return;
 			}
-			else
+	
+			// perhaps, didn't have the ID because it was generated... check the map file.
+			UUID dbModule = getPrimUuid(wbItem.getModuleNid());
+			UUID writtenModule = sctToUUIDMap_.get(rowModule);
+			if (!dbModule.equals(writtenModule))
 			{
-				throw new Exception("Unexpected field type - " + data);
+				if (writtenModule == null)
+				{
+					// Wow... seem to have the wrong module. Do another lookup to improve the error message...
+					// Since the SCTID didn't exist in the map file, and it didn't match the module we looked up in the DB.. look it up directly.
+					ConceptChronicleBI writtenModuleConcept = Ts.get().getConceptForNid(getNidForSCTID(rowModule));
+					error(ValidationRule.DB_WRONG_MODULE, column, dbModule + " (SCTID not in DB)", rowModule + " (" + writtenModuleConcept.getPrimUuid() + ")");
+				}
+				else
+				{
+					error(ValidationRule.DB_WRONG_MODULE, column, dbModule + " (SCTID not in DB)", rowModule + " (" + writtenModule + ")");
+				}
 			}
 		}
 		catch (Exception e)
 		{
-			throw new Exception("Failed validating extension field " + data + ": " + e.getMessage());
+			error(ValidationRule.DB_LOOKUP_FAILED, column, e.getMessage());
+		}
+	}
+	
+	protected void checkExtensionField(RowBuffer row, int column, String fieldName) throws IOException
+	{
+		switch (row.getType(column))
+		{
+			case UUID:
+				if (findComponentByUUID(row.getUUID(column)) == null)
+				{
+					error(ValidationRule.DB_EXTENSION_FIELD, column, row.getValueString(column), "Not found in the DB");
+				}
+				break;
+			case SCTID:
+				if (findComponentBySCTID(row.getLong(column)) == null)
+				{
+					error(ValidationRule.DB_EXTENSION_FIELD, column, row.getValueString(column), "Not found in the DB");
+				}
+				break;
+			case Integer:
+				//TODO this would require custom, header based logic
+				break;
+			case String:
+				//TODO this would require custom, header based logic
+				break;
+			default:
+				error(ValidationRule.DB_EXTENSION_FIELD, column, row.getValueString(column), "Unexpected field type");
 		}
 	}
 }
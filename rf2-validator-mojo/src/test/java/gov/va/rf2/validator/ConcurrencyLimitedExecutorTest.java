@@ -0,0 +1,104 @@
+package gov.va.rf2.validator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+public class ConcurrencyLimitedExecutorTest
+{
+	@Test
+	public void limitsTheTasksRunningAtOnce() throws Exception
+	{
+		ThreadPoolExecutor threads = newThreadPerTask();
+		ConcurrencyLimitedExecutor executor = new ConcurrencyLimitedExecutor(threads, 2);
+		final AtomicInteger running = new AtomicInteger();
+		final AtomicInteger maxRunning = new AtomicInteger();
+		Future<?>[] futures = new Future<?>[20];
+		for (int i = 0; i < futures.length; i++)
+		{
+			futures[i] = executor.submit(new Callable<Void>()
+			{
+				@Override
+				public Void call() throws Exception
+				{
+					int now = running.incrementAndGet();
+					synchronized (maxRunning)
+					{
+						maxRunning.set(Math.max(maxRunning.get(), now));
+					}
+					Thread.sleep(5);
+					running.decrementAndGet();
+					return null;
+				}
+			});
+		}
+		for (Future<?> future : futures)
+		{
+			future.get(10, TimeUnit.SECONDS);
+		}
+		assertEquals(2, maxRunning.get());
+		executor.shutdown();
+	}
+
+	@Test
+	public void runsATaskInterruptedWhileItWaits() throws Exception
+	{
+		ThreadPoolExecutor threads = newThreadPerTask();
+		ConcurrencyLimitedExecutor executor = new ConcurrencyLimitedExecutor(threads, 1);
+		final CountDownLatch release = new CountDownLatch(1);
+		Future<String> first = executor.submit(new Callable<String>()
+		{
+			@Override
+			public String call()
+			{
+				// holds the only permit, until it is released - interrupted or not
+				while (true)
+				{
+					try
+					{
+						release.await();
+						return "first";
+					}
+					catch (InterruptedException e)
+					{
+						// keep waiting
+					}
+				}
+			}
+		});
+		Future<String> second = executor.submit(new Callable<String>()
+		{
+			@Override
+			public String call()
+			{
+				return (Thread.currentThread().isInterrupted() ? "second, interrupted" : "second");
+			}
+		});
+		while (threads.getActiveCount() < 2)
+		{
+			Thread.sleep(1);
+		}
+
+		// interrupts both threads - the second one while it waits for the permit
+		threads.shutdownNow();
+		release.countDown();
+		assertEquals("first", first.get(10, TimeUnit.SECONDS));
+		assertEquals("second, interrupted", second.get(10, TimeUnit.SECONDS));
+		assertTrue(threads.awaitTermination(10, TimeUnit.SECONDS));
+	}
+
+	/**
+	 * A thread for each task, as with virtual threads - none of these tasks finds an idle thread.
+	 */
+	private static ThreadPoolExecutor newThreadPerTask()
+	{
+		return (ThreadPoolExecutor) Executors.newCachedThreadPool();
+	}
+}
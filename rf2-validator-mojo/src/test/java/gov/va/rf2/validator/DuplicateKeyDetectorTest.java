@@ -0,0 +1,102 @@
+package gov.va.rf2.validator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+public class DuplicateKeyDetectorTest
+{
+	// enough rows to outgrow the initial set, so that a budget of 0 forces the external sort
+	private static final int ROWS = 200000;
+
+	@Test
+	public void findsTheDuplicatesInMemory() throws IOException
+	{
+		MemoryBudget budget = new MemoryBudget(1L << 30);
+		List<String> found = detect(budget, false);
+		assertEquals(expected(), found);
+		assertEquals(1L << 30, budget.getAvailable());
+	}
+
+	@Test
+	public void findsTheSameDuplicatesWhenSorting() throws IOException
+	{
+		MemoryBudget budget = new MemoryBudget(0);
+		List<String> found = detect(budget, true);
+		assertEquals(expected(), found);
+		assertEquals(0, budget.getAvailable());
+	}
+
+	@Test
+	public void budgetIsSharedBetweenDetectors() throws IOException
+	{
+		// enough for one detector to hold every key, but not two
+		MemoryBudget budget = new MemoryBudget(10L * 1024 * 1024);
+		try (DuplicateKeyDetector first = new DuplicateKeyDetector("id", budget, null))
+		{
+			add(first);
+			assertFalse(first.isSorting());
+			List<String> found = detect(budget, true);
+			assertEquals(expected(), found);
+		}
+		assertEquals(10L * 1024 * 1024, budget.getAvailable());
+	}
+
+	private static List<String> detect(MemoryBudget budget, boolean sorting) throws IOException
+	{
+		ValidationResult result = new ValidationResult();
+		try (DuplicateKeyDetector detector = new DuplicateKeyDetector("id", budget, null))
+		{
+			add(detector);
+			assertEquals(sorting, detector.isSorting());
+			detector.finish(result);
+		}
+		List<String> found = new ArrayList<>();
+		for (int i = 0; i < result.size(); i++)
+		{
+			assertEquals(ValidationRule.DUPLICATE_KEY, result.getRule(i));
+			found.add(result.getMessage(i));
+		}
+		return found;
+	}
+
+	private static void add(DuplicateKeyDetector detector) throws IOException
+	{
+		Random random = new Random(42);
+		for (int i = 0; i < ROWS; i++)
+		{
+			detector.add(random.nextInt(ROWS), random.nextInt(2), i + 2);
+		}
+	}
+
+	/**
+	 * The duplicates, found the obvious way - in line order, each against the first line of its key.
+	 */
+	private static List<String> expected()
+	{
+		Random random = new Random(42);
+		HashMap<String, Integer> firstLines = new HashMap<>();
+		List<String> expected = new ArrayList<>();
+		for (int i = 0; i < ROWS; i++)
+		{
+			String key = random.nextInt(ROWS) + " " + random.nextInt(2);
+			Integer firstLine = firstLines.get(key);
+			if (firstLine == null)
+			{
+				firstLines.put(key, i + 2);
+			}
+			else
+			{
+				expected.add("Line " + (i + 2) + " has the same id as line " + firstLine);
+			}
+		}
+		assertTrue(expected.size() > 0);
+		return expected;
+	}
+}
@@ -0,0 +1,104 @@
+package gov.va.rf2.validator;
+
+import static org.junit.Assert.assertEquals;
+import java.io.IOException;
+import java.util.Arrays;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class EffectiveTimeParserTest
+{
+	@Rule
+	public TemporaryFolder folder_ = new TemporaryFolder();
+
+	@Test
+	public void parsesDates() throws IOException
+	{
+		EffectiveTimeParser parser = new EffectiveTimeParser();
+		assertEquals(20130731, parse(parser, "20130731"));
+		assertEquals(20120229, parse(parser, "20120229"));
+		assertEquals(20000229, parse(parser, "20000229"));
+		assertEquals(19991231, parse(parser, "19991231"));
+	}
+
+	@Test
+	public void rejectsInvalidDates() throws IOException
+	{
+		EffectiveTimeParser parser = new EffectiveTimeParser();
+		for (String time : new String[] { "", "2013073", "2013O731", "20130732", "20130631", "20131301", "20130700", "20130229",
+				"19000229", "00000101", "2013-07-31", "201307311" })
+		{
+			assertEquals(time, EffectiveTimeParser.INVALID, parse(parser, time));
+		}
+	}
+
+	@Test
+	public void checksTheTimeOfDay() throws IOException
+	{
+		EffectiveTimeParser parser = new EffectiveTimeParser();
+		for (String time : new String[] { "20130731T120000Z", "20130731T235959Z", "20130731T000000+05", "20130731T000000-08",
+				"20130731T000000+0530", "20130731T000000+05:30" })
+		{
+			assertEquals(time, 20130731, parse(parser, time));
+		}
+		for (String time : new String[] { "20130731T240000Z", "20130731T126000Z", "20130731T120060Z", "20130731T120000",
+				"20130731T120000Zx", "20130731X120000Z", "20130731T1200Z", "20130731T000000+24", "20130731T000000+05:60",
+				"20130731T000000+053", "20130731T000000+05-30" })
+		{
+			assertEquals(time, EffectiveTimeParser.INVALID, parse(parser, time));
+		}
+	}
+
+	@Test
+	public void rememberedDateStillChecksTheTimeOfDay() throws IOException
+	{
+		EffectiveTimeParser parser = new EffectiveTimeParser();
+		assertEquals(20130731, parse(parser, "20130731"));
+		assertEquals(20130731, parse(parser, "20130731"));
+		assertEquals(EffectiveTimeParser.INVALID, parse(parser, "20130731T250000Z"));
+		assertEquals(20130731, parse(parser, "20130731T120000Z"));
+		assertEquals(EffectiveTimeParser.INVALID, parse(parser, "20130732"));
+		assertEquals(20130731, parse(parser, "20130731"));
+	}
+
+	@Test
+	public void freshParserRejectsAllOnesBytes() throws IOException
+	{
+		// the 8 bytes pack to -1 - which must not be mistaken for a remembered date
+		byte[] row = new byte[10];
+		Arrays.fill(row, (byte) 0xFF);
+		row[8] = '\r';
+		row[9] = '\n';
+		try (MappedRowScanner r = RowFiles.scan(folder_, row))
+		{
+			assertEquals(EffectiveTimeParser.INVALID, new EffectiveTimeParser().parse(r, 0));
+		}
+	}
+
+	@Test
+	public void parsesStrings() throws Exception
+	{
+		assertEquals(20130731, EffectiveTimeParser.parse("20130731"));
+		for (String time : new String[] { null, "2013073", "20130229", "2013O731" })
+		{
+			try
+			{
+				EffectiveTimeParser.parse(time);
+				throw new AssertionError(time + " was parsed");
+			}
+			catch (Exception e)
+			{
+				assertEquals("unparsable time value", e.getMessage());
+			}
+		}
+	}
+
+	private int parse(EffectiveTimeParser parser, String time) throws IOException
+	{
+		try (MappedRowScanner r = RowFiles.scan(folder_, "x", time))
+		{
+			return parser.parse(r, 1);
+		}
+	}
+}
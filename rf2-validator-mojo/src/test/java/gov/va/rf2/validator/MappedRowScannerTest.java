@@ -0,0 +1,228 @@
+package gov.va.rf2.validator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class MappedRowScannerTest
+{
+	@Rule
+	public TemporaryFolder folder_ = new TemporaryFolder();
+
+	@Test
+	public void checksLineEndings() throws IOException
+	{
+		File f = RowFiles.write(folder_, "a\tb\r\nc\n\r\nd\re\r\nlast".getBytes(StandardCharsets.UTF_8));
+		try (MappedRowScanner r = new MappedRowScanner(f))
+		{
+			assertRow(r, 1, true, true, "a", "b");
+			assertRow(r, 2, true, false, "c");
+			assertRow(r, 3, true, true, "");
+			// a CR within the row is part of the row
+			assertRow(r, 4, true, true, "d\re");
+			assertRow(r, 5, false, false, "last");
+			assertFalse(r.next());
+		}
+	}
+
+	@Test
+	public void finalCRWithoutLFIsNotALineEnding() throws IOException
+	{
+		File f = RowFiles.write(folder_, "a\r\nb\r".getBytes(StandardCharsets.UTF_8));
+		try (MappedRowScanner r = new MappedRowScanner(f))
+		{
+			assertRow(r, 1, true, true, "a");
+			assertRow(r, 2, false, false, "b");
+			assertFalse(r.next());
+		}
+	}
+
+	@Test
+	public void skipsTheBOM() throws IOException
+	{
+		try (MappedRowScanner r = RowFiles.scan(folder_, bytes(0xEF, 0xBB, 0xBF, 'i', 'd', '\r', '\n')))
+		{
+			assertEquals(-1, r.getMalformedUTF8Cell());
+			assertEquals("id", r.getString(0));
+		}
+	}
+
+	@Test
+	public void acceptsWellFormedUTF8() throws IOException
+	{
+		// 2, 3 and 4 byte sequences, including the limits of each
+		String[] cells = { "\u00e9", "\u0080", "\u07ff", "\u0800", "\u20ac", "\ud7ff", "\ue000", "\uffff", "\ud83d\ude00",
+				"\ud800\udc00", "\udbff\udfff" };
+		for (String cell : cells)
+		{
+			try (MappedRowScanner r = RowFiles.scan(folder_, "ok", cell, "ok"))
+			{
+				assertEquals(cell, -1, r.getMalformedUTF8Cell());
+				assertEquals(cell, r.getString(1));
+			}
+		}
+	}
+
+	@Test
+	public void rejectsMalformedUTF8() throws IOException
+	{
+		int[][] sequences = {
+				{ 0xC0, 0x80 },             // overlong 2 byte
+				{ 0xC1, 0xBF },             // overlong 2 byte
+				{ 0xE0, 0x80, 0x80 },       // overlong 3 byte
+				{ 0xE0, 0x9F, 0xBF },       // overlong 3 byte
+				{ 0xED, 0xA0, 0x80 },       // a surrogate
+				{ 0xED, 0xBF, 0xBF },       // a surrogate
+				{ 0xF0, 0x80, 0x80, 0x80 }, // overlong 4 byte
+				{ 0xF0, 0x8F, 0xBF, 0xBF }, // overlong 4 byte
+				{ 0xF4, 0x90, 0x80, 0x80 }, // above U+10FFFF
+				{ 0xF5, 0x80, 0x80, 0x80 }, // above U+10FFFF
+				{ 0xFF },
+				{ 0x80 },                   // a continuation byte, on its own
+				{ 0xC3 },                   // truncated by the tab
+				{ 0xE2, 0x82 },             // truncated by the tab
+				{ 0xC3, 0x41 },             // not a continuation byte
+				{ 0xE2, 0x41, 0xAC },
+				{ 0xF0, 0x9F, 0x98, 0x41 } };
+		for (int[] sequence : sequences)
+		{
+			ByteArrayOutputStream row = new ByteArrayOutputStream();
+			row.write('o');
+			row.write('k');
+			row.write('\t');
+			for (int b : sequence)
+			{
+				row.write(b);
+			}
+			row.write('\t');
+			row.write(0xC3);
+			row.write(0xA9);
+			row.write('\r');
+			row.write('\n');
+			try (MappedRowScanner r = RowFiles.scan(folder_, row.toByteArray()))
+			{
+				assertEquals(toHex(sequence), 1, r.getMalformedUTF8Cell());
+				assertEquals(3, r.getCellCount());
+				assertTrue(r.hasCRLF());
+			}
+		}
+	}
+
+	@Test
+	public void rejectsASequenceTruncatedByTheEndOfTheFile() throws IOException
+	{
+		try (MappedRowScanner r = RowFiles.scan(folder_, bytes('o', 'k', '\t', 0xE2, 0x82)))
+		{
+			assertEquals(1, r.getMalformedUTF8Cell());
+			assertFalse(r.hasLineTerminator());
+		}
+	}
+
+	@Test
+	public void reportsTheFirstMalformedCell() throws IOException
+	{
+		try (MappedRowScanner r = RowFiles.scan(folder_, bytes(0x80, '\t', 'o', 'k', '\t', 0x80, '\r', '\n')))
+		{
+			assertEquals(0, r.getMalformedUTF8Cell());
+		}
+	}
+
+	@Test
+	public void checksUTF8SplitAcrossWindows() throws IOException
+	{
+		// 16 byte rows, each with sequences of every length - and one malformed row
+		String good = "\u00e9\u20ac\ud83d\ude00\tx\u20ac\r\n";
+		ByteArrayOutputStream content = new ByteArrayOutputStream();
+		int rows = 40;
+		int badLine = 23;
+		for (int line = 1; line <= rows; line++)
+		{
+			byte[] row = good.getBytes(StandardCharsets.UTF_8);
+			if (line == badLine)
+			{
+				// the euro sign of the second cell, with its last byte replaced
+				row[row.length - 3] = 'A';
+			}
+			content.write(row);
+		}
+		File f = RowFiles.write(folder_, content.toByteArray());
+
+		// every window size from the length of a row, so that the windows end at every position within the sequences
+		for (int windowSize = 16; windowSize <= 64; windowSize++)
+		{
+			try (MappedRowScanner r = new MappedRowScanner(f, windowSize))
+			{
+				for (int line = 1; line <= rows; line++)
+				{
+					assertTrue(r.next());
+					String where = "window " + windowSize + ", line " + line;
+					assertEquals(where, line, r.getLineNumber());
+					assertTrue(where, r.hasCRLF());
+					assertEquals(where, 2, r.getCellCount());
+					if (line == badLine)
+					{
+						assertEquals(where, 1, r.getMalformedUTF8Cell());
+					}
+					else
+					{
+						assertEquals(where, -1, r.getMalformedUTF8Cell());
+						assertEquals(where, "\u00e9\u20ac\ud83d\ude00", r.getString(0));
+						assertEquals(where, "x\u20ac", r.getString(1));
+					}
+				}
+				assertFalse(r.next());
+			}
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void rejectsRowsLongerThanTheWindow() throws IOException
+	{
+		File f = RowFiles.write(folder_, "0123456789\r\n0123456789\r\n".getBytes(StandardCharsets.UTF_8));
+		try (MappedRowScanner r = new MappedRowScanner(f, 8))
+		{
+			r.next();
+		}
+	}
+
+	private static void assertRow(MappedRowScanner r, long line, boolean terminated, boolean crlf, String... cells) throws IOException
+	{
+		assertTrue(r.next());
+		assertEquals(line, r.getLineNumber());
+		assertEquals("line " + line, terminated, r.hasLineTerminator());
+		assertEquals("line " + line, crlf, r.hasCRLF());
+		assertEquals("line " + line, cells.length, r.getCellCount());
+		for (int i = 0; i < cells.length; i++)
+		{
+			assertEquals("line " + line, cells[i], r.getString(i));
+		}
+		assertEquals(-1, r.getMalformedUTF8Cell());
+	}
+
+	private static byte[] bytes(int... values)
+	{
+		byte[] bytes = new byte[values.length];
+		for (int i = 0; i < values.length; i++)
+		{
+			bytes[i] = (byte) values[i];
+		}
+		return bytes;
+	}
+
+	private static String toHex(int[] sequence)
+	{
+		StringBuilder hex = new StringBuilder();
+		for (int b : sequence)
+		{
+			hex.append(String.format("%02X ", b));
+		}
+		return hex.toString().trim();
+	}
+}
@@ -0,0 +1,143 @@
+package gov.va.rf2.validator;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class RecordSorterTest
+{
+	private static final int RECORD_LONGS = 3;
+	// enough records to outgrow the initial buffer several times, so that a budget of 0 spills several runs
+	private static final int RECORDS = 250000;
+
+	@Rule
+	public TemporaryFolder folder_ = new TemporaryFolder();
+
+	@Test
+	public void sortsInMemory() throws IOException
+	{
+		MemoryBudget budget = new MemoryBudget(1L << 30);
+		long[][] records = records();
+		try (RecordSorter sorter = sort(records, budget, null))
+		{
+			assertFalse(sorter.isExternal());
+			assertSorted(records, sorter);
+		}
+		assertEquals(1L << 30, budget.getAvailable());
+	}
+
+	@Test
+	public void mergesSpilledRunsInOrder() throws IOException
+	{
+		MemoryBudget budget = new MemoryBudget(0);
+		long[][] records = records();
+		File runs = folder_.newFolder("runs");
+		try (RecordSorter sorter = sort(records, budget, runs))
+		{
+			assertTrue(sorter.isExternal());
+			assertTrue(runs.list().length > 1);
+			assertSorted(records, sorter);
+		}
+		assertEquals(0, runs.list().length);
+		assertEquals(0, budget.getAvailable());
+	}
+
+	@Test
+	public void deletesTheRunsWhenClosedEarly() throws IOException
+	{
+		MemoryBudget budget = new MemoryBudget(0);
+		File runs = folder_.newFolder("runs");
+		try (RecordSorter sorter = sort(records(), budget, runs))
+		{
+			long[] record = new long[RECORD_LONGS];
+			for (int i = 0; i < RECORDS / 2; i++)
+			{
+				assertTrue(sorter.next(record));
+			}
+			// as if the reader failed half way through
+		}
+		assertEquals(0, runs.list().length);
+		assertEquals(0, budget.getAvailable());
+	}
+
+	@Test
+	public void deletesTheRunsWhenNeverSorted() throws IOException
+	{
+		MemoryBudget budget = new MemoryBudget(0);
+		File runs = folder_.newFolder("runs");
+		try (RecordSorter sorter = new RecordSorter(RECORD_LONGS, budget, runs))
+		{
+			for (long[] record : records())
+			{
+				sorter.add(record);
+			}
+			assertTrue(sorter.isExternal());
+			// as if the records failed to be read, before they were all added
+		}
+		assertEquals(0, runs.list().length);
+		assertEquals(0, budget.getAvailable());
+	}
+
+	private static RecordSorter sort(long[][] records, MemoryBudget budget, File runs) throws IOException
+	{
+		RecordSorter sorter = new RecordSorter(RECORD_LONGS, budget, runs);
+		for (long[] record : records)
+		{
+			sorter.add(record);
+		}
+		sorter.sort();
+		return sorter;
+	}
+
+	private static void assertSorted(long[][] records, RecordSorter sorter) throws IOException
+	{
+		long[][] expected = records.clone();
+		Arrays.sort(expected, new Comparator<long[]>()
+		{
+			@Override
+			public int compare(long[] a, long[] b)
+			{
+				for (int i = 0; i < a.length; i++)
+				{
+					int c = Long.compare(a[i], b[i]);
+					if (c != 0)
+					{
+						return c;
+					}
+				}
+				return 0;
+			}
+		});
+		long[] record = new long[RECORD_LONGS];
+		for (long[] e : expected)
+		{
+			assertTrue(sorter.next(record));
+			assertArrayEquals(e, record);
+		}
+		assertFalse(sorter.next(record));
+	}
+
+	/**
+	 * Records with many equal first longs, and negative values - so that every long of the record decides the order
+	 * of some of them.
+	 */
+	private static long[][] records()
+	{
+		Random random = new Random(7);
+		long[][] records = new long[RECORDS][];
+		for (int i = 0; i < RECORDS; i++)
+		{
+			records[i] = new long[] { random.nextInt(1000) - 500, random.nextInt(100) - 50, random.nextLong() };
+		}
+		return records;
+	}
+}
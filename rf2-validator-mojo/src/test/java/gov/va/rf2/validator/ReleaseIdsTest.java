@@ -0,0 +1,85 @@
+package gov.va.rf2.validator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ReleaseIdsTest
+{
+	@Rule
+	public TemporaryFolder folder_ = new TemporaryFolder();
+
+	@Test
+	public void dropsDuplicateIds() throws IOException
+	{
+		// several rows an id, in no order - enough to grow the set several times
+		Random random = new Random(7);
+		StringBuilder rows = new StringBuilder("id\r\n");
+		boolean[] added = new boolean[100000];
+		int distinct = 0;
+		for (int i = 0; i < 300000; i++)
+		{
+			int id = random.nextInt(added.length);
+			distinct += (added[id] ? 0 : 1);
+			added[id] = true;
+			rows.append(id).append("\r\n");
+		}
+		IdSet ids = new IdSet();
+		ids.addIds(RowFiles.write(folder_, rows.toString().getBytes(StandardCharsets.UTF_8)));
+		ids.sort();
+		assertEquals(distinct, ids.size());
+		StringBuilder all = new StringBuilder();
+		for (int id = 0; id < added.length; id++)
+		{
+			all.append(id).append("\r\n");
+		}
+		try (MappedRowScanner r = new MappedRowScanner(RowFiles.write(folder_, all.toString().getBytes(StandardCharsets.UTF_8))))
+		{
+			for (int id = 0; id < added.length; id++)
+			{
+				assertTrue(r.next());
+				assertEquals(Integer.toString(id), added[id], ids.contains(r, 0));
+			}
+		}
+	}
+
+	@Test
+	public void readsTheFullFilesOnly() throws IOException
+	{
+		File release = folder_.newFolder("release");
+		write(release, "Full/Terminology/sct2_Concept_Full_INT_20130731.txt", "138875005", "138875005", "900000000000207008");
+		write(release, "Snapshot/Terminology/sct2_Concept_Snapshot_INT_20130731.txt", "138875005", "11000161103");
+		write(release, "Delta/Terminology/sct2_Concept_Delta_INT_20130731.txt", "1234053");
+		// no Full file of the descriptions - so the Snapshot one
+		write(release, "Snapshot/Terminology/sct2_Description_Snapshot-en_INT_20130731.txt", "1234151");
+		write(release, "Delta/Terminology/sct2_Description_Delta-en_INT_20130731.txt", "123456781000161109");
+		ReleaseIds ids = ReleaseIds.read(Arrays.asList(release));
+		assertEquals(2, ids.getConceptCount());
+		assertEquals(1, ids.getDescriptionCount());
+		assertEquals(0, ids.getRelationshipCount());
+
+	}
+
+	private static void write(File release, String path, String... ids) throws IOException
+	{
+		File f = new File(release, path);
+		f.getParentFile().mkdirs();
+		try (OutputStream out = new FileOutputStream(f))
+		{
+			out.write("id\teffectiveTime\r\n".getBytes(StandardCharsets.UTF_8));
+			for (String id : ids)
+			{
+				out.write((id + "\t20130731\r\n").getBytes(StandardCharsets.UTF_8));
+			}
+		}
+	}
+}
@@ -0,0 +1,46 @@
+package gov.va.rf2.validator;
+
+import static org.junit.Assert.assertTrue;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Writes rows to a file, for the tests that read them back through a {@link MappedRowScanner}.
+ */
+class RowFiles
+{
+	static File write(TemporaryFolder folder, byte[] content) throws IOException
+	{
+		File f = File.createTempFile("rows", ".txt", folder.getRoot());
+		try (OutputStream out = new FileOutputStream(f))
+		{
+			out.write(content);
+		}
+		return f;
+	}
+
+	/**
+	 * @return a scanner on the (only) row of a file of the cells, tab separated and CRLF terminated - to be closed by
+	 *         the caller
+	 */
+	static MappedRowScanner scan(TemporaryFolder folder, String... cells) throws IOException
+	{
+		StringBuilder row = new StringBuilder();
+		for (String cell : cells)
+		{
+			row.append(row.length() == 0 ? "" : "\t").append(cell);
+		}
+		return scan(folder, (row + "\r\n").getBytes(StandardCharsets.UTF_8));
+	}
+
+	static MappedRowScanner scan(TemporaryFolder folder, byte[] row) throws IOException
+	{
+		MappedRowScanner r = new MappedRowScanner(write(folder, row));
+		assertTrue(r.next());
+		return r;
+	}
+}
@@ -0,0 +1,83 @@
+package gov.va.rf2.validator;
+
+import static org.junit.Assert.assertEquals;
+import java.io.IOException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SCTIDDecoderTest
+{
+	@Rule
+	public TemporaryFolder folder_ = new TemporaryFolder();
+
+	@Test
+	public void decodesValidIds() throws IOException
+	{
+		// the root concept, a core metadata concept, and long format ids of 11, 18 and 7 digits
+		for (long sctid : new long[] { 138875005L, 900000000000207008L, 11000161103L, 123456781000161109L, 1234151L, 1234053L })
+		{
+			assertEquals(sctid, decode(Long.toString(sctid)));
+		}
+	}
+
+	@Test
+	public void rejectsWrongCheckDigits() throws IOException
+	{
+		for (String sctid : new String[] { "138875006", "138875000", "900000000000207009", "11000161104" })
+		{
+			assertEquals(sctid, SCTIDDecoder.INVALID, decode(sctid));
+		}
+	}
+
+	@Test
+	public void rejectsInvalidPartitions() throws IOException
+	{
+		// valid check digits, but partitions 16 and 06
+		assertEquals(SCTIDDecoder.INVALID, decode("1234167"));
+		assertEquals(SCTIDDecoder.INVALID, decode("1234069"));
+	}
+
+	@Test
+	public void rejectsInvalidLengthsAndDigits() throws IOException
+	{
+		// 19 digits - with a valid check digit and partition
+		assertEquals(SCTIDDecoder.INVALID, decode("1234567891000161108"));
+		for (String sctid : new String[] { "", "1003", "12345", "13887500A", "-138875005", " 138875005", "1388750.5" })
+		{
+			assertEquals(sctid, SCTIDDecoder.INVALID, decode(sctid));
+		}
+	}
+
+	@Test
+	public void partitionsAndNamespaces()
+	{
+		assertEquals(0, SCTIDDecoder.getPartition(138875005L));
+		assertEquals(SCTIDDecoder.NO_NAMESPACE, SCTIDDecoder.getNamespace(138875005L));
+		assertEquals(10, SCTIDDecoder.getPartition(11000161103L));
+		assertEquals(1000161, SCTIDDecoder.getNamespace(11000161103L));
+		assertEquals(1000161, SCTIDDecoder.getNamespace(123456781000161109L));
+		assertEquals(15, SCTIDDecoder.getPartition(1234151L));
+		assertEquals(1234, SCTIDDecoder.getNamespace(1234151L));
+		assertEquals(5, SCTIDDecoder.getPartition(1234053L));
+		assertEquals(SCTIDDecoder.NO_NAMESPACE, SCTIDDecoder.getNamespace(1234053L));
+	}
+
+	@Test
+	public void parsesNamespacesFromFileNames()
+	{
+		assertEquals(1000161, SCTIDDecoder.parseNamespace("US1000161"));
+		assertEquals(1000161, SCTIDDecoder.parseNamespace("1000161"));
+		assertEquals(SCTIDDecoder.NO_NAMESPACE, SCTIDDecoder.parseNamespace("INT"));
+		assertEquals(SCTIDDecoder.NO_NAMESPACE, SCTIDDecoder.parseNamespace("US100016X"));
+		assertEquals(SCTIDDecoder.NO_NAMESPACE, SCTIDDecoder.parseNamespace(null));
+	}
+
+	private long decode(String sctid) throws IOException
+	{
+		try (MappedRowScanner r = RowFiles.scan(folder_, "x", sctid))
+		{
+			return SCTIDDecoder.decode(r, 1);
+		}
+	}
+}
@@ -0,0 +1,200 @@
+package gov.va.rf2.validator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SnapshotDerivationCheckTest
+{
+	private static final String HEADER = "id\teffectiveTime\tactive";
+	// enough rows to outgrow the initial sort buffers, so that a budget of 0 spills
+	private static final int IDS = 100000;
+
+	@Rule
+	public TemporaryFolder folder_ = new TemporaryFolder();
+
+	@Test
+	public void reportsMissingExtraAndMismatchedRows() throws IOException
+	{
+		File full = write("full.txt",
+				"100\t20020131\t1",  // 2
+				"100\t20130731\t0",  // 3 - the latest row of 100
+				"200\t20020131\t1",  // 4
+				"300\t20100131\t1",  // 5
+				"400\t20020131\t1"); // 6
+		File snapshot = write("snapshot.txt",
+				"100\t20130731\t0",  // 2 - matches
+				"200\t20020131\t0",  // 3 - doesn't match line 4
+				"500\t20130731\t1",  // 4 - not in the Full file
+				"400\t20020131\t1",  // 5 - matches
+				"400\t20020131\t1",  // 6 - a second row of 400
+				"100\t20020131\t1"); // 7 - an older row of 100
+
+		assertEquals(Arrays.asList(
+				"SNAPSHOT_MISSING_ROW -1 The latest row of id 300 (line 5 of the Full file) is missing",
+				"SNAPSHOT_ROW_MISMATCH 3 Line 3 doesn't match line 4 of the Full file - the latest row of its id",
+				"SNAPSHOT_EXTRA_ROW 4 Line 4 is not the latest row of any id of the Full file",
+				"SNAPSHOT_EXTRA_ROW 6 Line 6 is not the latest row of any id of the Full file",
+				"SNAPSHOT_EXTRA_ROW 7 Line 7 is not the latest row of any id of the Full file"),
+				check(full, snapshot, new MemoryBudget(1L << 30), null, null));
+	}
+
+	@Test
+	public void reportsMissingUUIDs() throws IOException
+	{
+		File full = write("full.txt",
+				"b5c1a4a4-6d0e-4f6c-9a3e-111111111111\t20130731\t1",
+				"b5c1a4a4-6d0e-4f6c-9a3e-222222222222\t20130731\t1");
+		File snapshot = write("snapshot.txt",
+				"b5c1a4a4-6d0e-4f6c-9a3e-222222222222\t20130731\t1");
+
+		assertEquals(Arrays.asList("SNAPSHOT_MISSING_ROW -1 The latest row of id b5c1a4a4-6d0e-4f6c-9a3e-111111111111 (line 2 of the Full file) "
+				+ "is missing"), check(full, snapshot, new MemoryBudget(1L << 30), null, null));
+	}
+
+	@Test
+	public void spillingFindsTheSameRows() throws IOException
+	{
+		File full = folder_.newFile("full.txt");
+		File snapshot = folder_.newFile("snapshot.txt");
+		int[] counts = writeRelease(full, snapshot);
+
+		List<String> inMemory = check(full, snapshot, new MemoryBudget(1L << 30), null, null);
+		assertEquals(Math.min(counts[0], 1000) + (counts[0] > 1000 ? 1 : 0) + counts[1] + counts[2], inMemory.size());
+
+		MemoryBudget budget = new MemoryBudget(0);
+		File runs = folder_.newFolder("runs");
+		assertEquals(inMemory, check(full, snapshot, budget, null, runs));
+		ForkJoinPool pool = new ForkJoinPool(2);
+		try
+		{
+			assertEquals(inMemory, check(full, snapshot, budget, pool, runs));
+		}
+		finally
+		{
+			pool.shutdown();
+		}
+		assertEquals(0, runs.list().length);
+		assertEquals(0, budget.getAvailable());
+	}
+
+	@Test
+	public void deletesTheRunsWhenASortFails() throws IOException
+	{
+		File snapshot = folder_.newFile("snapshot.txt");
+		writeRelease(folder_.newFile("full.txt"), snapshot);
+		MemoryBudget budget = new MemoryBudget(0);
+		File runs = folder_.newFolder("runs");
+		ForkJoinPool pool = new ForkJoinPool(2);
+		try
+		{
+			check(new File(folder_.getRoot(), "missing.txt"), snapshot, budget, pool, runs);
+			fail("the Full file doesn't exist");
+		}
+		catch (IOException | RuntimeException e)
+		{
+			// expected - the Snapshot sort was spilled, and must have been cleaned up
+		}
+		finally
+		{
+			pool.shutdown();
+		}
+		assertEquals(0, runs.list().length);
+		assertEquals(0, budget.getAvailable());
+	}
+
+	private static List<String> check(File full, File snapshot, MemoryBudget budget, ForkJoinPool pool, File runs) throws IOException
+	{
+		ValidationResult result = new ValidationResult();
+		new SnapshotDerivationCheck(full, snapshot, budget, runs).check(pool, result);
+		List<String> failures = new ArrayList<>();
+		for (int i = 0; i < result.size(); i++)
+		{
+			failures.add(result.getRule(i) + " " + result.getLine(i) + " " + result.getMessage(i));
+		}
+		return failures;
+	}
+
+	private File write(String name, String... rows) throws IOException
+	{
+		File f = folder_.newFile(name);
+		try (Writer w = new OutputStreamWriter(new FileOutputStream(f), StandardCharsets.UTF_8))
+		{
+			w.write(HEADER + "\r\n");
+			for (String row : rows)
+			{
+				w.write(row + "\r\n");
+			}
+		}
+		return f;
+	}
+
+	/**
+	 * A Full file of up to three rows an id, in no particular order, and its Snapshot - with some of the latest rows
+	 * left out, changed, or followed by an extra row.
+	 *
+	 * @return the number of missing, extra and mismatched rows
+	 */
+	private static int[] writeRelease(File full, File snapshot) throws IOException
+	{
+		Random random = new Random(11);
+		List<String> fullRows = new ArrayList<>();
+		int[] counts = new int[3];
+		try (Writer w = new OutputStreamWriter(new FileOutputStream(snapshot), StandardCharsets.UTF_8))
+		{
+			w.write(HEADER + "\r\n");
+			for (int id = 1; id <= IDS; id++)
+			{
+				int versions = 1 + random.nextInt(3);
+				String latest = null;
+				for (int v = 0; v < versions; v++)
+				{
+					latest = (id * 10L) + "\t" + (20020131 + v * 10000) + "\t" + random.nextInt(2);
+					fullRows.add(latest);
+				}
+				int change = random.nextInt(100);
+				if (change == 0)
+				{
+					counts[0]++;
+					continue;
+				}
+				w.write((change == 1 ? latest + "0" : latest) + "\r\n");
+				if (change == 1)
+				{
+					counts[2]++;
+				}
+				else if (change == 2)
+				{
+					w.write(latest + "\r\n");
+					counts[1]++;
+				}
+			}
+		}
+		Collections.shuffle(fullRows, random);
+		try (Writer w = new OutputStreamWriter(new FileOutputStream(full), StandardCharsets.UTF_8))
+		{
+			w.write(HEADER + "\r\n");
+			for (String row : fullRows)
+			{
+				w.write(row + "\r\n");
+			}
+		}
+		assertTrue(counts[0] > 0 && counts[1] > 0 && counts[2] > 0);
+		return counts;
+	}
+}